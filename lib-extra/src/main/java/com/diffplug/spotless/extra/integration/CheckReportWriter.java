@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.extra.integration;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streams the results of a spotlessCheck pass to a machine-readable report, one file at a time as they are checked,
+ * so that CI annotators can consume the violations of any number of files.  The diff of each violation is computed
+ * from the formatted content which the check already produced, so the file is never formatted a second time.
+ * <p>
+ * The format is picked by the name of the report file: {@code *.sarif} and {@code *.sarif.json} get
+ * <a href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a>, and everything else gets
+ * <a href="https://jsonlines.org/">JSON Lines</a> with one object per problem file.  Only problem files are reported.
+ */
+public final class CheckReportWriter implements AutoCloseable {
+	public enum Format {
+		JSON_LINES, SARIF;
+
+		public static Format forFile(File file) {
+			String name = file.getName().toLowerCase(Locale.ROOT);
+			return name.endsWith(".sarif") || name.endsWith(".sarif.json") ? SARIF : JSON_LINES;
+		}
+	}
+
+	/** Opens a report at the given file, replacing any previous report, and relativizes reported files against {@code rootDir}. */
+	public static CheckReportWriter open(File reportFile, Path rootDir) throws IOException {
+		Path parent = reportFile.toPath().toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		return new CheckReportWriter(Format.forFile(reportFile), Files.newBufferedWriter(reportFile.toPath(), UTF_8), rootDir);
+	}
+
+	private final Format format;
+	private final Writer writer;
+	private final Path rootDir;
+	private boolean firstResult = true;
+
+	CheckReportWriter(Format format, Writer writer, Path rootDir) throws IOException {
+		this.format = Objects.requireNonNull(format);
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+		this.rootDir = Objects.requireNonNull(rootDir);
+		if (format == Format.SARIF) {
+			this.writer.write("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{"
+					+ "\"tool\":{\"driver\":{\"name\":\"Spotless\",\"informationUri\":\"https://github.com/diffplug/spotless\"}},"
+					+ "\"results\":[");
+		}
+	}
+
+	/**
+	 * Reports a file whose content on disk differs from its formatted content.
+	 *
+	 * @param formatName the name of the format which checked the file, e.g. {@code java}
+	 * @param file the file which was checked
+	 * @param rawBytes the content of the file on disk
+	 * @param formattedBytes the content of the file once formatted
+	 * @param encoding the encoding of both contents
+	 */
+	public synchronized void violation(String formatName, File file, byte[] rawBytes, byte[] formattedBytes, Charset encoding) throws IOException {
+		Map.Entry<Integer, String> diff = DiffMessageFormatter.diff(new String(rawBytes, encoding), new String(formattedBytes, encoding));
+		write(formatName, file, "violation", diff.getKey() + 1, diff.getValue());
+	}
+
+	/** Reports a file which couldn't be checked because its formatters never converge on a stable result. */
+	public synchronized void didNotConverge(String formatName, File file) throws IOException {
+		write(formatName, file, "didNotConverge", 1, null);
+	}
+
+	private void write(String formatName, File file, String status, int line, String diff) throws IOException {
+		String path = rootDir.relativize(file.toPath().toAbsolutePath()).toString().replace('\\', '/');
+		if (format == Format.SARIF) {
+			if (!firstResult) {
+				writer.write(',');
+			}
+			String message = diff == null ? "Formatters for '" + formatName + "' did not converge on this file." : "Format violations for '" + formatName + "':\n" + diff;
+			writer.write("{\"ruleId\":\"" + escape(formatName)
+					+ "\",\"level\":\"" + (diff == null ? "warning" : "error")
+					+ "\",\"message\":{\"text\":\"" + escape(message)
+					+ "\"},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"" + escape(path)
+					+ "\"},\"region\":{\"startLine\":" + line + "}}}]}");
+		} else {
+			writer.write("{\"format\":\"" + escape(formatName)
+					+ "\",\"file\":\"" + escape(path)
+					+ "\",\"status\":\"" + status
+					+ "\",\"line\":" + line);
+			if (diff != null) {
+				writer.write(",\"diff\":\"" + escape(diff) + '"');
+			}
+			writer.write("}\n");
+		}
+		firstResult = false;
+		// flush every result, so that the report is usable even if the build is interrupted
+		writer.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (format == Format.SARIF) {
+				writer.write("]}]}\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	static String escape(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 16);
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		return builder.toString();
+	}
+}
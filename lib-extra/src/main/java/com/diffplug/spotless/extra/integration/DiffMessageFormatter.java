@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -252,6 +252,15 @@ public final class DiffMessageFormatter {
 		String raw = new String(Files.readAllBytes(file.toPath()), formatter.getEncoding());
 		String rawUnix = LineEnding.toUnix(raw);
 		String formatted = formatter.getFormatted(file, rawUnix);
+		return diff(raw, formatted);
+	}
+
+	/**
+	 * Returns a map entry with value being a git-style diff between the given content and its already-formatted version,
+	 * and key being the 0-based line where the first difference occurred. Does not end with any newline sequence (\n, \r, \r\n).
+	 */
+	public static Map.Entry<Integer, String> diff(String raw, String formatted) throws IOException {
+		String rawUnix = LineEnding.toUnix(raw);
 		String formattedUnix = LineEnding.toUnix(formatted);
 
 		if (rawUnix.equals(formattedUnix)) {
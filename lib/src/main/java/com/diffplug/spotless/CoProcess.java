@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A process which keeps running between requests, so that tools with a server or loop mode only pay for their
+ * startup once. Each request is written to its stdin and each response read from its stdout, both delimited by a
+ * {@link Framing}, while stderr is drained into a ring buffer to report errors. Use {@link CoProcessPool} to share
+ * a few of them between threads, and to restart them when they crash.
+ */
+public class CoProcess implements AutoCloseable {
+	/** How much of stderr is kept for error messages. */
+	private static final int STDERR_CAPACITY = 16 * 1024;
+
+	private final List<String> args;
+	private final Process process;
+	private final Framing framing;
+	private final OutputStream stdin;
+	private final InputStream stdout;
+	private final ByteArrayOutputStream stdErr = new RingBufferByteArrayOutputStream(STDERR_CAPACITY);
+
+	private CoProcess(List<String> args, Process process, Framing framing) {
+		this.args = args;
+		this.process = process;
+		this.framing = framing;
+		this.stdin = new BufferedOutputStream(process.getOutputStream());
+		this.stdout = new BufferedInputStream(process.getInputStream());
+		// on the threads shared with ProcessRunner, which also read the responses, see exchange()
+		ProcessRunner.DRAIN_THREADS.submit(() -> {
+			try (InputStream stdErrInput = process.getErrorStream()) {
+				ProcessRunner.drain(stdErrInput, stdErr);
+			}
+			return null;
+		});
+	}
+
+	/** Starts the given command, which has to answer every request framed by {@code framing} with one response. */
+	public static CoProcess start(@Nullable File cwd, @Nullable Map<String, String> environment, List<String> args, Framing framing) throws IOException {
+		ProcessBuilder builder = new ProcessBuilder(args);
+		if (cwd != null) {
+			builder.directory(cwd);
+		}
+		if (environment != null) {
+			builder.environment().putAll(environment);
+		}
+		return new CoProcess(args, builder.start(), requireNonNull(framing));
+	}
+
+	/** Whether the process is still running, and thus can serve requests. */
+	public boolean isAlive() {
+		return process.isAlive();
+	}
+
+	/**
+	 * Sends the request and returns the response. A process which does not respond within the timeout, or whose
+	 * request or response could not be framed, is destroyed, because its output can not be trusted to belong to
+	 * the next request anymore. Only an {@link ErrorResponseException} leaves the process serving requests.
+	 *
+	 * @throws EOFException if the process ended instead of responding
+	 * @throws ErrorResponseException if the process responded with an error
+	 */
+	public synchronized byte[] exchange(byte[] request, long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+		if (!process.isAlive()) {
+			throw new EOFException("Process ended before the request was sent\n" + describe());
+		}
+		// read concurrently to writing, in case the process responds before it consumed the whole request
+		Future<byte[]> response = ProcessRunner.DRAIN_THREADS.submit(() -> framing.read(stdout));
+		try {
+			framing.write(stdin, request);
+			stdin.flush();
+			return response.get(timeout, unit);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ErrorResponseException) {
+				throw (ErrorResponseException) e.getCause();
+			}
+			process.destroyForcibly();
+			if (e.getCause() instanceof EOFException) {
+				throw new EOFException("Process ended instead of responding\n" + describe());
+			}
+			throw new IOException("Unable to read the response\n" + describe(), e.getCause());
+		} catch (IOException e) {
+			response.cancel(true);
+			process.destroyForcibly();
+			throw new IOException("Unable to send the request\n" + describe(), e);
+		} catch (TimeoutException e) {
+			response.cancel(true);
+			process.destroyForcibly();
+			throw new TimeoutException("Process did not respond within " + timeout + " " + unit + "\n" + describe());
+		} catch (InterruptedException | RuntimeException e) {
+			response.cancel(true);
+			process.destroyForcibly();
+			throw e;
+		}
+	}
+
+	private String describe() {
+		StringBuilder description = new StringBuilder();
+		description.append("> arguments: ").append(args).append('\n');
+		if (!process.isAlive()) {
+			description.append("> exit code: ").append(process.exitValue()).append('\n');
+		}
+		String stdErrTail = stdErr.toString().trim();
+		if (!stdErrTail.isEmpty()) {
+			description.append("> stderr (end): ").append(stdErrTail).append('\n');
+		}
+		return description.toString();
+	}
+
+	/** Closes stdin, which tells well-behaved tools to exit, and destroys the process if it does not within a few seconds. */
+	@Override
+	public void close() throws InterruptedException {
+		try {
+			stdin.close();
+		} catch (IOException e) {
+			// the process has ended already
+		}
+		if (!process.waitFor(5, TimeUnit.SECONDS)) {
+			process.destroyForcibly().waitFor();
+		}
+	}
+
+	/** Delimits the requests and responses exchanged with a {@link CoProcess}. */
+	public interface Framing {
+		void write(OutputStream stdin, byte[] request) throws IOException;
+
+		/**
+		 * Reads a single response.
+		 *
+		 * @throws EOFException if the output ended before a complete response
+		 * @throws ErrorResponseException if the response reports an error
+		 */
+		byte[] read(InputStream stdout) throws IOException;
+
+		/**
+		 * Requests are framed as {@code "<length in bytes>\n<bytes>"}, and responses as
+		 * {@code "<status> <length in bytes>\n<bytes>"}, where any status other than {@code ok} is an error, with
+		 * the bytes as its message. This is the same framing which the npm-based steps use with their servers.
+		 */
+		static Framing lengthPrefixed() {
+			return LengthPrefixed.INSTANCE;
+		}
+	}
+
+	private enum LengthPrefixed implements Framing {
+		INSTANCE;
+
+		@Override
+		public void write(OutputStream stdin, byte[] request) throws IOException {
+			stdin.write((request.length + "\n").getBytes(StandardCharsets.US_ASCII));
+			stdin.write(request);
+		}
+
+		@Override
+		public byte[] read(InputStream stdout) throws IOException {
+			String header = readLine(stdout);
+			String[] statusAndLength = header.split(" ", 2);
+			if (statusAndLength.length != 2) {
+				throw new IOException("Malformed response header: " + header);
+			}
+			int length;
+			try {
+				length = Integer.parseInt(statusAndLength[1].trim());
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed response header: " + header, e);
+			}
+			byte[] content = stdout.readNBytes(length);
+			if (content.length != length) {
+				throw new EOFException("Response ended after " + content.length + " of " + length + " bytes");
+			}
+			if (!"ok".equals(statusAndLength[0])) {
+				throw new ErrorResponseException(new String(content, StandardCharsets.UTF_8));
+			}
+			return content;
+		}
+	}
+
+	/** Reads up to the next {@code \n}, which is not part of the result. */
+	static String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) != '\n') {
+			if (b == -1) {
+				throw new EOFException("Output ended in the middle of a line");
+			}
+			line.write(b);
+		}
+		return line.toString(StandardCharsets.US_ASCII.name());
+	}
+
+	/** The process reported that it was unable to handle a request, but it can still handle the next one. */
+	public static class ErrorResponseException extends RuntimeException {
+		private static final long serialVersionUID = 7414046317298154621L;
+
+		public ErrorResponseException(String message) {
+			super(message);
+		}
+	}
+}
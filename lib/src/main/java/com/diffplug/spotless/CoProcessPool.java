@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Up to {@code maxSize} {@link CoProcess}es of the same command, which are started on demand and shared between
+ * threads, each serving one request at a time. A co-process which crashed, hung or stopped responding properly is
+ * thrown away, and the request is retried once on a freshly started one.
+ */
+public class CoProcessPool implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(CoProcessPool.class);
+
+	private final int maxSize;
+	private final Duration requestTimeout;
+	private final ThrowingEx.Supplier<CoProcess> starter;
+
+	/** Guarded by {@code this}. */
+	private final Deque<CoProcess> idle = new ArrayDeque<>();
+	/** Guarded by {@code this}, counts the busy, idle and starting co-processes. */
+	private int size;
+	/** Guarded by {@code this}. */
+	private boolean closed;
+
+	public CoProcessPool(int maxSize, Duration requestTimeout, ThrowingEx.Supplier<CoProcess> starter) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The pool size must be at least 1, but was " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.requestTimeout = requireNonNull(requestTimeout);
+		this.starter = requireNonNull(starter);
+	}
+
+	/**
+	 * Sends the request to one of the co-processes and returns its response.
+	 *
+	 * @throws CoProcess.ErrorResponseException if the co-process responded with an error
+	 */
+	public byte[] call(byte[] request) throws Exception {
+		for (int attempt = 1;; ++attempt) {
+			CoProcess coProcess = acquire();
+			try {
+				byte[] response = coProcess.exchange(request, requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+				release(coProcess);
+				return response;
+			} catch (CoProcess.ErrorResponseException e) {
+				// the co-process is fine, just the request was not
+				release(coProcess);
+				throw e;
+			} catch (IOException | TimeoutException e) {
+				discard(coProcess);
+				if (attempt > 1) {
+					throw e;
+				}
+				logger.warn("Co-process failed, retrying with a new one.", e);
+			} catch (InterruptedException | RuntimeException e) {
+				// we do not know whether a response is still pending, so it can not serve the next request
+				discard(coProcess);
+				throw e;
+			}
+		}
+	}
+
+	private CoProcess acquire() throws Exception {
+		synchronized (this) {
+			while (true) {
+				if (closed) {
+					throw new IllegalStateException("The co-process pool has been closed");
+				}
+				CoProcess coProcess = idle.pollFirst();
+				if (coProcess != null) {
+					if (coProcess.isAlive()) {
+						return coProcess;
+					}
+					// crashed while it was idle
+					size--;
+					closeQuietly(coProcess);
+				} else if (size < maxSize) {
+					size++;
+					break;
+				} else {
+					wait();
+				}
+			}
+		}
+		// start outside of the lock, so that the running co-processes keep serving requests meanwhile
+		try {
+			return starter.get();
+		} catch (Exception e) {
+			synchronized (this) {
+				size--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private void release(CoProcess coProcess) {
+		synchronized (this) {
+			if (!closed) {
+				idle.addFirst(coProcess);
+				notifyAll();
+				return;
+			}
+		}
+		closeQuietly(coProcess);
+	}
+
+	private void discard(CoProcess coProcess) {
+		synchronized (this) {
+			size--;
+			notifyAll();
+		}
+		closeQuietly(coProcess);
+	}
+
+	private static void closeQuietly(CoProcess coProcess) {
+		try {
+			coProcess.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Ends the idle co-processes, and the busy ones as soon as they are done with their current request. */
+	@Override
+	public void close() {
+		List<CoProcess> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		toClose.forEach(CoProcessPool::closeQuietly);
+	}
+}
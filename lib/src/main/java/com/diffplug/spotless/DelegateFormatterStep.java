@@ -1,5 +1,5 @@
 /*
- * Copyright 2022 DiffPlug
+ * Copyright 2022-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,7 +15,11 @@
  */
 package com.diffplug.spotless;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiPredicate;
 
 /** Superclass of all compound FormatterSteps necessary for {@link com.diffplug.spotless.LazyForwardingEquality#unlazy(java.lang.Object)}. */
 abstract class DelegateFormatterStep implements FormatterStep {
@@ -29,4 +33,23 @@ abstract class DelegateFormatterStep implements FormatterStep {
 	public final String getName() {
 		return delegateStep.getName();
 	}
+
+	/** Formats the files which pass the filter as one batch with the delegate, and leaves the others as they are. */
+	protected Map<File, String> formatBatchWhere(Map<File, String> rawUnixByFile, BiPredicate<File, String> filter) throws Exception {
+		Map<File, String> accepted = new LinkedHashMap<>();
+		for (Map.Entry<File, String> entry : rawUnixByFile.entrySet()) {
+			if (filter.test(entry.getKey(), entry.getValue())) {
+				accepted.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (accepted.isEmpty()) {
+			return rawUnixByFile;
+		}
+		Map<File, String> formattedAccepted = delegateStep.formatBatch(accepted);
+		Map<File, String> formatted = new LinkedHashMap<>(rawUnixByFile.size());
+		for (Map.Entry<File, String> entry : rawUnixByFile.entrySet()) {
+			formatted.put(entry.getKey(), accepted.containsKey(entry.getKey()) ? formattedAccepted.get(entry.getKey()) : entry.getValue());
+		}
+		return formatted;
+	}
 }
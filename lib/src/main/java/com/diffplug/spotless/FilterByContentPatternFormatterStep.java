@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package com.diffplug.spotless;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,6 +45,11 @@ final class FilterByContentPatternFormatterStep extends DelegateFormatterStep {
 		}
 	}
 
+	@Override
+	public Map<File, String> formatBatch(Map<File, String> rawUnixByFile) throws Exception {
+		return formatBatchWhere(rawUnixByFile, (file, raw) -> contentPattern.matcher(raw).find() == (onMatch == OnMatch.INCLUDE));
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
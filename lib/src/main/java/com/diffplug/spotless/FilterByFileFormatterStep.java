@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2022 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package com.diffplug.spotless;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -39,6 +40,11 @@ final class FilterByFileFormatterStep extends DelegateFormatterStep {
 		}
 	}
 
+	@Override
+	public Map<File, String> formatBatch(Map<File, String> rawUnixByFile) throws Exception {
+		return formatBatchWhere(rawUnixByFile, (file, raw) -> filter.accept(file));
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
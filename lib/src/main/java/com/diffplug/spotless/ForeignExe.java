@@ -1,5 +1,5 @@
 /*
- * Copyright 2020-2023 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,9 +15,23 @@
  */
 package com.diffplug.spotless;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,9 +44,20 @@ import javax.annotation.Nullable;
  * <p>
  * Usage: {@code ForeignExe.nameAndVersion("grep", "2.5.7").confirmVersionAndGetAbsolutePath()}
  * will find grep, confirm that it is version 2.5.7, and then return.
+ * <p>
+ * The version which was found is remembered for the rest of the JVM, and optionally
+ * in a {@link #probeCacheDir(File)}, by the real path of the executable until it
+ * changes, so that many steps of the same executable only run it once. The system
+ * path is searched every time, and executables which are scripts (such as the shims
+ * of pyenv or asdf) or links to an executable of another name (such as mise) are
+ * run every time, since their version depends on more than the executable itself.
  */
 public class ForeignExe {
+	/** Successful probes by {@link #probeKey(Path)}. */
+	private static final ConcurrentMap<String, Probe> PROBES = new ConcurrentHashMap<>();
+
 	private @Nullable String pathToExe;
+	private @Nullable File probeCacheDir;
 	private String versionFlag = "--version";
 	private Pattern versionRegex = Pattern.compile("version (\\S*)");
 	private @Nullable String fixCantFind, fixWrongVersion;
@@ -79,6 +104,15 @@ public class ForeignExe {
 		return this;
 	}
 
+	/**
+	 * A directory in which to remember the version which was found across JVMs.
+	 * If null (the default), they are only remembered until the JVM exits.
+	 */
+	public ForeignExe probeCacheDir(@Nullable File probeCacheDir) {
+		this.probeCacheDir = probeCacheDir;
+		return this;
+	}
+
 	/**
 	 * Searches for the executable and confirms that it has the expected version.
 	 * If it can't find the executable, or if it doesn't have the correct version,
@@ -97,6 +131,21 @@ public class ForeignExe {
 					exeAbsPath = cmdWhich.assertExitZero(Charset.defaultCharset()).trim();
 				}
 			}
+			Path realExe = probeableExe(exeAbsPath);
+			String probeKey = realExe == null ? null : probeKey(realExe);
+			if (probeKey != null) {
+				Probe probe = PROBES.get(probeKey);
+				if (probe == null && probeCacheDir != null) {
+					probe = Probe.read(probeFile(probeKey));
+				}
+				if (probe != null && probe.isCurrent()) {
+					PROBES.put(probeKey, probe);
+					if (probe.versionFound.equals(version)) {
+						return exeAbsPath;
+					}
+					// run it again, for the details of the error
+				}
+			}
 			ProcessRunner.Result cmdVersion = runner.exec(exeAbsPath, versionFlag);
 			if (cmdVersion.exitNotZero()) {
 				throw cantFind("Unable to run " + exeAbsPath, cmdVersion);
@@ -106,6 +155,9 @@ public class ForeignExe {
 				throw cantFind("Unable to parse version with /" + versionRegex + "/", cmdVersion);
 			}
 			String versionFound = versionMatcher.group(1);
+			if (probeKey != null) {
+				remember(probeKey, realExe, versionFound);
+			}
 			if (!versionFound.equals(version)) {
 				throw wrongVersion("You specified version " + version + ", but Spotless found " + versionFound, cmdVersion, versionFound);
 			}
@@ -113,6 +165,129 @@ public class ForeignExe {
 		}
 	}
 
+	/**
+	 * The real path of the executable, if its version only depends on the executable itself, or else null. That is not
+	 * the case for scripts, such as the shims of pyenv or asdf, which pick an executable by the environment, nor for links
+	 * to an executable of another name, such as mise, which picks an executable by the name it is called with.
+	 */
+	@Nullable
+	static Path probeableExe(String exeAbsPath) {
+		try {
+			Path exe = Paths.get(exeAbsPath);
+			Path realExe = exe.toRealPath();
+			if (!Files.isRegularFile(realExe) || exe.getFileName() == null || !exe.getFileName().equals(realExe.getFileName())) {
+				return null;
+			}
+			byte[] start = new byte[2];
+			try (InputStream input = Files.newInputStream(realExe)) {
+				if (input.read(start) == 2 && start[0] == '#' && start[1] == '!') {
+					return null;
+				}
+			}
+			return realExe;
+		} catch (IOException | InvalidPathException e) {
+			return null;
+		}
+	}
+
+	/** Everything that the version depends on, besides the content of the executable itself. */
+	private String probeKey(Path realExe) {
+		return String.join("\n",
+				realExe.toString(),
+				versionFlag,
+				versionRegex.pattern());
+	}
+
+	private File probeFile(String probeKey) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(probeKey.getBytes(StandardCharsets.UTF_8));
+			StringBuilder fileName = new StringBuilder(name).append('-');
+			for (int i = 0; i < 16; ++i) {
+				fileName.append(String.format("%02x", hash[i]));
+			}
+			return new File(probeCacheDir, fileName.append(".properties").toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is always available", e);
+		}
+	}
+
+	private void remember(String probeKey, Path realExe, String versionFound) {
+		Probe probe = Probe.of(realExe, versionFound);
+		if (probe == null) {
+			// nothing to tell whether it changed
+			return;
+		}
+		PROBES.put(probeKey, probe);
+		if (probeCacheDir != null) {
+			probe.write(probeFile(probeKey));
+		}
+	}
+
+	/** The version of an executable at its real path, which is valid as long as the executable has the same size and modification time. */
+	private static final class Probe {
+		final String realExe;
+		final String versionFound;
+		final long lastModified;
+		final long size;
+
+		private Probe(String realExe, String versionFound, long lastModified, long size) {
+			this.realExe = realExe;
+			this.versionFound = versionFound;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
+		@Nullable
+		static Probe of(Path realExe, String versionFound) {
+			File exe = realExe.toFile();
+			return exe.isFile() ? new Probe(exe.getPath(), versionFound, exe.lastModified(), exe.length()) : null;
+		}
+
+		boolean isCurrent() {
+			File exe = new File(realExe);
+			return exe.isFile() && exe.lastModified() == lastModified && exe.length() == size;
+		}
+
+		/** Returns the probe in the given file, or null if there is none, or it can not be read. */
+		@Nullable
+		static Probe read(File file) {
+			if (!file.isFile()) {
+				return null;
+			}
+			Properties properties = new Properties();
+			try (InputStream input = Files.newInputStream(file.toPath())) {
+				properties.load(input);
+				return new Probe(Objects.requireNonNull(properties.getProperty("realExe")), Objects.requireNonNull(properties.getProperty("versionFound")),
+						Long.parseLong(properties.getProperty("lastModified")), Long.parseLong(properties.getProperty("size")));
+			} catch (IOException | RuntimeException e) {
+				return null;
+			}
+		}
+
+		/** Writes the probe to the given file, if possible, via a temporary file so that readers never see half of it. */
+		void write(File file) {
+			Properties properties = new Properties();
+			properties.setProperty("realExe", realExe);
+			properties.setProperty("versionFound", versionFound);
+			properties.setProperty("lastModified", Long.toString(lastModified));
+			properties.setProperty("size", Long.toString(size));
+			try {
+				Files.createDirectories(file.getParentFile().toPath());
+				Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+				try {
+					try (OutputStream output = Files.newOutputStream(tmp)) {
+						properties.store(output, null);
+					}
+					Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(tmp);
+				}
+			} catch (IOException e) {
+				// it will be probed again next time
+			}
+		}
+	}
+
 	private RuntimeException cantFind(String message, ProcessRunner.Result cmd) {
 		return exceptionFmt(message, cmd, fixCantFind == null ? null : fixCantFind.replace("{version}", version));
 	}
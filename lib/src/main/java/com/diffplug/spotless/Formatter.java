@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,7 +30,9 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -242,27 +244,65 @@ public final class Formatter implements Serializable, AutoCloseable {
 		Objects.requireNonNull(file, "file");
 
 		for (FormatterStep step : steps) {
-			try {
-				String formatted = step.format(unix, file);
-				if (formatted == null) {
-					// This probably means it was a step that only checks
-					// for errors and doesn't actually have any fixes.
-					// No exception was thrown so we can just continue.
-				} else {
-					// Should already be unix-only, but some steps might misbehave.
-					unix = LineEnding.toUnix(formatted);
+			unix = compute(step, unix, file);
+		}
+		return unix;
+	}
+
+	/**
+	 * Returns the result of calling all of the FormatterSteps on the content of each of the given files, like
+	 * {@link #compute(String, File)}, but each step gets all of the files at once, see {@link FormatterStep#formatBatch(Map)}.
+	 * If a step fails on the batch, it formats the files one at a time instead, so that the failure is reported for
+	 * the file which caused it, according to the {@link FormatExceptionPolicy}.
+	 */
+	public Map<File, String> computeBatch(Map<File, String> unixByFile) {
+		Objects.requireNonNull(unixByFile, "unixByFile");
+
+		Map<File, String> current = new LinkedHashMap<>(unixByFile);
+		for (FormatterStep step : steps) {
+			Map<File, String> formatted = null;
+			if (current.size() > 1) {
+				try {
+					formatted = step.formatBatch(current);
+				} catch (Throwable e) {
+					// fall back to one file at a time below
 				}
-			} catch (Throwable e) {
-				if (file == NO_FILE_SENTINEL) {
-					exceptionPolicy.handleError(e, step, "");
+			}
+			for (Map.Entry<File, String> entry : current.entrySet()) {
+				String result = formatted == null ? null : formatted.get(entry.getKey());
+				if (result == null) {
+					entry.setValue(compute(step, entry.getValue(), entry.getKey()));
 				} else {
-					// Path may be forged from a different FileSystem than Filesystem.default
-					String relativePath = rootDir.relativize(rootDir.getFileSystem().getPath(file.getPath())).toString();
-					exceptionPolicy.handleError(e, step, relativePath);
+					// Should already be unix-only, but some steps might misbehave.
+					entry.setValue(LineEnding.toUnix(result));
 				}
 			}
 		}
-		return unix;
+		return current;
+	}
+
+	private String compute(FormatterStep step, String unix, File file) {
+		try {
+			String formatted = step.format(unix, file);
+			if (formatted == null) {
+				// This probably means it was a step that only checks
+				// for errors and doesn't actually have any fixes.
+				// No exception was thrown so we can just continue.
+				return unix;
+			} else {
+				// Should already be unix-only, but some steps might misbehave.
+				return LineEnding.toUnix(formatted);
+			}
+		} catch (Throwable e) {
+			if (file == NO_FILE_SENTINEL) {
+				exceptionPolicy.handleError(e, step, "");
+			} else {
+				// Path may be forged from a different FileSystem than Filesystem.default
+				String relativePath = rootDir.relativize(rootDir.getFileSystem().getPath(file.getPath())).toString();
+				exceptionPolicy.handleError(e, step, relativePath);
+			}
+			return unix;
+		}
 	}
 
 	@Override
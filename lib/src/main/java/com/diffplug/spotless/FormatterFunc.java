@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package com.diffplug.spotless;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -53,6 +54,9 @@ public interface FormatterFunc {
 		public static Closeable ofDangerous(AutoCloseable closeable, FormatterFunc function) {
 			Objects.requireNonNull(closeable, "closeable");
 			Objects.requireNonNull(function, "function");
+			if (function instanceof Batch) {
+				return new BatchCloseable(closeable, (Batch) function);
+			}
 			return new Closeable() {
 				@Override
 				public void close() {
@@ -133,6 +137,20 @@ public interface FormatterFunc {
 		}
 	}
 
+	/**
+	 * A {@link FormatterFunc} which can also format many files with a single call, for formatters whose overhead
+	 * per call (e.g. a request to a server, or starting a process) dominates the time it takes to format a small file.
+	 * {@link Closeable#ofDangerous(AutoCloseable, FormatterFunc)} keeps this capability.
+	 */
+	interface Batch extends FormatterFunc {
+		/**
+		 * Formats the unix content of every given file, and returns the formatted content of each file in the same order.
+		 * If any of the files fails to format, this throws, and the caller can format the files one at a time with
+		 * {@link #apply(String, File)} to find out which one failed.
+		 */
+		Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception;
+	}
+
 	/**
 	 * Ideally, formatters don't need the underlying file. But in case they do, they should only use it's path,
 	 * and should never read the content inside the file, because that breaks the {@code Function<String, String>} composition
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@ package com.diffplug.spotless;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -45,6 +46,23 @@ public interface FormatterStep extends Serializable {
 	 */
 	public @Nullable String format(String rawUnix, File file) throws Exception;
 
+	/**
+	 * Returns a formatted version of the content of each of the given files, in the same order, using the
+	 * content itself for files which the step has no changes to make.
+	 * <p>
+	 * By default this calls {@link #format(String, File)} for each file, but steps whose formatting function
+	 * is a {@link FormatterFunc.Batch} format all of them with a single call, which saves the overhead per call
+	 * of formatters which e.g. send a request to a server, or start a process.
+	 *
+	 * @param rawUnixByFile
+	 *            the content to format by the file it was obtained from, see {@link #format(String, File)}
+	 * @return the formatted content by file, guaranteed to only have unix-style newlines
+	 * @throws Exception if the formatter step experiences a problem with any of the files
+	 */
+	public default Map<File, String> formatBatch(Map<File, String> rawUnixByFile) throws Exception {
+		return FormatterStepImpl.formatEach(this, rawUnixByFile);
+	}
+
 	/**
 	 * Returns a new FormatterStep which will only apply its changes
 	 * to files which pass the given filter.
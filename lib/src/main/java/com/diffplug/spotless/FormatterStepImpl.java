@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@ package com.diffplug.spotless;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 
@@ -76,10 +78,35 @@ abstract class FormatterStepImpl<State extends Serializable> extends Strict<Stat
 			Objects.requireNonNull(state, "state");
 			Objects.requireNonNull(rawUnix, "rawUnix");
 			Objects.requireNonNull(file, "file");
+			return formatter().apply(rawUnix, file);
+		}
+
+		@Override
+		public Map<File, String> formatBatch(Map<File, String> rawUnixByFile) throws Exception {
+			Objects.requireNonNull(rawUnixByFile, "rawUnixByFile");
+			if (rawUnixByFile.size() > 1 && !rawUnixByFile.containsKey(Formatter.NO_FILE_SENTINEL)) {
+				FormatterFunc formatter = formatter();
+				if (formatter instanceof FormatterFunc.Batch) {
+					Map<File, String> formatted = ((FormatterFunc.Batch) formatter).applyBatch(rawUnixByFile);
+					Map<File, String> inOrder = new LinkedHashMap<>(rawUnixByFile.size());
+					for (File file : rawUnixByFile.keySet()) {
+						String result = formatted.get(file);
+						if (result == null) {
+							throw new IllegalStateException("Step '" + name + "' did not return a result for " + file);
+						}
+						inOrder.put(file, result);
+					}
+					return inOrder;
+				}
+			}
+			return formatEach(this, rawUnixByFile);
+		}
+
+		private FormatterFunc formatter() throws Exception {
 			if (formatter == null) {
 				formatter = stateToFormatter.apply(state());
 			}
-			return formatter.apply(rawUnix, file);
+			return formatter;
 		}
 
 		void cleanupFormatterFunc() {
@@ -116,6 +143,16 @@ abstract class FormatterStepImpl<State extends Serializable> extends Strict<Stat
 		}
 	}
 
+	/** Implements {@link FormatterStep#formatBatch(Map)} with a call to {@link FormatterStep#format(String, File)} per file. */
+	static Map<File, String> formatEach(FormatterStep step, Map<File, String> rawUnixByFile) throws Exception {
+		Map<File, String> formatted = new LinkedHashMap<>(rawUnixByFile.size());
+		for (Map.Entry<File, String> entry : rawUnixByFile.entrySet()) {
+			String result = step.format(entry.getValue(), entry.getKey());
+			formatted.put(entry.getKey(), result == null ? entry.getValue() : result);
+		}
+		return formatted;
+	}
+
 	static void checkNotSentinel(File file) {
 		if (file == Formatter.NO_FILE_SENTINEL) {
 			throw new IllegalArgumentException("This step requires the underlying file. If this is a test, use StepHarnessWithFile");
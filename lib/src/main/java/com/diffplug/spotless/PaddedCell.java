@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,7 +25,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -191,27 +193,77 @@ public final class PaddedCell {
 	}
 
 	public static DirtyState calculateDirtyState(Formatter formatter, File file, byte[] rawBytes) throws IOException {
-		String raw = new String(rawBytes, formatter.getEncoding());
-		// check that all characters were encodable
-		String encodingError = EncodingErrorMsg.msg(raw, rawBytes, formatter.getEncoding());
-		if (encodingError != null) {
-			throw new IllegalArgumentException(encodingError);
-		}
-		String rawUnix = LineEnding.toUnix(raw);
+		String rawUnix = rawUnix(formatter, rawBytes);
 
 		// enforce the format
 		String formattedUnix = formatter.compute(rawUnix, file);
 		// convert the line endings if necessary
-		String formatted = formatter.computeLineEndings(formattedUnix, file);
+		byte[] formattedBytes = formatter.computeLineEndings(formattedUnix, file).getBytes(formatter.getEncoding());
 
 		// if F(input) == input, then the formatter is well-behaving and the input is clean
-		byte[] formattedBytes = formatted.getBytes(formatter.getEncoding());
 		if (Arrays.equals(rawBytes, formattedBytes)) {
 			return isClean;
 		}
 
 		// F(input) != input, so we'll do a padded check
 		String doubleFormattedUnix = formatter.compute(formattedUnix, file);
+		return calculateDirtyState(formatter, file, rawBytes, rawUnix, formattedUnix, formattedBytes, doubleFormattedUnix);
+	}
+
+	/**
+	 * Calculates the {@link DirtyState} of each of the given files, like {@link #calculateDirtyState(Formatter, File, byte[])},
+	 * but formats them together with {@link Formatter#computeBatch(Map)}, so that the steps which support it format all of
+	 * them with a single call.
+	 */
+	public static Map<File, DirtyState> calculateDirtyStates(Formatter formatter, Map<File, byte[]> rawBytesByFile) throws IOException {
+		Objects.requireNonNull(formatter, "formatter");
+		Objects.requireNonNull(rawBytesByFile, "rawBytesByFile");
+
+		Map<File, String> rawUnixByFile = new LinkedHashMap<>();
+		for (Map.Entry<File, byte[]> entry : rawBytesByFile.entrySet()) {
+			rawUnixByFile.put(entry.getKey(), rawUnix(formatter, entry.getValue()));
+		}
+
+		// enforce the format
+		Map<File, String> formattedUnixByFile = formatter.computeBatch(rawUnixByFile);
+		Map<File, byte[]> formattedBytesByFile = new LinkedHashMap<>();
+		Map<File, String> dirtyFormattedUnixByFile = new LinkedHashMap<>();
+		for (Map.Entry<File, String> entry : formattedUnixByFile.entrySet()) {
+			File file = entry.getKey();
+			byte[] formattedBytes = formatter.computeLineEndings(entry.getValue(), file).getBytes(formatter.getEncoding());
+			formattedBytesByFile.put(file, formattedBytes);
+			if (!Arrays.equals(rawBytesByFile.get(file), formattedBytes)) {
+				dirtyFormattedUnixByFile.put(file, entry.getValue());
+			}
+		}
+
+		// F(input) != input for the dirty files, so we'll do a padded check on them
+		Map<File, String> doubleFormattedUnixByFile = formatter.computeBatch(dirtyFormattedUnixByFile);
+		Map<File, DirtyState> dirtyStates = new LinkedHashMap<>();
+		for (File file : rawBytesByFile.keySet()) {
+			String doubleFormattedUnix = doubleFormattedUnixByFile.get(file);
+			if (doubleFormattedUnix == null) {
+				dirtyStates.put(file, isClean);
+			} else {
+				dirtyStates.put(file, calculateDirtyState(formatter, file, rawBytesByFile.get(file), rawUnixByFile.get(file),
+						dirtyFormattedUnixByFile.get(file), formattedBytesByFile.get(file), doubleFormattedUnix));
+			}
+		}
+		return dirtyStates;
+	}
+
+	private static String rawUnix(Formatter formatter, byte[] rawBytes) {
+		String raw = new String(rawBytes, formatter.getEncoding());
+		// check that all characters were encodable
+		String encodingError = EncodingErrorMsg.msg(raw, rawBytes, formatter.getEncoding());
+		if (encodingError != null) {
+			throw new IllegalArgumentException(encodingError);
+		}
+		return LineEnding.toUnix(raw);
+	}
+
+	/** The rest of the padded check for a file whose formatted bytes differ from its raw bytes. */
+	private static DirtyState calculateDirtyState(Formatter formatter, File file, byte[] rawBytes, String rawUnix, String formattedUnix, byte[] formattedBytes, String doubleFormattedUnix) {
 		if (doubleFormattedUnix.equals(formattedUnix)) {
 			// most dirty files are idempotent-dirty, so this is a quick-short circuit for that common case
 			return new DirtyState(formattedBytes);
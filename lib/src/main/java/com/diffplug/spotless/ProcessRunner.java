@@ -1,5 +1,5 @@
 /*
- * Copyright 2020-2023 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,10 +18,15 @@ package com.diffplug.spotless;
 import static java.util.Objects.requireNonNull;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -32,6 +37,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 
 import javax.annotation.Nonnull;
@@ -44,16 +50,32 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  * If you don't read stdout and stderr on their own threads, you risk
  * deadlock on a clogged buffer.
  * <p>
- * ProcessRunner allocates two threads specifically for the purpose of
- * flushing stdout and stderr to buffers.  These threads will remain alive until
- * the ProcessRunner is closed, so it is especially useful for repeated
- * calls to an external process.
+ * ProcessRunner flushes stdout and stderr to buffers on threads which are
+ * shared by all ProcessRunners of the JVM: virtual threads on Java 21+, and
+ * otherwise a pool of daemon threads which grows with the number of processes
+ * running at the same time, and shrinks again once they are done.  So it is
+ * cheap to keep a ProcessRunner per formatter, even with many formatters
+ * running in parallel.
  */
 public class ProcessRunner implements AutoCloseable {
-	private final ExecutorService threadStdOut = Executors.newSingleThreadExecutor();
-	private final ExecutorService threadStdErr = Executors.newSingleThreadExecutor();
-	private final ByteArrayOutputStream bufStdOut;
-	private final ByteArrayOutputStream bufStdErr;
+	/**
+	 * Draining can not be queued behind other processes, because a process with a full pipe never ends.
+	 * Also used by {@link CoProcess}, for the same reason.
+	 * <p>
+	 * So before Java 21 this pool is deliberately unbounded: it holds a platform thread for each stream which is
+	 * being drained, which is two per running process plus one per pending {@link CoProcess} response. Idle threads
+	 * end after a minute. Each ProcessRunner used to own exactly two threads instead, so a build which runs
+	 * very many processes at once now has as many threads as it has streams to drain, rather than as many as
+	 * it has runners.
+	 */
+	static final ExecutorService DRAIN_THREADS = drainThreads();
+	/** Read size for draining, pipes rarely hand out more than this at once. */
+	private static final int DRAIN_CHUNK = 8 * 1024;
+	/** Formatters print about as much as they are given, so the output buffer starts with room for that plus some. */
+	private static final int EXPECTED_OUTPUT_SLACK = 1024;
+
+	private final int limitedBuffers;
+	private volatile boolean closed;
 
 	public ProcessRunner() {
 		this(-1);
@@ -64,8 +86,24 @@ public class ProcessRunner implements AutoCloseable {
 	}
 
 	private ProcessRunner(int limitedBuffers) {
-		this.bufStdOut = limitedBuffers >= 0 ? new RingBufferByteArrayOutputStream(limitedBuffers) : new ByteArrayOutputStream();
-		this.bufStdErr = limitedBuffers >= 0 ? new RingBufferByteArrayOutputStream(limitedBuffers) : new ByteArrayOutputStream();
+		this.limitedBuffers = limitedBuffers;
+	}
+
+	private static ExecutorService drainThreads() {
+		try {
+			// Java 21+, looked up reflectively because we compile against older versions
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "spotless-process-drain");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private ByteArrayOutputStream newBuffer(int expectedSize) {
+		return limitedBuffers >= 0 ? new RingBufferByteArrayOutputStream(limitedBuffers) : new ByteArrayOutputStream(expectedSize);
 	}
 
 	/** Executes the given shell command (using {@code cmd} on windows and {@code sh} on unix). */
@@ -122,6 +160,59 @@ public class ProcessRunner implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Creates a process with the given arguments, and returns its stdout if it exits with zero, like
+	 * {@link #exec(File, Map, byte[], List)} followed by {@link Result#assertExitZero(Charset)}. But rather than
+	 * copying the whole input and output into byte arrays first, stdin is encoded from {@code stdin} on another
+	 * thread while stdout is decoded straight into the result, which suits large inputs and tools which start
+	 * printing before they have read all of their input.
+	 */
+	public String execStreaming(@Nullable File cwd, @Nullable Map<String, String> environment, String stdin, Charset charset, List<String> args) throws IOException, InterruptedException {
+		checkState();
+		ProcessBuilder builder = new ProcessBuilder(args);
+		if (cwd != null) {
+			builder.directory(cwd);
+		}
+		if (environment != null) {
+			builder.environment().putAll(environment);
+		}
+		Process process = builder.start();
+		ByteArrayOutputStream bufStdErr = newBuffer(EXPECTED_OUTPUT_SLACK);
+		Future<byte[]> errorFut = DRAIN_THREADS.submit(() -> drainToBytes(process.getErrorStream(), bufStdErr));
+		Future<?> inputFut = DRAIN_THREADS.submit(() -> {
+			try (Writer writer = new OutputStreamWriter(process.getOutputStream(), charset)) {
+				for (int start = 0; start < stdin.length(); start += DRAIN_CHUNK) {
+					writer.write(stdin, start, Math.min(DRAIN_CHUNK, stdin.length() - start));
+				}
+			}
+			return null;
+		});
+		StringBuilder stdOut = new StringBuilder(stdin.length() + EXPECTED_OUTPUT_SLACK);
+		try (Reader reader = new InputStreamReader(process.getInputStream(), charset)) {
+			char[] buf = new char[DRAIN_CHUNK];
+			int numRead;
+			while ((numRead = reader.read(buf)) != -1) {
+				stdOut.append(buf, 0, numRead);
+			}
+		} catch (IOException e) {
+			process.destroyForcibly();
+			throw e;
+		}
+		int exitCode = process.waitFor();
+		try {
+			if (exitCode != 0) {
+				throw new RuntimeException(new Result(args, exitCode, stdOut.toString().getBytes(charset), errorFut.get()).toString());
+			}
+			inputFut.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw ThrowingEx.asRuntime(e);
+		}
+		return stdOut.toString();
+	}
+
 	/**
 	 * Creates a process with the given arguments, the given byte array is written to stdin immediately.
 	 * <br>
@@ -156,40 +247,115 @@ public class ProcessRunner implements AutoCloseable {
 		}
 
 		Process process = builder.start();
-		Future<byte[]> outputFut = threadStdOut.submit(() -> drainToBytes(process.getInputStream(), bufStdOut));
+		ByteArrayOutputStream bufStdOut = newBuffer(stdin.length + EXPECTED_OUTPUT_SLACK);
+		Future<byte[]> outputFut = DRAIN_THREADS.submit(() -> drainToBytes(process.getInputStream(), bufStdOut));
 		Future<byte[]> errorFut = null;
 		if (!redirectErrorStream) {
-			errorFut = threadStdErr.submit(() -> drainToBytes(process.getErrorStream(), bufStdErr));
+			ByteArrayOutputStream bufStdErr = newBuffer(EXPECTED_OUTPUT_SLACK);
+			errorFut = DRAIN_THREADS.submit(() -> drainToBytes(process.getErrorStream(), bufStdErr));
 		}
 		// write stdin
 		process.getOutputStream().write(stdin);
 		process.getOutputStream().close();
-		return new LongRunningProcess(process, args, outputFut, errorFut);
+		return new LongRunningProcess(process, args, outputFut, errorFut, bufStdOut);
 	}
 
-	private static void drain(InputStream input, OutputStream output) throws IOException {
-		byte[] buf = new byte[1024];
+	static void drain(InputStream input, OutputStream output) throws IOException {
+		byte[] buf = new byte[DRAIN_CHUNK];
 		int numRead;
 		while ((numRead = input.read(buf)) != -1) {
 			output.write(buf, 0, numRead);
+			synchronized (output) {
+				// wake up anyone awaiting a line of output, see LongRunningProcess#awaitOutputLine
+				output.notifyAll();
+			}
 		}
 	}
 
 	private static byte[] drainToBytes(InputStream input, ByteArrayOutputStream buffer) throws IOException {
-		buffer.reset();
 		drain(input, buffer);
 		return buffer.toByteArray();
 	}
 
+	/**
+	 * Finds the first line which starts with a prefix in the output of a process, while that output grows. Each pass writes
+	 * the whole output to it, after {@link #startPass()}, but only the bytes which are new since the last pass are scanned.
+	 */
+	private static class LineScanner extends OutputStream {
+		private final byte[] prefix;
+		/** How many bytes of the output have been scanned in earlier passes. */
+		private int scanned;
+		/** The offset in the output of the current pass. */
+		private int position;
+		/** How much of the prefix the current line matches so far, or -1 if it does not start with the prefix. */
+		private int matched;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private @Nullable byte[] found;
+
+		LineScanner(byte[] prefix) {
+			this.prefix = prefix;
+		}
+
+		/** Starts a pass over the output from its start on. */
+		void startPass() {
+			position = 0;
+		}
+
+		@Override
+		public void write(int b) {
+			if (found != null || position++ < scanned) {
+				return;
+			}
+			++scanned;
+			if (b == '\n') {
+				if (matched == prefix.length) {
+					found = withoutCarriageReturn(line.toByteArray());
+					return;
+				}
+				matched = 0;
+				line.reset();
+			} else if (matched >= 0) {
+				if (matched < prefix.length) {
+					matched = b == (prefix[matched] & 0xff) ? matched + 1 : -1;
+				}
+				if (matched >= 0) {
+					line.write(b);
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// skip what was scanned already without looking at it
+			int skip = Math.max(0, Math.min(len, scanned - position));
+			position += skip;
+			for (int i = off + skip; i < off + len; ++i) {
+				write(b[i] & 0xff);
+			}
+		}
+
+		/** The matching line, if there is one. Unless the output has ended, the last line may still be incomplete, and doesn't count. */
+		@Nullable
+		byte[] matchingLine(boolean ended) {
+			if (found == null && ended && matched == prefix.length) {
+				found = withoutCarriageReturn(line.toByteArray());
+			}
+			return found;
+		}
+
+		private static byte[] withoutCarriageReturn(byte[] line) {
+			return line.length > 0 && line[line.length - 1] == '\r' ? Arrays.copyOf(line, line.length - 1) : line;
+		}
+	}
+
 	@Override
 	public void close() {
-		threadStdOut.shutdown();
-		threadStdErr.shutdown();
+		closed = true;
 	}
 
 	/** Checks if this {@code ProcessRunner} instance is still usable. */
 	private void checkState() {
-		if (threadStdOut.isShutdown() || threadStdErr.isShutdown()) {
+		if (closed) {
 			throw new IllegalStateException("ProcessRunner has been closed and must not be used anymore.");
 		}
 	}
@@ -291,12 +457,23 @@ public class ProcessRunner implements AutoCloseable {
 		private final List<String> args;
 		private final Future<byte[]> outputFut;
 		private final Future<byte[]> errorFut;
+		private final ByteArrayOutputStream bufStdOut;
 
+		/**
+		 * @deprecated use {@link ProcessRunner#start}, which is the only way to get a process whose output can be awaited
+		 *             with {@link #awaitOutputLine}. A process created by this constructor never sees any output there.
+		 */
+		@Deprecated
 		public LongRunningProcess(@Nonnull Process delegate, @Nonnull List<String> args, @Nonnull Future<byte[]> outputFut, @Nullable Future<byte[]> errorFut) {
+			this(delegate, args, outputFut, errorFut, new ByteArrayOutputStream());
+		}
+
+		private LongRunningProcess(@Nonnull Process delegate, @Nonnull List<String> args, @Nonnull Future<byte[]> outputFut, @Nullable Future<byte[]> errorFut, ByteArrayOutputStream bufStdOut) {
 			this.delegate = requireNonNull(delegate);
 			this.args = args;
 			this.outputFut = outputFut;
 			this.errorFut = errorFut;
+			this.bufStdOut = bufStdOut;
 		}
 
 		@Override
@@ -344,6 +521,44 @@ public class ProcessRunner implements AutoCloseable {
 			return delegate.isAlive();
 		}
 
+		/**
+		 * Waits until the process prints a line to stdout which starts with the given prefix, and returns that line.
+		 * This lets a server signal its readiness the moment it is ready, rather than being polled for it.
+		 *
+		 * @throws EOFException if the process ended its output without printing such a line
+		 * @throws TimeoutException if no such line was printed within the given timeout
+		 */
+		public String awaitOutputLine(String prefix, long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			byte[] prefixBytes = prefix.getBytes(Charset.defaultCharset());
+			LineScanner scanner = new LineScanner(prefixBytes);
+			synchronized (bufStdOut) {
+				while (true) {
+					boolean ended = outputFut.isDone();
+					if (bufStdOut instanceof RingBufferByteArrayOutputStream && ((RingBufferByteArrayOutputStream) bufStdOut).isOverLimit()) {
+						// once a ring buffer has wrapped, its content has moved, so it is scanned again from its start
+						scanner = new LineScanner(prefixBytes);
+					}
+					scanner.startPass();
+					bufStdOut.writeTo(scanner);
+					// unless the output has ended, the last line may still be incomplete
+					byte[] line = scanner.matchingLine(ended);
+					if (line != null) {
+						return new String(line, Charset.defaultCharset());
+					}
+					if (ended) {
+						throw new EOFException("Process ended its output without printing a line starting with '" + prefix + "'");
+					}
+					long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remainingMillis <= 0) {
+						throw new TimeoutException("Process did not print a line starting with '" + prefix + "' within " + timeout + " " + unit);
+					}
+					// the end of the output is not signalled, so recheck for it now and then
+					bufStdOut.wait(Math.min(remainingMillis, 100));
+				}
+			}
+		}
+
 		public Result result() throws ExecutionException, InterruptedException {
 			int exitCode = waitFor();
 			return new Result(args, exitCode, this.outputFut.get(), (this.errorFut != null ? this.errorFut.get() : null));
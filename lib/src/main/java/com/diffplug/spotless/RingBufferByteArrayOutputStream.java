@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -93,6 +93,11 @@ class RingBufferByteArrayOutputStream extends ByteArrayOutputStream {
 		isOverLimit = false;
 	}
 
+	/** Whether the buffer has wrapped around, so that it only holds the last {@code limit} bytes which were written. */
+	synchronized boolean isOverLimit() {
+		return isOverLimit;
+	}
+
 	// ---- output
 	@Override
 	public synchronized void writeTo(OutputStream out) throws IOException {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020-2022 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,13 +15,20 @@
  */
 package com.diffplug.spotless.cpp;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
@@ -44,23 +51,30 @@ public class ClangFormatStep {
 	private final String version;
 	private final @Nullable String pathToExe;
 	private final @Nullable String style;
+	private final @Nullable File probeCacheDir;
 
-	private ClangFormatStep(String version, @Nullable String pathToExe, @Nullable String style) {
+	private ClangFormatStep(String version, @Nullable String pathToExe, @Nullable String style, @Nullable File probeCacheDir) {
 		this.version = version;
 		this.pathToExe = pathToExe;
 		this.style = style;
+		this.probeCacheDir = probeCacheDir;
 	}
 
 	public static ClangFormatStep withVersion(String version) {
-		return new ClangFormatStep(version, null, null);
+		return new ClangFormatStep(version, null, null, null);
 	}
 
 	public ClangFormatStep withStyle(String style) {
-		return new ClangFormatStep(version, pathToExe, style);
+		return new ClangFormatStep(version, pathToExe, style, probeCacheDir);
 	}
 
 	public ClangFormatStep withPathToExe(String pathToExe) {
-		return new ClangFormatStep(version, pathToExe, style);
+		return new ClangFormatStep(version, pathToExe, style, probeCacheDir);
+	}
+
+	/** A directory in which to remember the version of the executable across builds, see {@link ForeignExe#probeCacheDir(File)}. */
+	public ClangFormatStep withProbeCacheDir(@Nullable File probeCacheDir) {
+		return new ClangFormatStep(version, pathToExe, style, probeCacheDir);
 	}
 
 	public FormatterStep create() {
@@ -78,6 +92,7 @@ public class ClangFormatStep {
 				"\n    github issue to handle this better: https://github.com/diffplug/spotless/issues/673";
 		final ForeignExe exe = ForeignExe.nameAndVersion("clang-format", version)
 				.pathToExe(pathToExe)
+				.probeCacheDir(probeCacheDir)
 				.fixCantFind(howToInstall)
 				.fixWrongVersion(
 						"You can tell Spotless to use the version you already have with {@code clangFormat('{versionFound}')}" +
@@ -101,7 +116,7 @@ public class ClangFormatStep {
 			this.exe = Objects.requireNonNull(pathToExe);
 		}
 
-		String format(ProcessRunner runner, String input, File file) throws IOException, InterruptedException {
+		private List<String> args() throws IOException, InterruptedException {
 			if (args == null) {
 				final List<String> tmpArgs = new ArrayList<>();
 				tmpArgs.add(exe.confirmVersionAndGetAbsolutePath());
@@ -110,14 +125,150 @@ public class ClangFormatStep {
 				}
 				args = tmpArgs;
 			}
-			final String[] processArgs = args.toArray(new String[args.size() + 1]);
-			processArgs[processArgs.length - 1] = "--assume-filename=" + file.getName();
+			return args;
+		}
+
+		String format(ProcessRunner runner, String input, File file) throws IOException, InterruptedException {
+			final List<String> processArgs = new ArrayList<>(args());
+			// the full path, so that clang-format finds the .clang-format of the file like it does in the batch
+			processArgs.add("--assume-filename=" + file.getAbsolutePath());
 			return runner.exec(input.getBytes(StandardCharsets.UTF_8), processArgs).assertExitZero(StandardCharsets.UTF_8);
 		}
 
+		/**
+		 * Formats many files with one clang-format per style. clang-format reads the files themselves, so only the
+		 * files whose content is still the content on disk are formatted together, and it prints the changes to each
+		 * of them as a separate replacements document, in the order of the files. Other files are formatted one at a time.
+		 */
+		Map<File, String> formatBatch(ProcessRunner runner, Map<File, String> inputs) throws IOException, InterruptedException {
+			final Map<File, String> outputs = new LinkedHashMap<>();
+			final Map<String, Map<File, byte[]>> groups = new LinkedHashMap<>();
+			for (Map.Entry<File, String> entry : inputs.entrySet()) {
+				final File file = entry.getKey();
+				final byte[] content = entry.getValue().getBytes(StandardCharsets.UTF_8);
+				if (file.isFile() && Arrays.equals(content, Files.readAllBytes(file.toPath()))) {
+					groups.computeIfAbsent(styleKey(file), key -> new LinkedHashMap<>()).put(file, content);
+				} else {
+					outputs.put(file, format(runner, entry.getValue(), file));
+				}
+			}
+			for (Map<File, byte[]> group : groups.values()) {
+				final List<String> processArgs = new ArrayList<>(args());
+				processArgs.add("--output-replacements-xml");
+				for (File file : group.keySet()) {
+					processArgs.add(file.getAbsolutePath());
+				}
+				final List<String> documents = splitReplacements(runner.exec(processArgs).assertExitZero(StandardCharsets.UTF_8));
+				if (documents.size() != group.size()) {
+					throw new IOException("clang-format printed " + documents.size() + " replacements for " + group.size() + " files");
+				}
+				int index = 0;
+				for (Map.Entry<File, byte[]> entry : group.entrySet()) {
+					outputs.put(entry.getKey(), applyReplacements(documents.get(index++), entry.getValue()));
+				}
+			}
+			return outputs;
+		}
+
+		/** The files which clang-format formats with the same style: an explicit style, or the nearest {@code .clang-format}. */
+		private String styleKey(File file) {
+			if (style != null && !style.startsWith("file")) {
+				return "";
+			}
+			for (File dir = file.getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+				if (new File(dir, ".clang-format").isFile() || new File(dir, "_clang-format").isFile()) {
+					return dir.getPath();
+				}
+			}
+			return "";
+		}
+
 		FormatterFunc.Closeable toFunc() {
 			ProcessRunner runner = new ProcessRunner();
-			return FormatterFunc.Closeable.of(runner, this::format);
+			return FormatterFunc.Closeable.ofDangerous(runner, new ClangFormatFunc(runner));
+		}
+
+		private class ClangFormatFunc implements FormatterFunc.NeedsFile, FormatterFunc.Batch {
+			private final ProcessRunner runner;
+
+			ClangFormatFunc(ProcessRunner runner) {
+				this.runner = runner;
+			}
+
+			@Override
+			public String applyWithFile(String unix, File file) throws Exception {
+				return format(runner, unix, file);
+			}
+
+			@Override
+			public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+				return formatBatch(runner, unixByFile);
+			}
+		}
+	}
+
+	private static final Pattern REPLACEMENT = Pattern.compile("<replacement offset='(\\d+)' length='(\\d+)'>([^<]*)</replacement>");
+	private static final Pattern ENTITY = Pattern.compile("&(#x?[0-9a-fA-F]+|lt|gt|amp|apos|quot);");
+
+	/** Splits the output of {@code clang-format --output-replacements-xml} for many files into one document per file. */
+	static List<String> splitReplacements(String output) {
+		final List<String> documents = new ArrayList<>();
+		for (String document : output.split("<\\?xml")) {
+			if (document.contains("<replacements")) {
+				documents.add(document);
+			}
+		}
+		return documents;
+	}
+
+	/** Applies the replacements of one document, whose offsets and lengths are in bytes, to the given content. */
+	static String applyReplacements(String document, byte[] content) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(content.length + 64);
+		int position = 0;
+		final Matcher matcher = REPLACEMENT.matcher(document);
+		while (matcher.find()) {
+			final int offset = Integer.parseInt(matcher.group(1));
+			final int length = Integer.parseInt(matcher.group(2));
+			if (offset < position || offset + length > content.length) {
+				throw new IOException("Replacement at " + offset + " is out of order or out of bounds");
+			}
+			result.write(content, position, offset - position);
+			result.write(unescape(matcher.group(3)).getBytes(StandardCharsets.UTF_8));
+			position = offset + length;
+		}
+		result.write(content, position, content.length - position);
+		return new String(result.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String unescape(String text) {
+		final Matcher matcher = ENTITY.matcher(text);
+		final StringBuilder result = new StringBuilder(text.length());
+		int position = 0;
+		while (matcher.find()) {
+			result.append(text, position, matcher.start());
+			final String entity = matcher.group(1);
+			switch (entity) {
+			case "lt":
+				result.append('<');
+				break;
+			case "gt":
+				result.append('>');
+				break;
+			case "amp":
+				result.append('&');
+				break;
+			case "apos":
+				result.append('\'');
+				break;
+			case "quot":
+				result.append('"');
+				break;
+			default:
+				final boolean hex = entity.startsWith("#x");
+				result.appendCodePoint(Integer.parseInt(entity.substring(hex ? 2 : 1), hex ? 16 : 10));
+			}
+			position = matcher.end();
 		}
+		return result.append(text, position, text.length()).toString();
 	}
 }
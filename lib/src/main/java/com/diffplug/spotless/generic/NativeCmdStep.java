@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,16 +19,24 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import com.diffplug.spotless.CoProcess;
+import com.diffplug.spotless.CoProcessPool;
 import com.diffplug.spotless.FileSignature;
 import com.diffplug.spotless.FormatterFunc;
 import com.diffplug.spotless.FormatterStep;
 import com.diffplug.spotless.ProcessRunner;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
 public class NativeCmdStep {
+	/** How long the command may take for a single file in server mode, unless specified otherwise. */
+	public static final Duration DEFAULT_SERVER_REQUEST_TIMEOUT = Duration.ofMinutes(1);
+
 	// prevent direct instantiation
 	private NativeCmdStep() {}
 
@@ -38,6 +46,30 @@ public class NativeCmdStep {
 		return FormatterStep.createLazy(name, () -> new State(FileSignature.signAsList(pathToExe), arguments), State::toFunc);
 	}
 
+	/** Like {@link #createServer(String, File, List, int, Duration)} with a single process and the {@link #DEFAULT_SERVER_REQUEST_TIMEOUT}. */
+	public static FormatterStep createServer(String name, File pathToExe, List<String> arguments) {
+		return createServer(name, pathToExe, arguments, 1, DEFAULT_SERVER_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Starts the command once, and keeps it running to format every file, rather than starting it for each file.
+	 * <p>
+	 * Each file is written to the stdin of the command as {@code "<length in bytes>\n<absolute path>\n<content>"},
+	 * with the length counting the path, the newline after it and the content, all encoded as UTF-8. The command
+	 * answers each file on stdout with {@code "ok <length in bytes>\n<formatted content>"}, or with
+	 * {@code "error <length in bytes>\n<message>"} if the file can not be formatted. It should exit once its stdin
+	 * is closed.
+	 * <p>
+	 * Up to {@code poolSize} processes are started as they are needed. A process which exits, or does not answer
+	 * within {@code requestTimeout}, is replaced by a new one, which gets one more try at the file.
+	 */
+	public static FormatterStep createServer(String name, File pathToExe, List<String> arguments, int poolSize, Duration requestTimeout) {
+		Objects.requireNonNull(name, "name");
+		Objects.requireNonNull(pathToExe, "pathToExe");
+		Objects.requireNonNull(requestTimeout, "requestTimeout");
+		return FormatterStep.createLazy(name, () -> new ServerState(FileSignature.signAsList(pathToExe), arguments, poolSize, requestTimeout), State::toFunc);
+	}
+
 	static class State implements Serializable {
 		private static final long serialVersionUID = 1L;
 
@@ -50,13 +82,17 @@ public class NativeCmdStep {
 			this.arguments = arguments;
 		}
 
-		String format(ProcessRunner runner, String input) throws IOException, InterruptedException {
+		List<String> argumentsWithPathToExe() {
 			List<String> argumentsWithPathToExe = new ArrayList<>();
 			argumentsWithPathToExe.add(pathToExe.getOnlyFile().getAbsolutePath());
 			if (arguments != null) {
 				argumentsWithPathToExe.addAll(arguments);
 			}
-			return runner.exec(input.getBytes(StandardCharsets.UTF_8), argumentsWithPathToExe).assertExitZero(StandardCharsets.UTF_8);
+			return argumentsWithPathToExe;
+		}
+
+		String format(ProcessRunner runner, String input) throws IOException, InterruptedException {
+			return runner.execStreaming(null, null, input, StandardCharsets.UTF_8, argumentsWithPathToExe());
 		}
 
 		FormatterFunc.Closeable toFunc() {
@@ -64,4 +100,31 @@ public class NativeCmdStep {
 			return FormatterFunc.Closeable.of(runner, this::format);
 		}
 	}
+
+	@SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+	static class ServerState extends State {
+		private static final long serialVersionUID = 1L;
+
+		// used for executing, but not for up-to-date checks, because they do not change the result
+		final transient int poolSize;
+		final transient Duration requestTimeout;
+
+		ServerState(FileSignature pathToExe, List<String> arguments, int poolSize, Duration requestTimeout) {
+			super(pathToExe, arguments);
+			this.poolSize = poolSize;
+			this.requestTimeout = requestTimeout;
+		}
+
+		@Override
+		FormatterFunc.Closeable toFunc() {
+			List<String> command = argumentsWithPathToExe();
+			CoProcessPool pool = new CoProcessPool(poolSize, requestTimeout, () -> CoProcess.start(null, null, command, CoProcess.Framing.lengthPrefixed()));
+			return FormatterFunc.Closeable.of(pool, ServerState::format);
+		}
+
+		private static String format(CoProcessPool pool, String input, File file) throws Exception {
+			byte[] request = (file.getAbsolutePath() + "\n" + input).getBytes(StandardCharsets.UTF_8);
+			return new String(pool.call(request), StandardCharsets.UTF_8);
+		}
+	}
 }
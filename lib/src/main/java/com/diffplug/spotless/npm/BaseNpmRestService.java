@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,16 @@
  */
 package com.diffplug.spotless.npm;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 abstract class BaseNpmRestService {
 
 	protected final SimpleRestClient restClient;
@@ -27,4 +37,50 @@ abstract class BaseNpmRestService {
 		return restClient.post("/shutdown");
 	}
 
+	/** Summarizes the latencies of the requests made through this service, by endpoint. */
+	String describeLatencies() {
+		return restClient.describeLatencies();
+	}
+
+	/**
+	 * Posts a batch of files to one of the {@code format-batch} endpoints, which stream back one
+	 * {@code "<status> <length in bytes>\n<content>"} frame per file, in order. The file contents are
+	 * sent as raw frames, see {@link SimpleRestClient#postFramed(String, Map, List)}.
+	 */
+	protected List<String> postBatch(String endpoint, Map<String, Object> jsonProperties, List<String> fileContents) {
+		int batchSize = fileContents.size();
+		return restClient.postFramed(endpoint, jsonProperties, fileContents, response -> {
+			List<String> results = new ArrayList<>(batchSize);
+			for (int i = 0; i < batchSize; ++i) {
+				String[] header = readLine(response).split(" ", 2);
+				if (header.length != 2) {
+					throw new IOException("Malformed header in batch response: " + String.join(" ", header));
+				}
+				int length = Integer.parseInt(header[1]);
+				byte[] content = response.readNBytes(length);
+				if (content.length != length) {
+					throw new EOFException("Batch response ended after " + i + " of " + batchSize + " results");
+				}
+				String result = new String(content, UTF_8);
+				if (!"ok".equals(header[0])) {
+					throw new SimpleRestClient.SimpleRestResponseException(500, result, "Unable to format entry " + i + " of batch at " + endpoint);
+				}
+				results.add(result);
+			}
+			return results;
+		});
+	}
+
+	private static String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) != '\n') {
+			if (b == -1) {
+				throw new EOFException("Batch response ended unexpectedly");
+			}
+			line.write(b);
+		}
+		return line.toString(UTF_8.name());
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -39,7 +39,19 @@ public class EslintConfig implements Serializable {
 
 	private final String eslintConfigJs;
 
+	// how many servers run does not change the result, so it is not part of the up-to-date state
+	@SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+	private final transient int serverPoolSize;
+
 	public EslintConfig(@Nullable File eslintConfigPath, @Nullable String eslintConfigJs) {
+		this(eslintConfigPath, eslintConfigJs, 1);
+	}
+
+	protected EslintConfig(@Nullable File eslintConfigPath, @Nullable String eslintConfigJs, int serverPoolSize) {
+		if (serverPoolSize < 1) {
+			throw new IllegalArgumentException("serverPoolSize must be at least 1, but was " + serverPoolSize);
+		}
+		this.serverPoolSize = serverPoolSize;
 		try {
 			this.eslintConfigPath = eslintConfigPath;
 			this.eslintConfigPathSignature = eslintConfigPath != null ? FileSignature.signAsList(this.eslintConfigPath) : FileSignature.signAsList();
@@ -50,7 +62,17 @@ public class EslintConfig implements Serializable {
 	}
 
 	public EslintConfig withEslintConfigPath(@Nullable File eslintConfigPath) {
-		return new EslintConfig(eslintConfigPath, this.eslintConfigJs);
+		return new EslintConfig(eslintConfigPath, this.eslintConfigJs, this.serverPoolSize);
+	}
+
+	/** Allows up to {@code serverPoolSize} ESLint servers, which are only started when formatting runs concurrently. */
+	public EslintConfig withServerPoolSize(int serverPoolSize) {
+		return new EslintConfig(this.eslintConfigPath, this.eslintConfigJs, serverPoolSize);
+	}
+
+	public int getServerPoolSize() {
+		// a deserialized config has no pool size, and runs a single server
+		return Math.max(1, serverPoolSize);
 	}
 
 	@Nullable
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,14 +20,20 @@ import static java.util.Objects.requireNonNull;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +42,6 @@ import com.diffplug.spotless.FormatterFunc;
 import com.diffplug.spotless.FormatterFunc.Closeable;
 import com.diffplug.spotless.FormatterStep;
 import com.diffplug.spotless.Provisioner;
-import com.diffplug.spotless.ThrowingEx;
 import com.diffplug.spotless.npm.EslintRestService.FormatOption;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -122,49 +127,97 @@ public class EslintFormatterStep {
 		}
 
 		@Override
-		@Nonnull
-		public FormatterFunc createFormatterFunc() {
-			try {
-				logger.info("Creating formatter function (starting server)");
-				ServerProcessInfo eslintRestServer = npmRunServer();
-				EslintRestService restService = new EslintRestService(eslintRestServer.getBaseUrl());
-				return Closeable.ofDangerous(() -> endServer(restService, eslintRestServer), new EslintFilePathPassingFormatterFunc(locations.projectDir(), nodeServerLayout.nodeModulesDir(), eslintConfigInUse, restService));
-			} catch (IOException e) {
-				throw ThrowingEx.asRuntime(e);
-			}
+		protected boolean needsOwnNodeServerDir() {
+			// the copied config file resolves its plugins from the node_modules next to it
+			return origEslintConfig.getEslintConfigPath() != null;
 		}
 
-		private void endServer(BaseNpmRestService restService, ServerProcessInfo restServer) throws Exception {
-			logger.info("Closing formatting function (ending server).");
-			try {
-				restService.shutdown();
-			} catch (Throwable t) {
-				logger.info("Failed to request shutdown of rest service via api. Trying via process.", t);
-			}
-			restServer.close();
+		@Override
+		@Nonnull
+		public FormatterFunc createFormatterFunc() {
+			logger.info("Creating formatter function (starting server)");
+			NodeServerRegistry.Lease<EslintRestService> lease = npmRunServerPool(eslintConfigInUse.getServerPoolSize(), EslintRestService::new);
+			NodeServerPool<EslintRestService> servers = lease.servers();
+			// type-aware rules can depend on other files of the project, which the cache keys do not cover
+			FormatResultCache resultCache = eslintConfigInUse instanceof EslintTypescriptConfig ? null : formatResultCache();
+			return Closeable.ofDangerous(lease, new EslintFilePathPassingFormatterFunc(locations.projectDir(), eslintConfigInUse, servers, resultCache));
 		}
 
 	}
 
-	private static class EslintFilePathPassingFormatterFunc implements FormatterFunc.NeedsFile {
+	private static class EslintFilePathPassingFormatterFunc implements FormatterFunc.NeedsFile, FormatterFunc.Batch {
 		private final File projectDir;
-		private final File nodeModulesDir;
 		private final EslintConfig eslintConfig;
-		private final EslintRestService restService;
+		private final NodeServerPool<EslintRestService> servers;
+		@Nullable
+		private final FormatResultCache resultCache;
+		/** The configuration which the results depend on, as part of their cache keys. */
+		private final String configFingerprint;
+
+		/** The id under which each server keeps the ESLint instance for our config, registered on first use. */
+		private final ConcurrentMap<EslintRestService, String> configIds = new ConcurrentHashMap<>();
 
-		public EslintFilePathPassingFormatterFunc(File projectDir, File nodeModulesDir, EslintConfig eslintConfig, EslintRestService restService) {
+		public EslintFilePathPassingFormatterFunc(File projectDir, EslintConfig eslintConfig, NodeServerPool<EslintRestService> servers, @Nullable FormatResultCache resultCache) {
 			this.projectDir = requireNonNull(projectDir);
-			this.nodeModulesDir = requireNonNull(nodeModulesDir);
 			this.eslintConfig = requireNonNull(eslintConfig);
-			this.restService = requireNonNull(restService);
+			this.servers = requireNonNull(servers);
+			this.resultCache = resultCache;
+			this.configFingerprint = resultCache == null ? "" : configFingerprint(eslintConfig);
+		}
+
+		private static String configFingerprint(EslintConfig eslintConfig) {
+			String configFileContent = eslintConfig.getEslintConfigPath() != null ? NpmResourceHelper.readUtf8StringFromFile(eslintConfig.getEslintConfigPath()) : "";
+			return configFileContent + "\n" + Objects.toString(eslintConfig.getEslintConfigJs(), "");
 		}
 
 		@Override
 		public String applyWithFile(String unix, File file) throws Exception {
-			Map<FormatOption, Object> eslintCallOptions = new HashMap<>();
-			setConfigToCallOptions(eslintCallOptions);
-			setFilePathToCallOptions(eslintCallOptions, file);
-			return restService.format(unix, eslintCallOptions);
+			if (resultCache == null) {
+				return format(unix, file);
+			}
+			return resultCache.apply(resultCache.key(configFingerprint, file.getAbsolutePath(), unix), () -> format(unix, file));
+		}
+
+		private String format(String unix, File file) throws Exception {
+			return servers.call(restService -> {
+				Map<FormatOption, Object> eslintCallOptions = new HashMap<>();
+				eslintCallOptions.put(FormatOption.ESLINT_CONFIG_ID, configId(restService));
+				setFilePathToCallOptions(eslintCallOptions, file);
+				return restService.format(unix, eslintCallOptions);
+			});
+		}
+
+		@Override
+		public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+			if (resultCache == null) {
+				return formatBatch(unixByFile);
+			}
+			return resultCache.applyBatch(unixByFile, entry -> resultCache.key(configFingerprint, entry.getKey().getAbsolutePath(), entry.getValue()), this::formatBatch);
+		}
+
+		private Map<File, String> formatBatch(Map<File, String> unixByFile) throws Exception {
+			Iterator<String> results = servers.callSliced(new ArrayList<>(unixByFile.entrySet()), (restService, slice) -> {
+				List<String> fileContents = new ArrayList<>(slice.size());
+				List<String> filePaths = new ArrayList<>(slice.size());
+				for (Map.Entry<File, String> entry : slice) {
+					fileContents.add(entry.getValue());
+					filePaths.add(entry.getKey().getAbsolutePath());
+				}
+				return restService.formatBatch(configId(restService), fileContents, filePaths);
+			}).iterator();
+			Map<File, String> formatted = new LinkedHashMap<>();
+			for (File file : unixByFile.keySet()) {
+				formatted.put(file, results.next());
+			}
+			return formatted;
+		}
+
+		private String configId(EslintRestService restService) {
+			return configIds.computeIfAbsent(restService, service -> {
+				Map<FormatOption, Object> configOptions = new HashMap<>();
+				setConfigToCallOptions(configOptions);
+				return service.init(configOptions);
+			});
 		}
 
 		private void setFilePathToCallOptions(Map<FormatOption, Object> eslintCallOptions, File fileToBeFormatted) {
@@ -182,7 +235,8 @@ public class EslintFormatterStep {
 				// if we are a ts config, see if we need to use specific paths or use default projectDir
 				File tsConfigFilePath = ((EslintTypescriptConfig) eslintConfig).getTypescriptConfigPath();
 				File tsConfigRootDir = tsConfigFilePath != null ? tsConfigFilePath.getParentFile() : projectDir;
-				eslintCallOptions.put(FormatOption.TS_CONFIG_ROOT_DIR, nodeModulesDir.getAbsoluteFile().toPath().relativize(tsConfigRootDir.getAbsoluteFile().toPath()).toString());
+				// absolute, because the server may have been started by an identical step of another project, with another working directory
+				eslintCallOptions.put(FormatOption.TS_CONFIG_ROOT_DIR, tsConfigRootDir.getAbsolutePath());
 			}
 		}
 	}
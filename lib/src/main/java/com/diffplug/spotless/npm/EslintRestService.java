@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,7 +15,10 @@
  */
 package com.diffplug.spotless.npm;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -25,17 +28,43 @@ public class EslintRestService extends BaseNpmRestService {
 		super(baseUrl);
 	}
 
+	/**
+	 * Registers the given configuration with the server, which creates its ESLint instance once and keeps it.
+	 * The returned id can be passed as {@link FormatOption#ESLINT_CONFIG_ID} instead of the configuration itself.
+	 */
+	public String init(Map<FormatOption, Object> configOptions) {
+		return restClient.postJson("/eslint/init", toJsonProperties(configOptions));
+	}
+
 	public String format(String fileContent, Map<FormatOption, Object> formatOptions) {
+		return restClient.postFramed("/eslint/format", toJsonProperties(formatOptions), Collections.singletonList(fileContent));
+	}
+
+	/**
+	 * Formats many files with a single request, using the configuration which was registered with {@link #init},
+	 * and returns the results in the same order.
+	 */
+	public List<String> formatBatch(String configId, List<String> fileContents, List<String> filePaths) {
+		List<JsonRawValue> files = new ArrayList<>(fileContents.size());
+		for (int i = 0; i < fileContents.size(); ++i) {
+			files.add(JsonWriter.of(Collections.singletonMap(FormatOption.FILE_PATH.backendName, filePaths.get(i))).toJsonRawValue());
+		}
+		Map<String, Object> jsonProperties = new LinkedHashMap<>();
+		jsonProperties.put(FormatOption.ESLINT_CONFIG_ID.backendName, configId);
+		jsonProperties.put("files", files);
+		return postBatch("/eslint/format-batch", jsonProperties, fileContents);
+	}
+
+	private static Map<String, Object> toJsonProperties(Map<FormatOption, Object> options) {
 		Map<String, Object> jsonProperties = new LinkedHashMap<>();
-		jsonProperties.put("file_content", fileContent);
-		for (Entry<FormatOption, Object> option : formatOptions.entrySet()) {
+		for (Entry<FormatOption, Object> option : options.entrySet()) {
 			jsonProperties.put(option.getKey().backendName, option.getValue());
 		}
-		return restClient.postJson("/eslint/format", jsonProperties);
+		return jsonProperties;
 	}
 
 	enum FormatOption {
-		ESLINT_OVERRIDE_CONFIG("eslint_override_config"), ESLINT_OVERRIDE_CONFIG_FILE("eslint_override_config_file"), FILE_PATH("file_path"), TS_CONFIG_ROOT_DIR("ts_config_root_dir");
+		ESLINT_OVERRIDE_CONFIG("eslint_override_config"), ESLINT_OVERRIDE_CONFIG_FILE("eslint_override_config_file"), FILE_PATH("file_path"), TS_CONFIG_ROOT_DIR("ts_config_root_dir"), ESLINT_CONFIG_ID("eslint_config_id");
 
 		private final String backendName;
 
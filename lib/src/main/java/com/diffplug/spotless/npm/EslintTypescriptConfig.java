@@ -1,5 +1,5 @@
 /*
- * Copyright 2022-2023 DiffPlug
+ * Copyright 2022-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -37,7 +37,11 @@ public class EslintTypescriptConfig extends EslintConfig {
 	private final FileSignature typescriptConfigPathSignature;
 
 	public EslintTypescriptConfig(@Nullable File eslintConfigPath, @Nullable String eslintConfigJs, @Nullable File typescriptConfigPath) {
-		super(eslintConfigPath, eslintConfigJs);
+		this(eslintConfigPath, eslintConfigJs, typescriptConfigPath, 1);
+	}
+
+	private EslintTypescriptConfig(@Nullable File eslintConfigPath, @Nullable String eslintConfigJs, @Nullable File typescriptConfigPath, int serverPoolSize) {
+		super(eslintConfigPath, eslintConfigJs, serverPoolSize);
 		try {
 			this.typescriptConfigPath = typescriptConfigPath;
 			this.typescriptConfigPathSignature = typescriptConfigPath != null ? FileSignature.signAsList(this.typescriptConfigPath) : FileSignature.signAsList();
@@ -48,7 +52,12 @@ public class EslintTypescriptConfig extends EslintConfig {
 
 	@Override
 	public EslintConfig withEslintConfigPath(@Nullable File eslintConfigPath) {
-		return new EslintTypescriptConfig(eslintConfigPath, this.getEslintConfigJs(), this.typescriptConfigPath);
+		return new EslintTypescriptConfig(eslintConfigPath, this.getEslintConfigJs(), this.typescriptConfigPath, this.getServerPoolSize());
+	}
+
+	@Override
+	public EslintConfig withServerPoolSize(int serverPoolSize) {
+		return new EslintTypescriptConfig(this.getEslintConfigPath(), this.getEslintConfigJs(), this.typescriptConfigPath, serverPoolSize);
 	}
 
 	@Nullable
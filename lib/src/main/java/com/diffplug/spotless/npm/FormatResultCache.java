@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.diffplug.spotless.ThrowingEx;
+
+/**
+ * Persists the results of an npm-based formatter in {@code <npm install cache>/format-results}, keyed by a hash of
+ * everything the result depends on, so that files which did not change since any earlier build on this machine -
+ * Gradle or Maven - never reach the node server. Failing to read or write the cache never fails formatting.
+ */
+final class FormatResultCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(FormatResultCache.class);
+
+	private static final String DIR_NAME = "format-results";
+
+	/** Entries which were not used for this long are removed. */
+	static final Duration MAX_ENTRY_AGE = Duration.ofDays(30);
+
+	/** Hits only refresh the age of an entry when it is older than this, to avoid a write for every hit. */
+	private static final Duration TOUCH_INTERVAL = Duration.ofDays(1);
+
+	/** The cache directories which were cleaned up by this JVM already. */
+	private static final Set<Path> EVICTED = ConcurrentHashMap.newKeySet();
+
+	private final Path root;
+	private final String[] namespace;
+
+	private FormatResultCache(Path root, String[] namespace) {
+		this.root = root;
+		this.namespace = namespace;
+	}
+
+	/**
+	 * Returns the result cache within the given npm install cache, or null if there is none. Results are only
+	 * shared between formatters with the same {@code namespace}, e.g. the step and its package.json.
+	 */
+	@Nullable
+	static FormatResultCache forCacheDir(@Nullable File cacheDir, String... namespace) {
+		if (cacheDir == null) {
+			return null;
+		}
+		Path root = cacheDir.toPath().resolve(DIR_NAME);
+		if (EVICTED.add(root)) {
+			evictUnused(root);
+		}
+		return new FormatResultCache(root, namespace.clone());
+	}
+
+	/** Returns the key of a result which depends on exactly the given parts, in addition to the namespace. */
+	String key(String... parts) {
+		MessageDigest digest = ThrowingEx.get(() -> MessageDigest.getInstance("SHA-256"));
+		for (String part : namespace) {
+			update(digest, part);
+		}
+		for (String part : parts) {
+			update(digest, part);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	private static void update(MessageDigest digest, String part) {
+		// length-prefixed, so that ("ab", "c") and ("a", "bc") differ
+		byte[] bytes = part.getBytes(UTF_8);
+		digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	/** Returns the cached result for the key, or formats and caches it. */
+	String apply(String key, ThrowingEx.Supplier<String> formatter) throws Exception {
+		String cached = get(key);
+		if (cached != null) {
+			return cached;
+		}
+		String formatted = formatter.get();
+		put(key, formatted);
+		return formatted;
+	}
+
+	/**
+	 * Returns the results for all entries of the batch, in its order, and only passes those entries to
+	 * {@code formatter} whose result is not cached yet.
+	 */
+	<T> Map<T, String> applyBatch(Map<T, String> batch, ThrowingEx.Function<Map.Entry<T, String>, String> keyOf,
+			ThrowingEx.Function<Map<T, String>, Map<T, String>> formatter) throws Exception {
+		Map<T, String> results = new LinkedHashMap<>();
+		Map<T, String> keys = new LinkedHashMap<>();
+		Map<T, String> misses = new LinkedHashMap<>();
+		for (Map.Entry<T, String> entry : batch.entrySet()) {
+			String key = keyOf.apply(entry);
+			String cached = get(key);
+			// keep the order of the batch, the misses are filled in below
+			results.put(entry.getKey(), cached);
+			if (cached == null) {
+				keys.put(entry.getKey(), key);
+				misses.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!misses.isEmpty()) {
+			Iterator<Map.Entry<T, String>> formatted = formatter.apply(misses).entrySet().iterator();
+			while (formatted.hasNext()) {
+				Map.Entry<T, String> entry = formatted.next();
+				results.put(entry.getKey(), entry.getValue());
+				put(keys.get(entry.getKey()), entry.getValue());
+			}
+		}
+		return results;
+	}
+
+	@Nullable
+	String get(String key) {
+		Path entry = entry(key);
+		try {
+			byte[] content = Files.readAllBytes(entry);
+			FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+			if (now.toMillis() - Files.getLastModifiedTime(entry).toMillis() > TOUCH_INTERVAL.toMillis()) {
+				Files.setLastModifiedTime(entry, now);
+			}
+			return new String(content, UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			logger.debug("Unable to read cached format result {}", entry, e);
+			return null;
+		}
+	}
+
+	void put(String key, String formatted) {
+		Path entry = entry(key);
+		try {
+			Files.createDirectories(entry.getParent());
+			// write to a temporary file first, so that concurrent builds never read a partial result
+			Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+			try {
+				Files.write(temp, formatted.getBytes(UTF_8));
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			logger.debug("Unable to cache format result {}", entry, e);
+		}
+	}
+
+	private Path entry(String key) {
+		return root.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	private static void evictUnused(Path root) {
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		long oldestAllowed = System.currentTimeMillis() - MAX_ENTRY_AGE.toMillis();
+		try (Stream<Path> entries = Files.walk(root, 2)) {
+			entries.filter(Files::isRegularFile).forEach(entry -> {
+				try {
+					if (Files.getLastModifiedTime(entry).toMillis() < oldestAllowed) {
+						Files.deleteIfExists(entry);
+					}
+				} catch (IOException e) {
+					logger.debug("Unable to evict cached format result {}", entry, e);
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Unable to evict cached format results in {}", root, e);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,7 +24,6 @@ import java.nio.file.Files;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import com.diffplug.spotless.ThrowingEx;
 
@@ -72,11 +71,21 @@ class JsonWriter {
 	}
 
 	String toJsonString() {
-		final String valueString = valueMap.entrySet()
-				.stream()
-				.map(entry -> "    " + jsonEscape(entry.getKey()) + ": " + jsonEscape(entry.getValue()))
-				.collect(Collectors.joining(",\n"));
-		return "{\n" + valueString + "\n}";
+		StringBuilder json = new StringBuilder("{\n");
+		boolean first = true;
+		for (Map.Entry<String, Object> entry : valueMap.entrySet()) {
+			if (!first) {
+				json.append(",\n");
+			}
+			first = false;
+			json.append("    ").append(jsonEscape(entry.getKey())).append(": ").append(jsonEscape(entry.getValue()));
+		}
+		return json.append("\n}").toString();
+	}
+
+	/** The json as UTF-8, ready to be sent as a request body. */
+	byte[] toJsonBytes() {
+		return toJsonString().getBytes(StandardCharsets.UTF_8);
 	}
 
 	JsonRawValue toJsonRawValue() {
@@ -90,7 +99,7 @@ class JsonWriter {
 			}
 		}
 		try {
-			Files.write(file.toPath(), toJsonString().getBytes(StandardCharsets.UTF_8));
+			Files.write(file.toPath(), toJsonBytes());
 		} catch (IOException e) {
 			throw ThrowingEx.asRuntime(e);
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,14 +16,21 @@
 package com.diffplug.spotless.npm;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.diffplug.spotless.ProcessRunner;
 import com.diffplug.spotless.ProcessRunner.Result;
 
 public class NodeModulesCachingNpmProcessFactory implements NpmProcessFactory {
@@ -32,6 +39,15 @@ public class NodeModulesCachingNpmProcessFactory implements NpmProcessFactory {
 
 	private static final TimedLogger timedLogger = TimedLogger.forLogger(logger);
 
+	/** Entries which have not been used for this long are evicted. */
+	private static final Duration MAX_ENTRY_AGE = Duration.ofDays(30);
+
+	/** Beyond this size, the least recently used entries are evicted. */
+	private static final long MAX_CACHE_BYTES = 2L * 1024 * 1024 * 1024;
+
+	/** Versions of node and npm executables, by path and modification time. */
+	private static final ConcurrentMap<String, String> TOOL_VERSIONS = new ConcurrentHashMap<>();
+
 	private final File cacheDir;
 
 	private final ShadowCopy shadowCopy;
@@ -60,47 +76,73 @@ public class NodeModulesCachingNpmProcessFactory implements NpmProcessFactory {
 	@Override
 	public NpmProcess createNpmInstallProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations, OnlinePreferrence onlinePreferrence) {
 		NpmProcess actualNpmInstallProcess = StandardNpmProcessFactory.INSTANCE.createNpmInstallProcess(nodeServerLayout, formatterStepLocations, onlinePreferrence);
-		return new CachingNmpInstall(actualNpmInstallProcess, nodeServerLayout);
+		return new CachingNmpInstall(actualNpmInstallProcess, nodeServerLayout, formatterStepLocations);
 	}
 
 	@Override
-	public NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations) {
-		return StandardNpmProcessFactory.INSTANCE.createNpmServeProcess(nodeServerLayout, formatterStepLocations);
+	public NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations, Map<String, String> serverEnvironment) {
+		return StandardNpmProcessFactory.INSTANCE.createNpmServeProcess(nodeServerLayout, formatterStepLocations, serverEnvironment);
 	}
 
 	private class CachingNmpInstall implements NpmProcess {
 
 		private final NpmProcess actualNpmInstallProcess;
 		private final NodeServerLayout nodeServerLayout;
+		private final NpmFormatterStepLocations formatterStepLocations;
 
-		public CachingNmpInstall(NpmProcess actualNpmInstallProcess, NodeServerLayout nodeServerLayout) {
+		public CachingNmpInstall(NpmProcess actualNpmInstallProcess, NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations) {
 			this.actualNpmInstallProcess = actualNpmInstallProcess;
 			this.nodeServerLayout = nodeServerLayout;
+			this.formatterStepLocations = formatterStepLocations;
 		}
 
 		@Override
 		public Result waitFor() {
 			String entryName = entryName();
 			if (shadowCopy.entryExists(entryName, NodeServerLayout.NODE_MODULES)) {
-				timedLogger.withInfo("Using cached node_modules for {} from {}", entryName, cacheDir)
-						.run(() -> shadowCopy.copyEntryInto(entryName(), NodeServerLayout.NODE_MODULES, nodeServerLayout.nodeModulesDir()));
-				return new CachedResult();
-			} else {
-				Result result = timedLogger.withInfo("calling actual npm install {}", actualNpmInstallProcess.describe())
-						.call(actualNpmInstallProcess::waitFor);
-				assert result.exitCode() == 0;
-				storeShadowCopy(entryName);
-				return result;
+				File copied = timedLogger.withInfo("Using cached node_modules for {} from {}", entryName, cacheDir)
+						.call(() -> shadowCopy.copyEntryInto(entryName, NodeServerLayout.NODE_MODULES, nodeServerLayout.nodeModulesDir()));
+				if (copied != null) {
+					return new CachedResult();
+				}
+				// evicted by another build in the meantime
 			}
+			Result result = timedLogger.withInfo("calling actual npm install {}", actualNpmInstallProcess.describe())
+					.call(actualNpmInstallProcess::waitFor);
+			assert result.exitCode() == 0;
+			storeShadowCopy(entryName);
+			return result;
 		}
 
 		private void storeShadowCopy(String entryName) {
 			timedLogger.withInfo("Caching node_modules for {} in {}", entryName, cacheDir)
-					.run(() -> shadowCopy.addEntry(entryName(), new File(nodeServerLayout.nodeModulesDir(), NodeServerLayout.NODE_MODULES)));
+					.run(() -> shadowCopy.addEntry(entryName, new File(nodeServerLayout.nodeModulesDir(), NodeServerLayout.NODE_MODULES)));
+			shadowCopy.evict(MAX_ENTRY_AGE, MAX_CACHE_BYTES);
 		}
 
+		/**
+		 * The entry is addressed by everything which determines the result of {@code npm install}, so that every
+		 * project and build sharing the cache dir can reuse it.
+		 */
 		private String entryName() {
-			return nodeServerLayout.nodeModulesDir().getName();
+			String npmrc = nodeServerLayout.npmrcFile().isFile() ? NpmResourceHelper.readUtf8StringFromFile(nodeServerLayout.npmrcFile()) : "";
+			String installInputs = String.join("\n",
+					NpmResourceHelper.readUtf8StringFromFile(nodeServerLayout.packageJsonFile()),
+					npmrc,
+					toolVersion(formatterStepLocations.nodeExecutable()),
+					toolVersion(formatterStepLocations.npmExecutable()));
+			return nodeServerLayout.nodeModulesDir().getName() + "-" + NpmResourceHelper.md5(installInputs);
+		}
+
+		private String toolVersion(File executable) {
+			return TOOL_VERSIONS.computeIfAbsent(executable.getAbsolutePath() + "@" + executable.lastModified(), unused -> {
+				Map<String, String> environment = Map.of("PATH", formatterStepLocations.nodeExecutable().getParentFile().getAbsolutePath() + File.pathSeparator + System.getenv("PATH"));
+				try (ProcessRunner runner = new ProcessRunner()) {
+					return runner.exec(null, environment, null, List.of(executable.getAbsolutePath(), "--version")).assertExitZero(StandardCharsets.UTF_8).trim();
+				} catch (IOException | InterruptedException e) {
+					throw new NpmProcessException("Unable to determine the version of " + executable, e);
+				}
+			});
 		}
 
 		@Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,8 @@
  */
 package com.diffplug.spotless.npm;
 
+import java.util.Map;
+
 import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
@@ -32,9 +34,9 @@ public class NodeServeApp extends NodeApp {
 		super(nodeServerLayout, npmConfig, formatterStepLocations);
 	}
 
-	ProcessRunner.LongRunningProcess startNpmServeProcess() {
+	ProcessRunner.LongRunningProcess startNpmServeProcess(Map<String, String> serverEnvironment) {
 		return timedLogger.withInfo("Starting npm based server in {} with {}.", this.nodeServerLayout.nodeModulesDir(), this.npmProcessFactory.describe())
-				.call(() -> npmProcessFactory.createNpmServeProcess(nodeServerLayout, formatterStepLocations).start());
+				.call(() -> npmProcessFactory.createNpmServeProcess(nodeServerLayout, formatterStepLocations, serverEnvironment).start());
 	}
 
 }
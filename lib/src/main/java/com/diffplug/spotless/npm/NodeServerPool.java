@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.diffplug.spotless.ThrowingEx;
+import com.diffplug.spotless.npm.NpmFormatterStepStateBase.ServerProcessInfo;
+
+/**
+ * A pool of up to {@code maxSize} node servers running the same app. Requests go to the least busy server,
+ * and a new server is only started once every running server is busy, so a single-threaded build never
+ * pays for more than one server.
+ */
+final class NodeServerPool<S extends BaseNpmRestService> implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeServerPool.class);
+
+	private final int maxSize;
+	private final IntFunction<ServerProcessInfo> serverStarter;
+	private final Function<String, S> serviceFactory;
+
+	/** Guarded by {@code this}. */
+	private final List<Member<S>> members = new ArrayList<>();
+	/** Guarded by {@code this}. */
+	private int starting;
+	/** Guarded by {@code this}. */
+	private boolean scaleUpFailed;
+	/** Sends the slices of {@link #callSliced}, guarded by {@code this}. */
+	private @Nullable ExecutorService sliceSender;
+
+	/** Starts the first server right away, so that a broken setup fails when the formatter is created. */
+	NodeServerPool(int maxSize, IntFunction<ServerProcessInfo> serverStarter, Function<String, S> serviceFactory) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The server pool size must be at least 1, but was " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.serverStarter = requireNonNull(serverStarter);
+		this.serviceFactory = requireNonNull(serviceFactory);
+		members.add(new Member<>(serverStarter.apply(0), serviceFactory));
+	}
+
+	/** Runs the given request against one of the servers of this pool. */
+	<T> T call(ThrowingEx.Function<S, T> request) throws Exception {
+		Member<S> member = acquire();
+		try {
+			return request.apply(member.service);
+		} finally {
+			synchronized (this) {
+				member.inFlight--;
+			}
+		}
+	}
+
+	/**
+	 * Splits the given items into one slice per server which the pool may run, runs the given request for each slice
+	 * concurrently, and returns the results of all slices in the order of the items. The plugins hand over their files
+	 * one batch at a time, so this is what keeps more than one server busy for them.
+	 */
+	<I, R> List<R> callSliced(List<I> items, ThrowingEx.BiFunction<S, List<I>, List<R>> request) throws Exception {
+		int slices = Math.min(maxSize, items.size());
+		if (slices <= 1) {
+			return call(service -> request.apply(service, items));
+		}
+		int sliceSize = (items.size() + slices - 1) / slices;
+		List<Future<List<R>>> others = new ArrayList<>();
+		try {
+			for (int start = sliceSize; start < items.size(); start += sliceSize) {
+				List<I> slice = items.subList(start, Math.min(items.size(), start + sliceSize));
+				others.add(sliceSender().submit(() -> call(service -> request.apply(service, slice))));
+			}
+			List<I> first = items.subList(0, sliceSize);
+			List<R> results = new ArrayList<>(call(service -> request.apply(service, first)));
+			for (Future<List<R>> other : others) {
+				try {
+					results.addAll(other.get());
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+			return results;
+		} finally {
+			for (Future<List<R>> other : others) {
+				other.cancel(false);
+			}
+		}
+	}
+
+	private synchronized ExecutorService sliceSender() {
+		if (sliceSender == null) {
+			sliceSender = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "spotless-npm-slice");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return sliceSender;
+	}
+
+	private Member<S> acquire() {
+		int index;
+		synchronized (this) {
+			Member<S> leastBusy = members.get(0);
+			for (Member<S> member : members) {
+				if (member.inFlight < leastBusy.inFlight) {
+					leastBusy = member;
+				}
+			}
+			if (leastBusy.inFlight == 0 || scaleUpFailed || members.size() + starting >= maxSize) {
+				leastBusy.inFlight++;
+				return leastBusy;
+			}
+			index = members.size() + starting;
+			starting++;
+		}
+		// start the server outside of the lock, so that the running servers keep serving requests meanwhile
+		Member<S> started = null;
+		try {
+			started = new Member<>(serverStarter.apply(index), serviceFactory);
+		} catch (RuntimeException e) {
+			logger.warn("Unable to start an additional npm server, continuing with the running ones.", e);
+		}
+		synchronized (this) {
+			starting--;
+			if (started == null) {
+				scaleUpFailed = true;
+				started = members.get(0);
+			} else {
+				members.add(started);
+				logger.info("Scaled npm server pool up to {} of at most {} servers.", members.size(), maxSize);
+			}
+			started.inFlight++;
+			return started;
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		List<Member<S>> toClose;
+		synchronized (this) {
+			toClose = new ArrayList<>(members);
+			members.clear();
+			if (sliceSender != null) {
+				sliceSender.shutdown();
+				sliceSender = null;
+			}
+		}
+		logger.info("Closing formatting function (ending {} server(s)).", toClose.size());
+		Exception failure = null;
+		for (Member<S> member : toClose) {
+			try {
+				member.close();
+			} catch (Exception e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static final class Member<S extends BaseNpmRestService> implements AutoCloseable {
+		private final ServerProcessInfo server;
+		private final S service;
+		/** Guarded by the pool. */
+		private int inFlight;
+
+		Member(ServerProcessInfo server, Function<String, S> serviceFactory) {
+			this.server = server;
+			this.service = serviceFactory.apply(server.getBaseUrl());
+		}
+
+		@Override
+		public void close() throws Exception {
+			logger.debug("Request latencies of npm server at {}: {}", server.getBaseUrl(), service.describeLatencies());
+			try {
+				service.shutdown();
+			} catch (Throwable t) {
+				logger.info("Failed to request shutdown of rest service via api. Trying via process.", t);
+			}
+			server.close();
+		}
+	}
+}
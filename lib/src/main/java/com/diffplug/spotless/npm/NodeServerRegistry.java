@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares node servers between identical npm steps of this JVM, e.g. the same prettier step in all projects of a
+ * multi-project build. A server pool is started by the first step which needs it, and every further step with
+ * the same key attaches to it. Once the last user released it, the pool is kept for {@link #IDLE_TIMEOUT}, so
+ * that the steps of tasks which run one after the other can still reuse it, and is closed afterwards.
+ */
+final class NodeServerRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(NodeServerRegistry.class);
+
+	static final Duration IDLE_TIMEOUT = Duration.ofSeconds(10);
+
+	/** Guarded by itself. */
+	private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+	@Nullable
+	private static ScheduledExecutorService idleCloser;
+
+	private NodeServerRegistry() {
+		// no instance
+	}
+
+	/**
+	 * Returns a lease on the server pool with the given key, which is started by {@code starter} unless it is
+	 * running already. Closing the lease releases the pool.
+	 */
+	@SuppressWarnings("unchecked")
+	static <S extends BaseNpmRestService> Lease<S> acquire(String key, Supplier<NodeServerPool<S>> starter) {
+		Entry entry;
+		synchronized (ENTRIES) {
+			entry = ENTRIES.computeIfAbsent(key, Entry::new);
+		}
+		// servers with different keys can be started concurrently, only starting the same one is serialized
+		synchronized (entry) {
+			if (entry.idleClose != null) {
+				entry.idleClose.cancel(false);
+				entry.idleClose = null;
+			}
+			if (entry.pool == null) {
+				entry.pool = requireNonNull(starter.get());
+			} else {
+				logger.info("Attaching to the running npm server shared with {} other step(s).", entry.users);
+			}
+			entry.users++;
+			return new Lease<>(entry, (NodeServerPool<S>) entry.pool);
+		}
+	}
+
+	private static void release(Entry entry) {
+		synchronized (entry) {
+			entry.users--;
+			if (entry.users == 0 && entry.pool != null) {
+				entry.idleClose = idleCloser().schedule(() -> closeIfIdle(entry), IDLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private static void closeIfIdle(Entry entry) {
+		NodeServerPool<?> toClose;
+		synchronized (entry) {
+			if (entry.users > 0 || entry.pool == null) {
+				return;
+			}
+			toClose = entry.pool;
+			entry.pool = null;
+			entry.idleClose = null;
+		}
+		try {
+			toClose.close();
+		} catch (Exception e) {
+			logger.warn("Unable to close idle npm server.", e);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService idleCloser() {
+		if (idleCloser == null) {
+			idleCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "spotless-npm-server-registry");
+				thread.setDaemon(true);
+				return thread;
+			});
+			// idle servers must not outlive the JVM, which does not wait for the daemon thread above
+			Runtime.getRuntime().addShutdownHook(new Thread(NodeServerRegistry::closeAllIdle, "spotless-npm-server-shutdown"));
+		}
+		return idleCloser;
+	}
+
+	private static void closeAllIdle() {
+		List<Entry> entries;
+		synchronized (ENTRIES) {
+			entries = new ArrayList<>(ENTRIES.values());
+		}
+		for (Entry entry : entries) {
+			closeIfIdle(entry);
+		}
+	}
+
+	private static final class Entry {
+		private final String key;
+		/** Guarded by {@code this}. */
+		@Nullable
+		private NodeServerPool<?> pool;
+		/** Guarded by {@code this}. */
+		private int users;
+		/** Guarded by {@code this}. */
+		@Nullable
+		private ScheduledFuture<?> idleClose;
+
+		private Entry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String toString() {
+			return "NodeServerRegistry.Entry[" + key + "]";
+		}
+	}
+
+	/** A step's share of a server pool, which is released when closed. */
+	static final class Lease<S extends BaseNpmRestService> implements AutoCloseable {
+		private final Entry entry;
+		private final NodeServerPool<S> servers;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Lease(Entry entry, NodeServerPool<S> servers) {
+			this.entry = entry;
+			this.servers = servers;
+		}
+
+		NodeServerPool<S> servers() {
+			return servers;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				release(entry);
+			}
+		}
+	}
+}
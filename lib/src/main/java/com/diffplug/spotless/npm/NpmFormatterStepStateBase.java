@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,13 +20,16 @@ import static java.util.Objects.requireNonNull;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +48,14 @@ abstract class NpmFormatterStepStateBase implements Serializable {
 
 	private static final long serialVersionUID = 1460749955865959948L;
 
+	private static final String DEFAULT_SERVER_NAME = "server";
+
+	/** Printed by common-serve.js once the server listens, followed by its address. */
+	private static final String SERVER_READY_PREFIX = "SPOTLESS_READY address=";
+
+	/** Tells common-serve.js to listen on the given unix domain socket instead of a tcp port. */
+	static final String SERVER_SOCKET_ENV = "SPOTLESS_NPM_SERVER_SOCKET";
+
 	@SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
 	protected final transient NodeServerLayout nodeServerLayout;
 
@@ -92,20 +103,66 @@ abstract class NpmFormatterStepStateBase implements Serializable {
 	}
 
 	protected ServerProcessInfo npmRunServer() throws ServerStartException, IOException {
+		return npmRunServer(DEFAULT_SERVER_NAME);
+	}
+
+	/**
+	 * Returns a lease on a pool of at most {@code maxSize} servers, see {@link NodeServerPool}. The pool is shared
+	 * with every identical step of this JVM, see {@link NodeServerRegistry}, and only started if none is running yet.
+	 */
+	protected <S extends BaseNpmRestService> NodeServerRegistry.Lease<S> npmRunServerPool(int maxSize, Function<String, S> serviceFactory) {
+		if (needsOwnNodeServerDir()) {
+			ThrowingEx.run(this::assertNodeServerDirReady);
+		}
+		return NodeServerRegistry.acquire(sharedServerKey(maxSize), () -> new NodeServerPool<>(maxSize,
+				index -> ThrowingEx.get(() -> npmRunServer(index == 0 ? DEFAULT_SERVER_NAME : DEFAULT_SERVER_NAME + "-" + index)),
+				serviceFactory));
+	}
+
+	/**
+	 * Whether this step needs its own prepared node server directory even when it attaches to a server which was
+	 * started by an identical step, e.g. because it places files there which resolve modules relative to themselves.
+	 */
+	protected boolean needsOwnNodeServerDir() {
+		return false;
+	}
+
+	/** Steps with the same key run the same app with the same node, so they can share their servers. */
+	private String sharedServerKey(int maxSize) {
+		return String.join("\n",
+				NpmResourceHelper.md5(npmConfig.getPackageJsonContent()),
+				NpmResourceHelper.md5(String.valueOf(npmConfig.getServeScriptContent())),
+				locations.nodeExecutable().getAbsolutePath(),
+				locations.npmExecutable().getAbsolutePath(),
+				String.valueOf(maxSize));
+	}
+
+	/**
+	 * Prefers a unix domain socket over loopback tcp, where both node and this JVM support it. Without
+	 * {@code SPOTLESS_NPM_SERVER_SOCKET}, e.g. on JDK 15 and older, the server listens on a random tcp port.
+	 */
+	static Map<String, String> serverEnvironment(File serverSocket) throws IOException {
+		Map<String, String> serverEnvironment = new HashMap<>();
+		if (UnixSocketHttp.canUse(serverSocket.toPath())) {
+			NpmResourceHelper.deleteFileIfExists(serverSocket);
+			serverEnvironment.put(SERVER_SOCKET_ENV, serverSocket.getAbsolutePath());
+		}
+		return serverEnvironment;
+	}
+
+	private ServerProcessInfo npmRunServer(String serverName) throws ServerStartException, IOException {
 		assertNodeServerDirReady();
 		LongRunningProcess server = null;
 		try {
-			// The npm process will output the randomly selected port of the http server process to 'server.port' file
-			// so in order to be safe, remove such a file if it exists before starting.
-			final File serverPortFile = new File(this.nodeServerLayout.nodeModulesDir(), "server.port");
-			NpmResourceHelper.deleteFileIfExists(serverPortFile);
+			Map<String, String> serverEnvironment = serverEnvironment(new File(this.nodeServerLayout.nodeModulesDir(), serverName + ".sock"));
 			// start the http server in node
-			server = nodeServeApp.startNpmServeProcess();
+			server = nodeServeApp.startNpmServeProcess(serverEnvironment);
 
-			// await the readiness of the http server - wait for at most 60 seconds
+			// await the readiness of the http server, which prints its address as soon as it listens - wait for at most 60 seconds
+			String readyLine;
 			try {
-				NpmResourceHelper.awaitReadableFile(serverPortFile, Duration.ofSeconds(60));
-			} catch (TimeoutException timeoutException) {
+				readyLine = server.awaitOutputLine(SERVER_READY_PREFIX, 60, TimeUnit.SECONDS);
+			} catch (TimeoutException | IOException e) {
 				// forcibly end the server process
 				try {
 					if (server.isAlive()) {
@@ -115,16 +172,28 @@ abstract class NpmFormatterStepStateBase implements Serializable {
 				} catch (Throwable t) {
 					// ignore
 				}
-				throw timeoutException;
+				throw e;
 			}
-			// read the server.port file for resulting port and remember the port for later formatting calls
-			String serverPort = NpmResourceHelper.readUtf8StringFromFile(serverPortFile).trim();
-			return new ServerProcessInfo(server, serverPort, serverPortFile);
+			// remember the address - either the randomly selected port or the unix domain socket - for later formatting calls
+			String serverAddress = readyLine.substring(SERVER_READY_PREFIX.length()).trim();
+			return new ServerProcessInfo(server, serverAddress, this.nodeServerLayout.nodeModulesDir());
 		} catch (IOException | TimeoutException e) {
 			throw new ServerStartException("Starting server failed." + (server != null ? "\n\nProcess result:\n" + ThrowingEx.get(server::result) : ""), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerStartException("Starting server was interrupted.", e);
 		}
 	}
 
+	/**
+	 * Returns the persistent cache for the results of this step, see {@link FormatResultCache}, or null if no npm
+	 * install cache is configured.
+	 */
+	@Nullable
+	protected FormatResultCache formatResultCache() {
+		return FormatResultCache.forCacheDir(locations.cacheDir(), stepName, npmConfig.getPackageJsonContent(), String.valueOf(npmConfig.getServeScriptContent()));
+	}
+
 	protected static String replaceDevDependencies(String template, Map<String, String> devDependencies) {
 		StringBuilder builder = new StringBuilder();
 		Iterator<Map.Entry<String, String>> entryIter = devDependencies.entrySet().iterator();
@@ -154,35 +223,41 @@ abstract class NpmFormatterStepStateBase implements Serializable {
 
 	protected static class ServerProcessInfo implements AutoCloseable {
 		private final Process server;
-		private final String serverPort;
-		private final File serverPortFile;
+		private final String serverAddress;
+		private final File serverDir;
 
-		public ServerProcessInfo(Process server, String serverPort, File serverPortFile) {
+		public ServerProcessInfo(Process server, String serverAddress, File serverDir) {
 			this.server = server;
-			this.serverPort = serverPort;
-			this.serverPortFile = serverPortFile;
+			this.serverAddress = serverAddress;
+			this.serverDir = serverDir;
 		}
 
 		public String getBaseUrl() {
-			return "http://127.0.0.1:" + this.serverPort;
+			if (this.serverAddress.startsWith(SimpleRestClient.UNIX_SOCKET_PREFIX)) {
+				return this.serverAddress;
+			}
+			return "http://127.0.0.1:" + this.serverAddress;
 		}
 
 		@Override
 		public void close() throws Exception {
 			try {
-				logger.trace("Closing npm server in directory <{}> and port <{}>",
-						serverPortFile.getParent(), serverPort);
+				logger.trace("Closing npm server in directory <{}> and address <{}>",
+						serverDir, serverAddress);
 
 				if (server.isAlive()) {
 					boolean ended = server.waitFor(5, TimeUnit.SECONDS);
 					if (!ended) {
-						logger.info("Force-Closing npm server in directory <{}> and port <{}>", serverPortFile.getParent(), serverPort);
+						logger.info("Force-Closing npm server in directory <{}> and address <{}>", serverDir, serverAddress);
 						server.destroyForcibly().waitFor();
-						logger.trace("Force-Closing npm server in directory <{}> and port <{}> -- Finished", serverPortFile.getParent(), serverPort);
+						logger.trace("Force-Closing npm server in directory <{}> and address <{}> -- Finished", serverDir, serverAddress);
 					}
 				}
 			} finally {
-				NpmResourceHelper.deleteFileIfExists(serverPortFile);
+				if (serverAddress.startsWith(SimpleRestClient.UNIX_SOCKET_PREFIX)) {
+					// node removes its socket when ending gracefully, but not when it was killed
+					NpmResourceHelper.deleteFileIfExists(new File(serverAddress.substring(SimpleRestClient.UNIX_SOCKET_PREFIX.length())));
+				}
 			}
 		}
 	}
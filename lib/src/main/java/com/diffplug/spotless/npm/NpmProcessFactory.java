@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,8 @@
  */
 package com.diffplug.spotless.npm;
 
+import java.util.Map;
+
 public interface NpmProcessFactory {
 
 	enum OnlinePreferrence {
@@ -33,7 +35,11 @@ public interface NpmProcessFactory {
 
 	NpmProcess createNpmInstallProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations, OnlinePreferrence onlinePreferrence);
 
-	NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations);
+	/**
+	 * Creates the process running the node server. The {@code serverEnvironment} tells the server where to
+	 * listen and where to report its address, and must be added to the environment of the process.
+	 */
+	NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations, Map<String, String> serverEnvironment);
 
 	default String describe() {
 		return getClass().getSimpleName();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,10 +22,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import com.diffplug.spotless.ThrowingEx;
@@ -76,13 +74,7 @@ final class NpmResourceHelper {
 
 	static String readUtf8StringFromInputStream(InputStream input) {
 		try {
-			ByteArrayOutputStream output = new ByteArrayOutputStream();
-			byte[] buffer = new byte[1024];
-			int numRead;
-			while ((numRead = input.read(buffer)) != -1) {
-				output.write(buffer, 0, numRead);
-			}
-			return output.toString(StandardCharsets.UTF_8.name());
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			throw ThrowingEx.asRuntime(e);
 		}
@@ -96,28 +88,6 @@ final class NpmResourceHelper {
 		}
 	}
 
-	static void awaitReadableFile(File file, Duration maxWaitTime) throws TimeoutException {
-		final long startedAt = System.currentTimeMillis();
-		while (!file.exists() || !file.canRead()) {
-			// wait for at most maxWaitTime
-			if ((System.currentTimeMillis() - startedAt) > maxWaitTime.toMillis()) {
-				throw new TimeoutException("The file did not appear within " + maxWaitTime);
-			}
-			ThrowingEx.run(() -> Thread.sleep(100));
-		}
-	}
-
-	static void awaitFileDeleted(File file, Duration maxWaitTime) throws TimeoutException {
-		final long startedAt = System.currentTimeMillis();
-		while (file.exists()) {
-			// wait for at most maxWaitTime
-			if ((System.currentTimeMillis() - startedAt) > maxWaitTime.toMillis()) {
-				throw new TimeoutException("The file did not disappear within " + maxWaitTime);
-			}
-			ThrowingEx.run(() -> Thread.sleep(100));
-		}
-	}
-
 	static File copyFileToDir(File file, File targetDir) {
 		return copyFileToDirAtSubpath(file, targetDir, file.getName());
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -41,7 +41,19 @@ public class PrettierConfig implements Serializable {
 
 	private final TreeMap<String, Object> options;
 
+	// how many servers run does not change the result, so it is not part of the up-to-date state
+	@SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+	private final transient int serverPoolSize;
+
 	public PrettierConfig(@Nullable File prettierConfigPath, @Nullable Map<String, Object> options) {
+		this(prettierConfigPath, options, 1);
+	}
+
+	private PrettierConfig(@Nullable File prettierConfigPath, @Nullable Map<String, Object> options, int serverPoolSize) {
+		if (serverPoolSize < 1) {
+			throw new IllegalArgumentException("serverPoolSize must be at least 1, but was " + serverPoolSize);
+		}
+		this.serverPoolSize = serverPoolSize;
 		try {
 			this.prettierConfigPath = prettierConfigPath;
 			this.prettierConfigPathSignature = prettierConfigPath != null ? FileSignature.signAsList(this.prettierConfigPath) : FileSignature.signAsList();
@@ -59,4 +71,14 @@ public class PrettierConfig implements Serializable {
 	public Map<String, Object> getOptions() {
 		return new TreeMap<>(this.options);
 	}
+
+	/** Allows up to {@code serverPoolSize} prettier servers, which are only started when formatting runs concurrently. */
+	public PrettierConfig withServerPoolSize(int serverPoolSize) {
+		return new PrettierConfig(prettierConfigPath, options, serverPoolSize);
+	}
+
+	public int getServerPoolSize() {
+		// a deserialized config has no pool size, and runs a single server
+		return Math.max(1, serverPoolSize);
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,11 +20,16 @@ import static java.util.Objects.requireNonNull;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,41 +94,48 @@ public class PrettierFormatterStep {
 		public FormatterFunc createFormatterFunc() {
 			try {
 				logger.info("creating formatter function (starting server)");
-				ServerProcessInfo prettierRestServer = npmRunServer();
-				PrettierRestService restService = new PrettierRestService(prettierRestServer.getBaseUrl());
-				String prettierConfigOptions = restService.resolveConfig(this.prettierConfig.getPrettierConfigPath(), this.prettierConfig.getOptions());
-				return Closeable.ofDangerous(() -> endServer(restService, prettierRestServer), new PrettierFilePathPassingFormatterFunc(prettierConfigOptions, restService));
-			} catch (IOException e) {
+				NodeServerRegistry.Lease<PrettierRestService> lease = npmRunServerPool(prettierConfig.getServerPoolSize(), PrettierRestService::new);
+				NodeServerPool<PrettierRestService> servers = lease.servers();
+				String prettierConfigOptions;
+				try {
+					prettierConfigOptions = servers.call(restService -> restService.resolveConfig(this.prettierConfig.getPrettierConfigPath(), this.prettierConfig.getOptions()));
+				} catch (Exception e) {
+					lease.close();
+					throw e;
+				}
+				return Closeable.ofDangerous(lease, new PrettierFilePathPassingFormatterFunc(prettierConfigOptions, servers, formatResultCache()));
+			} catch (Exception e) {
 				throw ThrowingEx.asRuntime(e);
 			}
 		}
 
-		private void endServer(PrettierRestService restService, ServerProcessInfo restServer) throws Exception {
-			logger.info("Closing formatting function (ending server).");
-			try {
-				restService.shutdown();
-			} catch (Throwable t) {
-				logger.info("Failed to request shutdown of rest service via api. Trying via process.", t);
-			}
-			restServer.close();
-		}
-
 	}
 
-	private static class PrettierFilePathPassingFormatterFunc implements FormatterFunc.NeedsFile {
+	private static class PrettierFilePathPassingFormatterFunc implements FormatterFunc.NeedsFile, FormatterFunc.Batch {
 		private final String prettierConfigOptions;
-		private final PrettierRestService restService;
+		private final NodeServerPool<PrettierRestService> servers;
+		@Nullable
+		private final FormatResultCache resultCache;
 
-		public PrettierFilePathPassingFormatterFunc(String prettierConfigOptions, PrettierRestService restService) {
+		public PrettierFilePathPassingFormatterFunc(String prettierConfigOptions, NodeServerPool<PrettierRestService> servers, @Nullable FormatResultCache resultCache) {
 			this.prettierConfigOptions = requireNonNull(prettierConfigOptions);
-			this.restService = requireNonNull(restService);
+			this.servers = requireNonNull(servers);
+			this.resultCache = resultCache;
 		}
 
 		@Override
 		public String applyWithFile(String unix, File file) throws Exception {
 			final String prettierConfigOptionsWithFilepath = assertFilepathInConfigOptions(file);
+			if (resultCache == null) {
+				return format(unix, prettierConfigOptionsWithFilepath, file);
+			}
+			// the resolved options contain everything the result depends on besides the content, including the file name
+			return resultCache.apply(resultCache.key(prettierConfigOptionsWithFilepath, unix), () -> format(unix, prettierConfigOptionsWithFilepath, file));
+		}
+
+		private String format(String unix, String prettierConfigOptionsWithFilepath, File file) throws Exception {
 			try {
-				return restService.format(unix, prettierConfigOptionsWithFilepath);
+				return servers.call(restService -> restService.format(unix, prettierConfigOptionsWithFilepath));
 			} catch (SimpleRestClient.SimpleRestResponseException e) {
 				if (e.getStatusCode() != 200 && e.getResponseMessage().contains("No parser could be inferred")) {
 					throw new PrettierMissingParserException(file, e);
@@ -132,6 +144,31 @@ public class PrettierFormatterStep {
 			}
 		}
 
+		@Override
+		public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+			if (resultCache == null) {
+				return formatBatch(unixByFile);
+			}
+			return resultCache.applyBatch(unixByFile, entry -> resultCache.key(assertFilepathInConfigOptions(entry.getKey()), entry.getValue()), this::formatBatch);
+		}
+
+		private Map<File, String> formatBatch(Map<File, String> unixByFile) throws Exception {
+			Iterator<String> results = servers.callSliced(new ArrayList<>(unixByFile.entrySet()), (restService, slice) -> {
+				List<String> fileContents = new ArrayList<>(slice.size());
+				List<String> configOptions = new ArrayList<>(slice.size());
+				for (Map.Entry<File, String> entry : slice) {
+					fileContents.add(entry.getValue());
+					configOptions.add(assertFilepathInConfigOptions(entry.getKey()));
+				}
+				return restService.formatBatch(fileContents, configOptions);
+			}).iterator();
+			Map<File, String> formatted = new LinkedHashMap<>();
+			for (File file : unixByFile.keySet()) {
+				formatted.put(file, results.next());
+			}
+			return formatted;
+		}
+
 		private String assertFilepathInConfigOptions(File file) {
 			// if it is already in the options, we do nothing
 			if (prettierConfigOptions.contains("\"filepath\"") || prettierConfigOptions.contains("\"parser\"")) {
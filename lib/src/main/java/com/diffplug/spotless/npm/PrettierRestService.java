@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,10 @@
 package com.diffplug.spotless.npm;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class PrettierRestService extends BaseNpmRestService {
@@ -38,11 +41,23 @@ public class PrettierRestService extends BaseNpmRestService {
 
 	public String format(String fileContent, String configOptionsJsonString) {
 		Map<String, Object> jsonProperties = new LinkedHashMap<>();
-		jsonProperties.put("file_content", fileContent);
 		if (configOptionsJsonString != null) {
 			jsonProperties.put("config_options", JsonRawValue.wrap(configOptionsJsonString));
 		}
 
-		return restClient.postJson("/prettier/format", jsonProperties);
+		return restClient.postFramed("/prettier/format", jsonProperties, Collections.singletonList(fileContent));
+	}
+
+	/** Formats many files with a single request, each with its own config options, and returns the results in the same order. */
+	public List<String> formatBatch(List<String> fileContents, List<String> configOptionsJsonStrings) {
+		List<JsonRawValue> files = new ArrayList<>(fileContents.size());
+		for (int i = 0; i < fileContents.size(); ++i) {
+			Map<String, Object> file = new LinkedHashMap<>();
+			if (configOptionsJsonStrings.get(i) != null) {
+				file.put("config_options", JsonRawValue.wrap(configOptionsJsonStrings.get(i)));
+			}
+			files.add(JsonWriter.of(file).toJsonRawValue());
+		}
+		return postBatch("/prettier/format-batch", Collections.singletonMap("files", files), fileContents);
 	}
 }
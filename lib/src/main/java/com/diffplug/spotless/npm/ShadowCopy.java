@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,28 +17,54 @@ package com.diffplug.spotless.npm;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileAlreadyExistsException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystemException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
-import java.util.concurrent.TimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.diffplug.spotless.ThrowingEx;
 
+/**
+ * A store of directory trees, which are materialized using hard links where possible.
+ * <p>
+ * The store may be shared by several builds at once, so every entry is guarded by a lock file: materializing an
+ * entry holds a shared lock, while replacing or evicting it holds an exclusive one. The modification time of the
+ * lock file records when the entry was last used, which drives {@link #evict(Duration, long)}.
+ */
 class ShadowCopy {
 
 	private static final Logger logger = LoggerFactory.getLogger(ShadowCopy.class);
 
+	/** File locks are held by the whole JVM, so threads of the same JVM also have to be kept apart. */
+	private static final ConcurrentMap<String, EntryLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private static final String SIZE_SUFFIX = ".size";
+
 	private final File shadowCopyRoot;
 
 	public ShadowCopy(@Nonnull File shadowCopyRoot) {
@@ -49,19 +75,25 @@ class ShadowCopy {
 	}
 
 	public void addEntry(String key, File orig) {
-		// prevent concurrent adding of entry with same key
-		if (!reserveSubFolder(key)) {
-			logger.debug("Shadow copy entry already in progress: {}. Awaiting finalization.", key);
-			try {
-				NpmResourceHelper.awaitFileDeleted(markerFilePath(key).toFile(), Duration.ofSeconds(120));
-			} catch (TimeoutException e) {
-				throw new RuntimeException(e);
-			}
-		}
+		// copy outside of the lock, so that readers of a previous version of the entry are not blocked meanwhile
+		Path staging = ThrowingEx.get(() -> Files.createTempDirectory(shadowCopyRoot.toPath(), key + ".tmp-"));
 		try {
-			storeEntry(key, orig);
+			CopyDirectoryRecursively copy = new CopyDirectoryRecursively(staging.resolve(orig.getName()).toFile(), orig);
+			ThrowingEx.run(() -> Files.walkFileTree(orig.toPath(), copy));
+			withLock(key, false, () -> {
+				Path entryDir = entryDir(key);
+				if (Files.exists(entryDir)) {
+					logger.debug("Shadow copy entry already exists: {}", key);
+					Files.walkFileTree(entryDir, new DeleteDirectoryRecursively());
+				}
+				Files.move(staging, entryDir, StandardCopyOption.ATOMIC_MOVE);
+				Files.write(sizeFile(key), Long.toString(copy.copiedBytes).getBytes(StandardCharsets.UTF_8));
+				return null;
+			});
 		} finally {
-			cleanupReservation(key);
+			if (Files.exists(staging)) {
+				ThrowingEx.run(() -> Files.walkFileTree(staging, new DeleteDirectoryRecursively()));
+			}
 		}
 	}
 
@@ -69,63 +101,212 @@ class ShadowCopy {
 		return entry(key, fileName);
 	}
 
-	private void storeEntry(String key, File orig) {
-		File target = entry(key, orig.getName());
-		if (target.exists()) {
-			logger.debug("Shadow copy entry already exists: {}", key);
-			// delete directory "target" recursively
-			// https://stackoverflow.com/questions/3775694/deleting-folder-from-java
-			ThrowingEx.run(() -> Files.walkFileTree(target.toPath(), new DeleteDirectoryRecursively()));
-		}
-		// copy directory "orig" to "target" using hard links if possible or a plain copy otherwise
-		ThrowingEx.run(() -> Files.walkFileTree(orig.toPath(), new CopyDirectoryRecursively(target, orig)));
+	private Path lockFile(String key) {
+		return Paths.get(shadowCopyRoot.getAbsolutePath(), key + LOCK_SUFFIX);
 	}
 
-	private void cleanupReservation(String key) {
-		ThrowingEx.run(() -> Files.delete(markerFilePath(key)));
+	private Path sizeFile(String key) {
+		return Paths.get(shadowCopyRoot.getAbsolutePath(), key + SIZE_SUFFIX);
 	}
 
-	private Path markerFilePath(String key) {
-		return Paths.get(shadowCopyRoot.getAbsolutePath(), key + ".marker");
+	private Path entryDir(String key) {
+		return Paths.get(shadowCopyRoot.getAbsolutePath(), key);
 	}
 
 	private File entry(String key, String origName) {
 		return Paths.get(shadowCopyRoot.getAbsolutePath(), key, origName).toFile();
 	}
 
-	private boolean reserveSubFolder(String key) {
-		// put a marker file named "key".marker in "shadowCopyRoot" to make sure no other process is using it or return false if it already exists
+	/** Runs the action while holding the lock of the given entry, and marks the entry as used just now. */
+	private <T> T withLock(String key, boolean shared, ThrowingEx.Supplier<T> action) {
+		Path lockFile = lockFile(key);
+		EntryLock entryLock = JVM_LOCKS.computeIfAbsent(lockFile.toString(), unused -> new EntryLock(lockFile));
 		try {
-			Files.createFile(Paths.get(shadowCopyRoot.getAbsolutePath(), key + ".marker"));
-			return true;
-		} catch (FileAlreadyExistsException e) {
-			return false;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			if (shared) {
+				entryLock.lockShared();
+				try {
+					return touchAfter(lockFile, action);
+				} finally {
+					entryLock.unlockShared();
+				}
+			} else {
+				entryLock.jvmLock.writeLock().lock();
+				try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+						FileLock fileLock = channel.lock()) {
+					return touchAfter(lockFile, action);
+				} finally {
+					entryLock.jvmLock.writeLock().unlock();
+				}
+			}
+		} catch (Exception e) {
+			throw ThrowingEx.asRuntime(e);
 		}
 	}
 
+	private static <T> T touchAfter(Path lockFile, ThrowingEx.Supplier<T> action) throws Exception {
+		T result = action.get();
+		Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+		return result;
+	}
+
+	/** Returns the copy, or null if the entry does not exist (anymore). */
+	@Nullable
 	public File copyEntryInto(String key, String origName, File targetParentFolder) {
 		File target = Paths.get(targetParentFolder.getAbsolutePath(), origName).toFile();
-		if (target.exists()) {
-			logger.warn("Shadow copy destination already exists, deleting! {}: {}", key, target);
-			ThrowingEx.run(() -> Files.walkFileTree(target.toPath(), new DeleteDirectoryRecursively()));
-		}
-		// copy directory "orig" to "target" using hard links if possible or a plain copy otherwise
-		ThrowingEx.run(() -> Files.walkFileTree(entry(key, origName).toPath(), new CopyDirectoryRecursively(target, entry(key, origName))));
-		return target;
+		return withLock(key, true, () -> {
+			File entry = entry(key, origName);
+			if (!entry.exists()) {
+				return null;
+			}
+			if (target.exists()) {
+				logger.warn("Shadow copy destination already exists, deleting! {}: {}", key, target);
+				Files.walkFileTree(target.toPath(), new DeleteDirectoryRecursively());
+			}
+			// copy directory "orig" to "target" using hard links if possible or a plain copy otherwise
+			Files.walkFileTree(entry.toPath(), new CopyDirectoryRecursively(target, entry));
+			return target;
+		});
 	}
 
 	public boolean entryExists(String key, String origName) {
 		return entry(key, origName).exists();
 	}
 
+	/**
+	 * Removes the entries which were not used within {@code maxAge}, and then the least recently used ones
+	 * until all entries together take at most {@code maxBytes}. Entries which are in use are skipped.
+	 */
+	public void evict(Duration maxAge, long maxBytes) {
+		File[] lockFiles = shadowCopyRoot.listFiles((dir, name) -> name.endsWith(LOCK_SUFFIX));
+		if (lockFiles == null) {
+			return;
+		}
+		List<EntryUsage> entries = new ArrayList<>();
+		for (File lockFile : lockFiles) {
+			String key = lockFile.getName().substring(0, lockFile.getName().length() - LOCK_SUFFIX.length());
+			if (Files.isDirectory(entryDir(key))) {
+				entries.add(new EntryUsage(key, lockFile.lastModified(), entrySize(key)));
+			}
+		}
+		entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+		long totalBytes = entries.stream().mapToLong(entry -> entry.bytes).sum();
+		long oldestAllowed = System.currentTimeMillis() - maxAge.toMillis();
+		for (EntryUsage entry : entries) {
+			if (entry.lastUsed >= oldestAllowed && totalBytes <= maxBytes) {
+				break;
+			}
+			if (tryRemove(entry.key)) {
+				logger.debug("Evicted shadow copy entry {} ({} bytes)", entry.key, entry.bytes);
+				totalBytes -= entry.bytes;
+			}
+		}
+	}
+
+	private long entrySize(String key) {
+		try {
+			return Long.parseLong(new String(Files.readAllBytes(sizeFile(key)), StandardCharsets.UTF_8).trim());
+		} catch (IOException | NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private boolean tryRemove(String key) {
+		Path lockFile = lockFile(key);
+		Lock lock = JVM_LOCKS.computeIfAbsent(lockFile.toString(), unused -> new EntryLock(lockFile)).jvmLock.writeLock();
+		if (!lock.tryLock()) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileLock fileLock = channel.tryLock(0, Long.MAX_VALUE, false)) {
+			if (fileLock == null) {
+				return false;
+			}
+			Files.walkFileTree(entryDir(key), new DeleteDirectoryRecursively());
+			Files.deleteIfExists(sizeFile(key));
+			return true;
+		} catch (IOException e) {
+			logger.debug("Unable to evict shadow copy entry {}", key, e);
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A JVM may only hold one lock on a file at a time, so the threads of this JVM which use an entry
+	 * concurrently share a single file lock, which is held while any of them uses the entry.
+	 */
+	private static final class EntryLock {
+		private final Path lockFile;
+		private final ReentrantReadWriteLock jvmLock = new ReentrantReadWriteLock();
+
+		/** Guarded by {@code this}. */
+		private int sharedHolders;
+		/** Guarded by {@code this}. */
+		@Nullable
+		private FileChannel sharedChannel;
+
+		private EntryLock(Path lockFile) {
+			this.lockFile = lockFile;
+		}
+
+		void lockShared() throws IOException {
+			jvmLock.readLock().lock();
+			try {
+				synchronized (this) {
+					if (sharedHolders == 0) {
+						FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+						try {
+							channel.lock(0, Long.MAX_VALUE, true);
+						} catch (IOException | RuntimeException e) {
+							channel.close();
+							throw e;
+						}
+						sharedChannel = channel;
+					}
+					sharedHolders++;
+				}
+			} catch (IOException | RuntimeException e) {
+				jvmLock.readLock().unlock();
+				throw e;
+			}
+		}
+
+		void unlockShared() throws IOException {
+			try {
+				synchronized (this) {
+					if (--sharedHolders == 0 && sharedChannel != null) {
+						// closing the channel releases its lock
+						sharedChannel.close();
+						sharedChannel = null;
+					}
+				}
+			} finally {
+				jvmLock.readLock().unlock();
+			}
+		}
+	}
+
+	private static final class EntryUsage {
+		private final String key;
+		private final long lastUsed;
+		private final long bytes;
+
+		private EntryUsage(String key, long lastUsed, long bytes) {
+			this.key = key;
+			this.lastUsed = lastUsed;
+			this.bytes = bytes;
+		}
+	}
+
 	private static class CopyDirectoryRecursively extends SimpleFileVisitor<Path> {
 		private final File target;
 		private final File orig;
 
 		private boolean tryHardLink = true;
 
+		private long copiedBytes;
+
 		public CopyDirectoryRecursively(File target, File orig) {
 			this.target = target;
 			this.orig = orig;
@@ -140,6 +321,7 @@ class ShadowCopy {
 
 		@Override
 		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+			copiedBytes += attrs.size();
 			// first try to hardlink, if that fails, copy
 			if (tryHardLink) {
 				try {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@ package com.diffplug.spotless.npm;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -37,8 +38,8 @@ public class StandardNpmProcessFactory implements NpmProcessFactory {
 	}
 
 	@Override
-	public NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations) {
-		return new NpmServe(nodeServerLayout.nodeModulesDir(), formatterStepLocations);
+	public NpmLongRunningProcess createNpmServeProcess(NodeServerLayout nodeServerLayout, NpmFormatterStepLocations formatterStepLocations, Map<String, String> serverEnvironment) {
+		return new NpmServe(nodeServerLayout.nodeModulesDir(), formatterStepLocations, serverEnvironment);
 	}
 
 	private static abstract class AbstractStandardNpmProcess {
@@ -119,8 +120,18 @@ public class StandardNpmProcessFactory implements NpmProcessFactory {
 
 	private static class NpmServe extends AbstractStandardNpmProcess implements NpmLongRunningProcess {
 
-		public NpmServe(File workingDir, NpmFormatterStepLocations formatterStepLocations) {
+		private final Map<String, String> serverEnvironment;
+
+		public NpmServe(File workingDir, NpmFormatterStepLocations formatterStepLocations, Map<String, String> serverEnvironment) {
 			super(workingDir, formatterStepLocations);
+			this.serverEnvironment = Map.copyOf(serverEnvironment);
+		}
+
+		@Override
+		protected Map<String, String> environmentVariables() {
+			Map<String, String> environmentVariables = new HashMap<>(super.environmentVariables());
+			environmentVariables.putAll(serverEnvironment);
+			return environmentVariables;
 		}
 
 		@Override
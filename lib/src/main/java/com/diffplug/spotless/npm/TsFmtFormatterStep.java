@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,7 +32,6 @@ import com.diffplug.spotless.FormatterFunc;
 import com.diffplug.spotless.FormatterFunc.Closeable;
 import com.diffplug.spotless.FormatterStep;
 import com.diffplug.spotless.Provisioner;
-import com.diffplug.spotless.ThrowingEx;
 
 public class TsFmtFormatterStep {
 
@@ -93,14 +92,10 @@ public class TsFmtFormatterStep {
 		@Override
 		@Nonnull
 		public FormatterFunc createFormatterFunc() {
-			try {
-				Map<String, Object> tsFmtOptions = unifyOptions();
-				ServerProcessInfo tsfmtRestServer = npmRunServer();
-				TsFmtRestService restService = new TsFmtRestService(tsfmtRestServer.getBaseUrl());
-				return Closeable.ofDangerous(() -> endServer(restService, tsfmtRestServer), input -> restService.format(input, tsFmtOptions));
-			} catch (IOException e) {
-				throw ThrowingEx.asRuntime(e);
-			}
+			Map<String, Object> tsFmtOptions = unifyOptions();
+			NodeServerRegistry.Lease<TsFmtRestService> lease = npmRunServerPool(1, TsFmtRestService::new);
+			NodeServerPool<TsFmtRestService> servers = lease.servers();
+			return Closeable.ofDangerous(lease, new TsFmtFormatterFunc(servers, tsFmtOptions));
 		}
 
 		private Map<String, Object> unifyOptions() {
@@ -116,14 +111,30 @@ public class TsFmtFormatterStep {
 			}
 			return unified;
 		}
+	}
+
+	private static class TsFmtFormatterFunc implements FormatterFunc.Batch {
+		private final NodeServerPool<TsFmtRestService> servers;
+		private final Map<String, Object> tsFmtOptions;
+
+		TsFmtFormatterFunc(NodeServerPool<TsFmtRestService> servers, Map<String, Object> tsFmtOptions) {
+			this.servers = requireNonNull(servers);
+			this.tsFmtOptions = requireNonNull(tsFmtOptions);
+		}
 
-		private void endServer(TsFmtRestService restService, ServerProcessInfo restServer) throws Exception {
-			try {
-				restService.shutdown();
-			} catch (Throwable t) {
-				logger.info("Failed to request shutdown of rest service via api. Trying via process.", t);
+		@Override
+		public String apply(String input) throws Exception {
+			return servers.call(restService -> restService.format(input, tsFmtOptions));
+		}
+
+		@Override
+		public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+			Iterator<String> results = servers.call(restService -> restService.formatBatch(new ArrayList<>(unixByFile.values()), tsFmtOptions)).iterator();
+			Map<File, String> formatted = new LinkedHashMap<>();
+			for (File file : unixByFile.keySet()) {
+				formatted.put(file, results.next());
 			}
-			restServer.close();
+			return formatted;
 		}
 	}
 }
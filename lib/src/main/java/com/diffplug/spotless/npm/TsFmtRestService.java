@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,7 +15,9 @@
  */
 package com.diffplug.spotless.npm;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TsFmtRestService extends BaseNpmRestService {
@@ -26,11 +28,22 @@ public class TsFmtRestService extends BaseNpmRestService {
 
 	public String format(String fileContent, Map<String, Object> configOptions) {
 		Map<String, Object> jsonProperties = new LinkedHashMap<>();
-		jsonProperties.put("file_content", fileContent);
 		if (configOptions != null && !configOptions.isEmpty()) {
 			jsonProperties.put("config_options", JsonWriter.of(configOptions).toJsonRawValue());
 		}
 
-		return restClient.postJson("/tsfmt/format", jsonProperties);
+		return restClient.postFramed("/tsfmt/format", jsonProperties, Collections.singletonList(fileContent));
+	}
+
+	/** Formats many files with a single request, and returns the results in the same order. */
+	public List<String> formatBatch(List<String> fileContents, Map<String, Object> configOptions) {
+		// the entries only carry the file contents, which are sent as raw frames
+		List<JsonRawValue> files = Collections.nCopies(fileContents.size(), JsonRawValue.wrap("{}"));
+		Map<String, Object> jsonProperties = new LinkedHashMap<>();
+		jsonProperties.put("files", files);
+		if (configOptions != null && !configOptions.isEmpty()) {
+			jsonProperties.put("config_options", JsonWriter.of(configOptions).toJsonRawValue());
+		}
+		return postBatch("/tsfmt/format-batch", jsonProperties, fileContents);
 	}
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Posts requests to a node server listening on a unix domain socket. The JDK http client cannot connect to
+ * such sockets, so this speaks just enough HTTP/1.0 to talk to our express servers: one request per connection,
+ * and the response body either has a {@code Content-Length}, is chunked, or ends with the connection.
+ * <p>
+ * Unix domain socket channels need JDK 16+, but spotless runs on JDK 11, so they are looked up reflectively.
+ */
+final class UnixSocketHttp {
+	/** sun_path is 108 bytes on linux and 104 on macOS, including the terminating zero. */
+	private static final int MAX_SOCKET_PATH_BYTES = 100;
+
+	@Nullable
+	private static final Method ADDRESS_OF = lookupAddressOf();
+
+	private UnixSocketHttp() {
+		// no instance
+	}
+
+	@Nullable
+	private static Method lookupAddressOf() {
+		if (PlatformInfo.normalizedOS() == PlatformInfo.OS.WINDOWS) {
+			// node listens on named pipes rather than unix domain sockets on windows
+			return null;
+		}
+		try {
+			return Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/** Whether a server can listen on the given socket path, and we can connect to it. */
+	static boolean canUse(Path socket) {
+		return ADDRESS_OF != null && socket.toAbsolutePath().toString().getBytes(UTF_8).length <= MAX_SOCKET_PATH_BYTES;
+	}
+
+	static Response post(Path socket, String endpoint, String contentType, List<byte[]> body) throws IOException {
+		SocketChannel channel = open(socket);
+		try {
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+			long requestLength = body.stream().mapToLong(part -> part.length).sum();
+			String head = "POST " + endpoint + " HTTP/1.0\r\n"
+					+ "Host: localhost\r\n"
+					+ "Content-Type: " + contentType + "\r\n"
+					+ "Content-Length: " + requestLength + "\r\n"
+					+ "\r\n";
+			out.write(head.getBytes(ISO_8859_1));
+			for (byte[] part : body) {
+				out.write(part);
+			}
+			out.flush();
+
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+			String statusLine = readLine(in);
+			String[] status = statusLine.split(" ", 3);
+			if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+				throw new IOException("Malformed status line from " + socket + ": " + statusLine);
+			}
+			long contentLength = -1;
+			boolean chunked = false;
+			for (String header = readLine(in); !header.isEmpty(); header = readLine(in)) {
+				int colon = header.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+				String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				String value = header.substring(colon + 1).trim();
+				if (name.equals("content-length")) {
+					contentLength = Long.parseLong(value);
+				} else if (name.equals("transfer-encoding")) {
+					chunked = value.toLowerCase(Locale.ROOT).endsWith("chunked");
+				}
+			}
+			InputStream responseBody;
+			if (chunked) {
+				responseBody = new ChunkedInputStream(in);
+			} else if (contentLength >= 0) {
+				responseBody = new BoundedInputStream(in, contentLength);
+			} else {
+				responseBody = in;
+			}
+			return new Response(parseStatusCode(socket, statusLine, status[1]), responseBody, channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static SocketChannel open(Path socket) throws IOException {
+		if (ADDRESS_OF == null) {
+			throw new IOException("Unix domain sockets are not supported by this JVM");
+		}
+		try {
+			ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+			SocketChannel channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+			try {
+				channel.connect((SocketAddress) ADDRESS_OF.invoke(null, socket));
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			return channel;
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Unable to open unix domain socket " + socket, e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Unable to open unix domain socket " + socket, e);
+		}
+	}
+
+	private static int parseStatusCode(Path socket, String statusLine, String statusCode) throws IOException {
+		try {
+			return Integer.parseInt(statusCode);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed status line from " + socket + ": " + statusLine, e);
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1) {
+				throw new EOFException("Response ended before its headers were complete");
+			}
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+		return line.toString(ISO_8859_1.name());
+	}
+
+	static final class Response implements Closeable {
+		private final int statusCode;
+		private final InputStream body;
+		private final SocketChannel channel;
+
+		private Response(int statusCode, InputStream body, SocketChannel channel) {
+			this.statusCode = statusCode;
+			this.body = body;
+			this.channel = channel;
+		}
+
+		int statusCode() {
+			return statusCode;
+		}
+
+		InputStream body() {
+			return body;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static final class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+	}
+
+	/** Decodes a {@code Transfer-Encoding: chunked} body, which is a sequence of {@code "<hex size>\r\n<bytes>\r\n"} chunks ending with an empty one. */
+	private static final class ChunkedInputStream extends FilterInputStream {
+		private long remaining;
+		private boolean done;
+
+		ChunkedInputStream(InputStream in) {
+			super(in);
+		}
+
+		/** Returns false at the end of the body, otherwise makes sure that the current chunk has bytes left. */
+		private boolean nextChunk() throws IOException {
+			if (done) {
+				return false;
+			}
+			if (remaining > 0) {
+				return true;
+			}
+			String sizeLine = readLine(in);
+			if (sizeLine.isEmpty()) {
+				// the line break which ends the previous chunk
+				sizeLine = readLine(in);
+			}
+			int extension = sizeLine.indexOf(';');
+			try {
+				remaining = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed chunk size: " + sizeLine, e);
+			}
+			if (remaining == 0) {
+				// skip the trailers, up to the empty line which ends the body
+				while (!readLine(in).isEmpty()) {}
+				done = true;
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Response ended within a chunk");
+			}
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1) {
+				throw new EOFException("Response ended within a chunk");
+			}
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return done ? 0 : (int) Math.min(in.available(), remaining);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = 0;
+			while (skipped < n && read() != -1) {
+				skipped++;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2022-2023 DiffPlug
+ * Copyright 2022-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,10 +19,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
@@ -44,18 +51,25 @@ public class BufStep {
 
 	private final String version;
 	private final @Nullable String pathToExe;
+	private final @Nullable File probeCacheDir;
 
-	private BufStep(String version, @Nullable String pathToExe) {
+	private BufStep(String version, @Nullable String pathToExe, @Nullable File probeCacheDir) {
 		this.version = version;
 		this.pathToExe = pathToExe;
+		this.probeCacheDir = probeCacheDir;
 	}
 
 	public static BufStep withVersion(String version) {
-		return new BufStep(version, null);
+		return new BufStep(version, null, null);
 	}
 
 	public BufStep withPathToExe(String pathToExe) {
-		return new BufStep(version, pathToExe);
+		return new BufStep(version, pathToExe, probeCacheDir);
+	}
+
+	/** A directory in which to remember the version of the executable across builds, see {@link ForeignExe#probeCacheDir(File)}. */
+	public BufStep withProbeCacheDir(@Nullable File probeCacheDir) {
+		return new BufStep(version, pathToExe, probeCacheDir);
 	}
 
 	public FormatterStep create() {
@@ -66,6 +80,7 @@ public class BufStep {
 		String instructions = "https://docs.buf.build/installation";
 		ForeignExe exeAbsPath = ForeignExe.nameAndVersion("buf", version)
 				.pathToExe(pathToExe)
+				.probeCacheDir(probeCacheDir)
 				.versionRegex(Pattern.compile("(\\S*)"))
 				.fixCantFind("Try following the instructions at " + instructions + ", or else tell Spotless where it is with {@code buf().pathToExe('path/to/executable')}");
 		return new State(this, exeAbsPath);
@@ -78,26 +93,99 @@ public class BufStep {
 		final String version;
 		final transient ForeignExe exe;
 		// used for executing
-		private transient @Nullable List<String> args;
+		private transient @Nullable String exeAbsPath;
 
 		State(BufStep step, ForeignExe exeAbsPath) {
 			this.version = step.version;
 			this.exe = Objects.requireNonNull(exeAbsPath);
 		}
 
+		private String exeAbsPath() throws IOException, InterruptedException {
+			if (exeAbsPath == null) {
+				exeAbsPath = exe.confirmVersionAndGetAbsolutePath();
+			}
+			return exeAbsPath;
+		}
+
 		String format(ProcessRunner runner, String input, File file) throws IOException, InterruptedException {
-			if (args == null) {
-				args = Arrays.asList(
-						exe.confirmVersionAndGetAbsolutePath(),
-						"format",
-						file.getAbsolutePath());
+			return runner.exec(input.getBytes(StandardCharsets.UTF_8), Arrays.asList(exeAbsPath(), "format", file.getAbsolutePath())).assertExitZero(StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Formats many files with one {@code buf format} per module, i.e. per directory with a {@code buf.yaml}. buf
+		 * reads the files themselves, with a {@code --path} for each of them, and writes the results into a scratch
+		 * directory, so only the files whose content is still the content on disk are formatted together.
+		 */
+		Map<File, String> formatBatch(ProcessRunner runner, Map<File, String> inputs) throws IOException, InterruptedException {
+			final Map<File, String> outputs = new LinkedHashMap<>();
+			final Map<File, List<File>> modules = new LinkedHashMap<>();
+			for (Map.Entry<File, String> entry : inputs.entrySet()) {
+				final File file = entry.getKey().getAbsoluteFile();
+				if (file.isFile() && Arrays.equals(entry.getValue().getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file.toPath()))) {
+					modules.computeIfAbsent(moduleRoot(file), root -> new ArrayList<>()).add(entry.getKey());
+				} else {
+					outputs.put(entry.getKey(), format(runner, entry.getValue(), entry.getKey()));
+				}
+			}
+			for (Map.Entry<File, List<File>> module : modules.entrySet()) {
+				final Path root = module.getKey().toPath();
+				final Path outputDir = Files.createTempDirectory("spotless-buf");
+				try {
+					final List<String> args = new ArrayList<>(Arrays.asList(exeAbsPath(), "format", "."));
+					for (File file : module.getValue()) {
+						args.add("--path");
+						args.add(root.relativize(file.getAbsoluteFile().toPath()).toString());
+					}
+					args.add("-o");
+					args.add(outputDir.toString());
+					runner.exec(root.toFile(), null, null, args).assertExitZero(StandardCharsets.UTF_8);
+					for (File file : module.getValue()) {
+						final Path output = outputDir.resolve(root.relativize(file.getAbsoluteFile().toPath()));
+						if (!Files.isRegularFile(output)) {
+							throw new IOException("buf format did not write " + output);
+						}
+						outputs.put(file, new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+					}
+				} finally {
+					try (Stream<Path> paths = Files.walk(outputDir)) {
+						paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+					}
+				}
 			}
-			return runner.exec(input.getBytes(StandardCharsets.UTF_8), args).assertExitZero(StandardCharsets.UTF_8);
+			return outputs;
+		}
+
+		/** The nearest directory with a {@code buf.yaml}, or else the directory of the file. */
+		private static File moduleRoot(File file) {
+			for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+				if (new File(dir, "buf.yaml").isFile()) {
+					return dir;
+				}
+			}
+			return file.getParentFile();
 		}
 
 		FormatterFunc.Closeable toFunc() {
 			ProcessRunner runner = new ProcessRunner();
-			return FormatterFunc.Closeable.of(runner, this::format);
+			return FormatterFunc.Closeable.ofDangerous(runner, new BufFunc(runner));
+		}
+
+		private class BufFunc implements FormatterFunc.NeedsFile, FormatterFunc.Batch {
+			private final ProcessRunner runner;
+
+			BufFunc(ProcessRunner runner) {
+				this.runner = runner;
+			}
+
+			@Override
+			public String applyWithFile(String unix, File file) throws Exception {
+				return format(runner, unix, file);
+			}
+
+			@Override
+			public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+				return formatBatch(runner, unixByFile);
+			}
 		}
 	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020-2022 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package com.diffplug.spotless.python;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
@@ -41,18 +42,36 @@ public class BlackStep {
 
 	private final String version;
 	private final @Nullable String pathToExe;
+	private final boolean blackd;
+	private final @Nullable File probeCacheDir;
 
-	private BlackStep(String version, @Nullable String pathToExe) {
+	private BlackStep(String version, @Nullable String pathToExe, boolean blackd, @Nullable File probeCacheDir) {
 		this.version = version;
 		this.pathToExe = pathToExe;
+		this.blackd = blackd;
+		this.probeCacheDir = probeCacheDir;
 	}
 
 	public static BlackStep withVersion(String version) {
-		return new BlackStep(version, null);
+		return new BlackStep(version, null, false, null);
 	}
 
 	public BlackStep withPathToExe(String pathToExe) {
-		return new BlackStep(version, pathToExe);
+		return new BlackStep(version, pathToExe, blackd, probeCacheDir);
+	}
+
+	/** A directory in which to remember the version of the executable across builds, see {@link ForeignExe#probeCacheDir(File)}. */
+	public BlackStep withProbeCacheDir(@Nullable File probeCacheDir) {
+		return new BlackStep(version, pathToExe, blackd, probeCacheDir);
+	}
+
+	/**
+	 * Formats with a single {@code blackd} server, which is installed with {@code pip install black[d]}, instead
+	 * of starting black for every file. Falls back to starting black for every file if there is no blackd next
+	 * to the black executable.
+	 */
+	public BlackStep withBlackd(boolean blackd) {
+		return new BlackStep(version, pathToExe, blackd, probeCacheDir);
 	}
 
 	public FormatterStep create() {
@@ -63,6 +82,7 @@ public class BlackStep {
 		String trackingIssue = "\n  github issue to handle this better: https://github.com/diffplug/spotless/issues/674";
 		ForeignExe exeAbsPath = ForeignExe.nameAndVersion("black", version)
 				.pathToExe(pathToExe)
+				.probeCacheDir(probeCacheDir)
 				.versionRegex(Pattern.compile("(?:black, version|black,|version) (\\S*)"))
 				.fixCantFind("Try running {@code pip install black=={version}}, or else tell Spotless where it is with {@code black().pathToExe('path/to/executable')}" + trackingIssue)
 				.fixWrongVersion("Try running {@code pip install --force-reinstall black=={version}}, or else specify {@code black('{versionFound}')} to Spotless" + trackingIssue);
@@ -77,10 +97,13 @@ public class BlackStep {
 		final transient ForeignExe exe;
 		// used for executing
 		private transient @Nullable String[] args;
+		// not part of the state: blackd is given the options which black reads from pyproject.toml, or else not used
+		private final transient boolean blackd;
 
 		State(BlackStep step, ForeignExe exeAbsPath) {
 			this.version = step.version;
 			this.exe = Objects.requireNonNull(exeAbsPath);
+			this.blackd = step.blackd;
 		}
 
 		String format(ProcessRunner runner, String input) throws IOException, InterruptedException {
@@ -90,7 +113,14 @@ public class BlackStep {
 			return runner.exec(input.getBytes(StandardCharsets.UTF_8), args).assertExitZero(StandardCharsets.UTF_8);
 		}
 
-		FormatterFunc.Closeable toFunc() {
+		FormatterFunc.Closeable toFunc() throws IOException, InterruptedException {
+			if (blackd) {
+				// black runs in the working directory of this JVM, see format(), which determines the pyproject.toml it reads
+				BlackdServer server = BlackdServer.startNextTo(new File(exe.confirmVersionAndGetAbsolutePath()), version, new File("").getAbsoluteFile());
+				if (server != null) {
+					return FormatterFunc.Closeable.of(server, BlackdServer::format);
+				}
+			}
 			ProcessRunner runner = new ProcessRunner();
 			return FormatterFunc.Closeable.of(runner, this::format);
 		}
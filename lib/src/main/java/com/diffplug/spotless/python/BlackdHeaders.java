@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.diffplug.spotless.FileSignature;
+
+/**
+ * blackd ignores pyproject.toml, so the options of its {@code [tool.black]} table are passed to it as headers instead,
+ * see https://black.readthedocs.io/en/stable/usage_and_configuration/black_as_a_server.html
+ */
+final class BlackdHeaders {
+	private BlackdHeaders() {}
+
+	/** Options which only select files or change what black prints, so they don't change how stdin is formatted. */
+	private static final Set<String> IGNORED = new HashSet<>(Arrays.asList(
+			"include", "exclude", "extend-exclude", "force-exclude", "required-version",
+			"quiet", "verbose", "color", "workers", "check", "diff", "code", "config", "stdin-filename"));
+
+	private static final Pattern KEY_VALUE = Pattern.compile("^\\s*([\"']?)([A-Za-z0-9_-]+)\\1\\s*=\\s*(.*)$");
+	private static final Pattern STRING = Pattern.compile("\"([^\"]*)\"|'([^']*)'");
+
+	/**
+	 * Returns the headers for the options which {@code black -} reads when it runs in the given directory, or null
+	 * if one of them can't be passed to blackd, in which case black has to run for each file.
+	 */
+	@Nullable
+	static Map<String, String> forWorkingDir(File workingDir) throws IOException {
+		File pyproject = findPyproject(workingDir);
+		if (pyproject == null) {
+			return new LinkedHashMap<>();
+		}
+		return fromOptions(blackOptions(new String(Files.readAllBytes(pyproject.toPath()), UTF_8)));
+	}
+
+	/** The pyproject.toml of the project root above the directory, or else the user-level configuration, like black. */
+	@Nullable
+	static File findPyproject(File workingDir) {
+		for (File dir = workingDir.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+			File pyproject = new File(dir, "pyproject.toml");
+			if (pyproject.isFile()) {
+				return pyproject;
+			}
+			if (new File(dir, ".git").exists() || new File(dir, ".hg").isDirectory()) {
+				break;
+			}
+		}
+		File userConfig;
+		if (FileSignature.machineIsWin()) {
+			userConfig = new File(System.getProperty("user.home"), ".black");
+		} else {
+			String xdgConfigHome = System.getenv("XDG_CONFIG_HOME");
+			File configHome = xdgConfigHome != null ? new File(xdgConfigHome) : new File(System.getProperty("user.home"), ".config");
+			userConfig = new File(configHome, "black");
+		}
+		return userConfig.isFile() ? userConfig : null;
+	}
+
+	/**
+	 * Returns the raw values of the {@code [tool.black]} table by their dashed names. Only the subset of TOML which
+	 * black options use is understood: single-line values, and arrays and multi-line strings spanning several lines.
+	 */
+	static Map<String, String> blackOptions(String toml) {
+		Map<String, String> options = new LinkedHashMap<>();
+		boolean inBlackTable = false;
+		String key = null;
+		StringBuilder value = null;
+		for (String line : toml.split("\\r?\\n")) {
+			if (value != null) {
+				// continuation of a multi-line array or string
+				value.append('\n').append(line);
+				if (isComplete(value.toString())) {
+					if (inBlackTable) {
+						options.put(key, value.toString());
+					}
+					value = null;
+				}
+				continue;
+			}
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				continue;
+			}
+			if (trimmed.startsWith("[")) {
+				inBlackTable = trimmed.replaceAll("\\s", "").startsWith("[tool.black]");
+				continue;
+			}
+			Matcher matcher = KEY_VALUE.matcher(line);
+			if (matcher.matches()) {
+				key = matcher.group(2).replace('_', '-').toLowerCase(Locale.ROOT);
+				if (isComplete(matcher.group(3))) {
+					if (inBlackTable) {
+						options.put(key, matcher.group(3));
+					}
+				} else {
+					value = new StringBuilder(matcher.group(3));
+				}
+			}
+		}
+		return options;
+	}
+
+	/** Whether the value has all of its closing brackets and quotes, so that it doesn't continue on the next line. */
+	private static boolean isComplete(String value) {
+		String trimmed = value.trim();
+		for (String quotes : new String[]{"\"\"\"", "'''"}) {
+			if (trimmed.startsWith(quotes)) {
+				return trimmed.length() >= 6 && trimmed.indexOf(quotes, 3) >= 0;
+			}
+		}
+		if (trimmed.startsWith("[")) {
+			return STRING.matcher(withoutComments(trimmed)).replaceAll("").contains("]");
+		}
+		return true;
+	}
+
+	/** Drops the comments of every line, which may follow a value, but only outside of strings. */
+	private static String withoutComments(String value) {
+		StringBuilder result = new StringBuilder();
+		for (String line : value.split("\n")) {
+			Matcher matcher = STRING.matcher(line);
+			int end = 0;
+			while (matcher.find()) {
+				if (line.substring(end, matcher.start()).contains("#")) {
+					break;
+				}
+				end = matcher.end();
+			}
+			int comment = line.indexOf('#', end);
+			result.append(comment < 0 ? line : line.substring(0, comment)).append('\n');
+		}
+		return result.toString();
+	}
+
+	/** Translates the options of black to the headers of blackd, or returns null if one of them has no header. */
+	@Nullable
+	static Map<String, String> fromOptions(Map<String, String> options) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			String value = withoutComments(option.getValue()).trim();
+			switch (option.getKey()) {
+			case "line-length":
+				if (!value.matches("\\d+")) {
+					return null;
+				}
+				headers.put("X-Line-Length", value);
+				break;
+			case "skip-string-normalization":
+				if (!putFlag(headers, "X-Skip-String-Normalization", value)) {
+					return null;
+				}
+				break;
+			case "skip-magic-trailing-comma":
+				if (!putFlag(headers, "X-Skip-Magic-Trailing-Comma", value)) {
+					return null;
+				}
+				break;
+			case "preview":
+				if (!putFlag(headers, "X-Preview", value)) {
+					return null;
+				}
+				break;
+			case "target-version":
+				List<String> versions = new ArrayList<>();
+				Matcher matcher = STRING.matcher(value);
+				while (matcher.find()) {
+					versions.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+				}
+				if (!versions.isEmpty()) {
+					headers.put("X-Python-Variant", String.join(",", versions));
+				}
+				break;
+			default:
+				if (!IGNORED.contains(option.getKey())) {
+					return null;
+				}
+			}
+		}
+		return headers;
+	}
+
+	private static boolean putFlag(Map<String, String> headers, String header, String value) {
+		if (value.equals("true")) {
+			headers.put(header, "true");
+			return true;
+		}
+		return value.equals("false");
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.diffplug.spotless.FileSignature;
+import com.diffplug.spotless.ProcessRunner;
+import com.diffplug.spotless.ProcessRunner.LongRunningProcess;
+
+/**
+ * Formats with a {@code blackd} server, which black ships next to its executable, instead of starting a new
+ * python process for each file. See https://black.readthedocs.io/en/stable/usage_and_configuration/black_as_a_server.html
+ */
+class BlackdServer implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(BlackdServer.class);
+
+	/** Printed to stderr by blackd right before it binds its port. */
+	private static final String READY_PREFIX = "blackd version";
+
+	private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+
+	/** How often to retry with another port, in case another process takes the free port before blackd binds it. */
+	private static final int START_ATTEMPTS = 3;
+
+	private final URI uri;
+	private final String expectedVersion;
+	/** The options of pyproject.toml, which blackd ignores, see {@link BlackdHeaders}. */
+	private final Map<String, String> headers;
+	@Nullable
+	private final LongRunningProcess process;
+	/** Keeps the connection to blackd alive between files. */
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(10))
+			.build();
+
+	BlackdServer(URI uri, String expectedVersion, Map<String, String> headers, @Nullable LongRunningProcess process) {
+		this.uri = uri;
+		this.expectedVersion = expectedVersion;
+		this.headers = headers;
+		this.process = process;
+	}
+
+	/**
+	 * Starts the blackd next to the given black executable, or returns null if there is none, it does not start, or
+	 * the pyproject.toml which black would read in the given working directory has options which blackd does not
+	 * support. In those cases the caller should run black for each file.
+	 */
+	@Nullable
+	static BlackdServer startNextTo(File blackExe, String expectedVersion, File workingDir) {
+		File blackd = new File(blackExe.getParentFile(), FileSignature.machineIsWin() ? "blackd.exe" : "blackd");
+		if (!blackd.isFile()) {
+			logger.info("No blackd next to {}, running black for each file instead. Try running 'pip install black[d]=={}'.", blackExe, expectedVersion);
+			return null;
+		}
+		LongRunningProcess process = null;
+		try {
+			Map<String, String> headers = BlackdHeaders.forWorkingDir(workingDir);
+			if (headers == null) {
+				logger.warn("{} sets black options which blackd does not support, running black for each file instead.", BlackdHeaders.findPyproject(workingDir));
+				return null;
+			}
+			for (int attempt = 1; attempt <= START_ATTEMPTS; ++attempt) {
+				int port = freePort();
+				process = ProcessRunner.usingRingBuffersOfCapacity(64 * 1024)
+						.start(null, null, null, true, Arrays.asList(blackd.getAbsolutePath(), "--bind-host", "127.0.0.1", "--bind-port", String.valueOf(port)));
+				process.awaitOutputLine(READY_PREFIX, STARTUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+				BlackdServer server = new BlackdServer(URI.create("http://127.0.0.1:" + port + "/"), expectedVersion, headers, process);
+				// blackd reports the port it was asked for rather than the one it bound, so check that it is blackd which answers
+				if (awaitListening(process, port) && server.isBlackd()) {
+					logger.info("Started blackd on port {}", port);
+					return server;
+				}
+				logger.debug("Port {} was taken before blackd could bind it, retrying with another one", port);
+				process.close();
+				process = null;
+			}
+			throw new IOException("No free port for blackd after " + START_ATTEMPTS + " attempts");
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			logger.warn("Unable to start {}, running black for each file instead.", blackd, e);
+			if (process != null) {
+				process.close();
+			}
+			return null;
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * blackd announces itself right before it binds its port, so the port may need a moment. Returns false if blackd
+	 * exits instead, which it does if it can't bind the port.
+	 */
+	private static boolean awaitListening(LongRunningProcess process, int port) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+		while (true) {
+			if (!process.isAlive()) {
+				return false;
+			}
+			try (Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1000);
+				return true;
+			} catch (IOException e) {
+				if (System.nanoTime() > deadline) {
+					throw e;
+				}
+				Thread.sleep(50);
+			}
+		}
+	}
+
+	/** Whether it is blackd which answers, rather than another process which took the port. */
+	boolean isBlackd() throws IOException, InterruptedException {
+		return send("").headers().firstValue("X-Black-Version").isPresent();
+	}
+
+	String format(String input) throws IOException, InterruptedException {
+		HttpResponse<byte[]> response = send(input);
+		Optional<String> version = response.headers().firstValue("X-Black-Version");
+		if (version.isPresent() && !version.get().equals(expectedVersion)) {
+			throw new IllegalStateException("blackd at " + uri + " is version " + version.get() + ", but black is version " + expectedVersion
+					+ ". Try running 'pip install --force-reinstall black[d]==" + expectedVersion + "'");
+		}
+		switch (response.statusCode()) {
+		case 200:
+			return new String(response.body(), UTF_8);
+		case 204:
+			// already formatted
+			return input;
+		case 400:
+			throw new IllegalArgumentException("black was unable to parse the input: " + new String(response.body(), UTF_8));
+		default:
+			throw new IOException("blackd at " + uri + " responded with HTTP " + response.statusCode() + ": " + new String(response.body(), UTF_8));
+		}
+	}
+
+	private HttpResponse<byte[]> send(String input) throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMinutes(2))
+				.header("X-Protocol-Version", "1")
+				.header("Content-Type", "text/plain; charset=utf-8")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(input.getBytes(UTF_8)));
+		headers.forEach(request::header);
+		return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	@Override
+	public void close() {
+		if (process != null) {
+			process.close();
+		}
+	}
+}
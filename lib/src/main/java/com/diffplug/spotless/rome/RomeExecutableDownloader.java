@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,8 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +71,19 @@ final class RomeExecutableDownloader {
 	private static final OpenOption[] WRITE_OPTIONS = {StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
 			StandardOpenOption.WRITE};
 
+	/**
+	 * The checksums computed by this JVM, by absolute path. An entry is only valid
+	 * while the file has the size and modification time it had when it was hashed.
+	 */
+	private static final ConcurrentMap<Path, StampedChecksum> CHECKSUMS = new ConcurrentHashMap<>();
+
+	/**
+	 * The checksums which this JVM computed by hashing the file, by absolute path,
+	 * unlike the ones in {@link #CHECKSUMS} which may have been read from the stamp
+	 * file of another build. Only these are trusted by the integrity check.
+	 */
+	private static final ConcurrentMap<Path, StampedChecksum> VERIFIED = new ConcurrentHashMap<>();
+
 	private final Path downloadDir;
 
 	private final BiomeFlavor flavor;
@@ -204,7 +219,7 @@ final class RomeExecutableDownloader {
 			return false;
 		}
 		try {
-			var actualChecksum = computeChecksum(filePath, CHECKSUM_ALGORITHM);
+			var actualChecksum = getVerifiedChecksum(filePath);
 			var expectedChecksum = readTextFile(checksumPath, StandardCharsets.ISO_8859_1);
 			logger.debug("Expected checksum: {}, actual checksum: {}", expectedChecksum, actualChecksum);
 			return Objects.equals(expectedChecksum, actualChecksum);
@@ -213,6 +228,88 @@ final class RomeExecutableDownloader {
 		}
 	}
 
+	/**
+	 * Gets the SHA-256 checksum of the given file, for the equality of the
+	 * {@link RomeStep} state. Hashing an executable of tens of MB is slow, so the
+	 * checksum is only computed again when the size or the modification time of
+	 * the file changed since it was last computed by this JVM, or, when
+	 * persisting, by any JVM. That doesn't detect a corrupted file, so integrity
+	 * checks must use {@link #getVerifiedChecksum(Path)} instead.
+	 *
+	 * @param file    File to process.
+	 * @param persist Whether to remember the checksum in a file next to the given
+	 *                file, which should only be done in directories owned by
+	 *                Spotless.
+	 * @return The checksum of the given file.
+	 * @throws IOException When the file does not exist or could not be read.
+	 */
+	static String getChecksum(Path file, boolean persist) throws IOException {
+		var absoluteFile = file.toAbsolutePath();
+		var stamp = getStamp(absoluteFile);
+		var cached = CHECKSUMS.get(absoluteFile);
+		if (cached != null && cached.stamp.equals(stamp)) {
+			return cached.checksum;
+		}
+		var stampPath = getStampPath(absoluteFile);
+		if (persist && Files.isRegularFile(stampPath)) {
+			var persisted = readTextFile(stampPath, StandardCharsets.ISO_8859_1).split("\n");
+			if (persisted.length == 2 && persisted[0].equals(stamp)) {
+				CHECKSUMS.put(absoluteFile, new StampedChecksum(stamp, persisted[1]));
+				return persisted[1];
+			}
+		}
+		logger.debug("Computing checksum of '{}'", absoluteFile);
+		var checksum = computeChecksum(absoluteFile, CHECKSUM_ALGORITHM);
+		rememberChecksum(absoluteFile, stamp, checksum);
+		if (persist) {
+			try (var out = Files.newOutputStream(stampPath, WRITE_OPTIONS)) {
+				out.write((stamp + "\n" + checksum).getBytes(StandardCharsets.ISO_8859_1));
+			} catch (IOException e) {
+				logger.debug("Unable to remember the checksum in '{}', computing it again next time", stampPath, e);
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Gets the SHA-256 checksum of the given file for an integrity check. The file
+	 * is hashed right after it was downloaded, and otherwise once per JVM for each
+	 * size and modification time it has, so that the many modules of a build
+	 * don't hash the same executable again. A checksum read from a stamp file is
+	 * never trusted here.
+	 *
+	 * @param file File to process.
+	 * @return The checksum of the given file.
+	 * @throws IOException When the file does not exist or could not be read.
+	 */
+	private static String getVerifiedChecksum(Path file) throws IOException {
+		var absoluteFile = file.toAbsolutePath();
+		var stamp = getStamp(absoluteFile);
+		var verified = VERIFIED.get(absoluteFile);
+		if (verified != null && verified.stamp.equals(stamp)) {
+			return verified.checksum;
+		}
+		logger.debug("Verifying checksum of '{}'", absoluteFile);
+		var checksum = computeChecksum(absoluteFile, CHECKSUM_ALGORITHM);
+		rememberChecksum(absoluteFile, stamp, checksum);
+		return checksum;
+	}
+
+	/**
+	 * Remembers the checksum of the given file which was just computed by hashing
+	 * it, so that neither {@link #getChecksum(Path, boolean)} nor
+	 * {@link #getVerifiedChecksum(Path)} hash it again.
+	 *
+	 * @param file     File which was hashed, as an absolute path.
+	 * @param stamp    The stamp of the file before it was hashed.
+	 * @param checksum The checksum of the given file.
+	 */
+	private static void rememberChecksum(Path file, String stamp, String checksum) {
+		var stampedChecksum = new StampedChecksum(stamp, checksum);
+		CHECKSUMS.put(file, stampedChecksum);
+		VERIFIED.put(file, stampedChecksum);
+	}
+
 	/**
 	 * Computes the checksum of the given file.
 	 *
@@ -221,7 +318,7 @@ final class RomeExecutableDownloader {
 	 * @return The checksum of the given file.
 	 * @throws IOException When the file does not exist or could not be read.
 	 */
-	private String computeChecksum(Path file, String algorithm) throws IOException {
+	private static String computeChecksum(Path file, String algorithm) throws IOException {
 		var buffer = new byte[4192];
 		try (var in = Files.newInputStream(file, READ_OPTIONS)) {
 			var digest = MessageDigest.getInstance(algorithm);
@@ -269,6 +366,33 @@ final class RomeExecutableDownloader {
 		return base.resolve(checksumName);
 	}
 
+	/**
+	 * Derives a path for the file which remembers the size, modification time and
+	 * checksum of the given file, see {@link #getChecksum(Path, boolean)}.
+	 *
+	 * @param file A file for which to derive the stamp file path.
+	 * @return The path with the stamp for the given file.
+	 */
+	private static Path getStampPath(Path file) {
+		var parent = file.getParent();
+		var base = parent != null ? parent : file;
+		var fileName = file.getFileName();
+		var stampName = fileName != null ? fileName.toString() + ".sha256.stamp" : "checksum.sha256.stamp";
+		return base.resolve(stampName);
+	}
+
+	/**
+	 * Describes the size and modification time of the given file, which change
+	 * whenever its content changes.
+	 *
+	 * @param file File to describe.
+	 * @return The stamp of the given file.
+	 * @throws IOException When the file does not exist or could not be read.
+	 */
+	private static String getStamp(Path file) throws IOException {
+		return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+	}
+
 	/**
 	 * Finds the URL from which the Biome executable can be downloaded.
 	 *
@@ -350,7 +474,7 @@ final class RomeExecutableDownloader {
 	 * @return The contents of the file as a string.
 	 * @throws IOException When the file could not be read.
 	 */
-	private String readTextFile(Path file, Charset charset) throws IOException {
+	private static String readTextFile(Path file, Charset charset) throws IOException {
 		try (var in = Files.newInputStream(file, READ_OPTIONS)) {
 			return new String(in.readAllBytes(), charset);
 		}
@@ -365,9 +489,23 @@ final class RomeExecutableDownloader {
 	 * @throws IOException
 	 */
 	private void writeChecksumFile(Path file, Path checksumPath) throws IOException {
-		var checksum = computeChecksum(file, CHECKSUM_ALGORITHM);
+		var absoluteFile = file.toAbsolutePath();
+		var stamp = getStamp(absoluteFile);
+		var checksum = computeChecksum(absoluteFile, CHECKSUM_ALGORITHM);
+		rememberChecksum(absoluteFile, stamp, checksum);
 		try (var out = Files.newOutputStream(checksumPath, WRITE_OPTIONS)) {
 			out.write(checksum.getBytes(StandardCharsets.ISO_8859_1));
 		}
 	}
+
+	/** A checksum, together with the stamp of the file at the time it was computed. */
+	private static final class StampedChecksum {
+		private final String stamp;
+		private final String checksum;
+
+		private StampedChecksum(String stamp, String checksum) {
+			this.stamp = stamp;
+			this.checksum = checksum;
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,13 +25,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.diffplug.spotless.FileSignature;
 import com.diffplug.spotless.ForeignExe;
 import com.diffplug.spotless.FormatterFunc;
 import com.diffplug.spotless.FormatterStep;
@@ -304,9 +306,10 @@ public class RomeStep {
 		validateBiomeExecutable(resolvedPathToExe);
 		validateBiomeConfigPath(flavor, configPath);
 		logger.debug("Using Biome executable located at  '{}'", resolvedPathToExe);
-		var exeSignature = FileSignature.signAsList(Collections.singleton(new File(resolvedPathToExe)));
+		// only executables which Spotless downloaded itself get their checksum remembered next to them
+		var exeSignature = RomeExecutableDownloader.getChecksum(Paths.get(resolvedPathToExe), pathToExe == null);
 		makeExecutable(resolvedPathToExe);
-		return new State(resolvedPathToExe, exeSignature, configPath, language);
+		return new State(resolvedPathToExe, exeSignature, configPath, flavor.configName(), language);
 	}
 
 	/**
@@ -356,15 +359,21 @@ public class RomeStep {
 		/** Path to the exe file */
 		private final String pathToExe;
 
-		/** The signature of the exe file, if any, used for caching. */
+		/** The SHA-256 checksum of the exe file, used for caching. */
 		@SuppressWarnings("unused")
-		private final FileSignature exeSignature;
+		private final String exeSignature;
 
 		/**
 		 * The optional path to the directory with the {@code biome.json} config file.
 		 */
 		private final String configPath;
 
+		/**
+		 * The name of the config file, e.g. {@code biome.json}, which Biome looks for
+		 * when no config path is given.
+		 */
+		private final String configName;
+
 		/**
 		 * The language of the files to format. When <code>null</code> or the empty
 		 * string, the language is detected from the file name.
@@ -376,15 +385,17 @@ public class RomeStep {
 		 * executable.
 		 *
 		 * @param exe          Path to the Biome executable.
-		 * @param exeSignature Signature (e.g. SHA-256 checksum) of the Biome executable.
+		 * @param exeSignature SHA-256 checksum of the Biome executable.
 		 * @param configPath   Path to the optional directory with the {@code biome.json}
 		 *                     config file, can be <code>null</code>, in which case the
 		 *                     defaults are used.
+		 * @param configName   Name of the config file, e.g. {@code biome.json}.
 		 */
-		private State(String exe, FileSignature exeSignature, String configPath, String language) {
+		private State(String exe, String exeSignature, String configPath, String configName, String language) {
 			this.pathToExe = exe;
 			this.exeSignature = exeSignature;
 			this.configPath = configPath;
+			this.configName = configName;
 			this.language = language;
 		}
 
@@ -481,7 +492,130 @@ public class RomeStep {
 		 */
 		private FormatterFunc.Closeable toFunc() {
 			var runner = new ProcessRunner();
-			return FormatterFunc.Closeable.of(runner, this::format);
+			return FormatterFunc.Closeable.ofDangerous(runner, new BiomeFormatterFunc(runner));
+		}
+
+		/**
+		 * Finds the directory with the config file which Biome uses for every file:
+		 * the config path when given, otherwise the nearest directory with a config
+		 * file, starting at the working directory, as Biome does when it reads code
+		 * from stdin.
+		 *
+		 * @return The directory with the config file, or <code>null</code> if Biome
+		 *         uses its defaults.
+		 */
+		private Path resolveConfigRoot() {
+			if (configPath != null) {
+				return Paths.get(configPath).toAbsolutePath().normalize();
+			}
+			for (var dir = Paths.get("").toAbsolutePath(); dir != null; dir = dir.getParent()) {
+				if (Files.isRegularFile(dir.resolve(configName))) {
+					return dir;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Formats many files with a single Biome process, which formats them in
+		 * parallel. Biome formats files in place, so the code of each file is written
+		 * to a scratch directory, at the same path relative to the scratch directory
+		 * as the file has relative to the directory with the config file. Biome then
+		 * runs in the scratch directory with the same config file, so that the
+		 * {@code include} and {@code ignore} patterns of the config see the same paths
+		 * as for the real files. Files outside of the config directory, and files
+		 * which get a different name for an explicit language, are formatted one at a
+		 * time.
+		 *
+		 * @param runner     Process runner for invoking the Biome executable.
+		 * @param unixByFile The code to format, by file.
+		 * @return The formatted code, by file.
+		 * @throws IOException          When a file system error occurred while
+		 *                              executing Biome.
+		 * @throws InterruptedException When this thread was interrupted while waiting
+		 *                              for Biome to finish formatting.
+		 */
+		private Map<File, String> formatBatch(ProcessRunner runner, Map<File, String> unixByFile) throws IOException, InterruptedException {
+			var configRoot = resolveConfigRoot();
+			var formatted = new LinkedHashMap<File, String>();
+			var scratchDir = Files.createTempDirectory("spotless-biome");
+			try {
+				var scratchFiles = new LinkedHashMap<File, String>();
+				for (var entry : unixByFile.entrySet()) {
+					var file = entry.getKey().toPath().toAbsolutePath().normalize();
+					var root = configRoot != null ? configRoot : file.getRoot();
+					if (root == null || !file.startsWith(root) || !resolveFileName(entry.getKey()).equals(entry.getKey().getName())) {
+						formatted.put(entry.getKey(), format(runner, entry.getValue(), entry.getKey()));
+						continue;
+					}
+					var relativePath = root.relativize(file).toString();
+					var scratchFile = scratchDir.resolve(relativePath);
+					Files.createDirectories(scratchFile.getParent());
+					Files.write(scratchFile, entry.getValue().getBytes(StandardCharsets.UTF_8));
+					scratchFiles.put(entry.getKey(), relativePath);
+				}
+				if (!scratchFiles.isEmpty()) {
+					var args = buildBiomeBatchCommand(configRoot, scratchFiles.values());
+					if (logger.isDebugEnabled()) {
+						logger.debug("Running Biome comand to format {} files: '{}'", scratchFiles.size(), String.join(", ", args));
+					}
+					runner.exec(scratchDir.toFile(), null, null, args).assertExitZero(StandardCharsets.UTF_8);
+					for (var entry : scratchFiles.entrySet()) {
+						formatted.put(entry.getKey(), new String(Files.readAllBytes(scratchDir.resolve(entry.getValue())), StandardCharsets.UTF_8));
+					}
+				}
+				return formatted;
+			} finally {
+				deleteRecursively(scratchDir);
+			}
+		}
+
+		/**
+		 * Builds the list of arguments for the command that executes Biome to format
+		 * the given files in place.
+		 *
+		 * @param configRoot    Directory with the config file, or <code>null</code>.
+		 * @param relativePaths Paths of the files to format, relative to the working
+		 *                      directory.
+		 * @return The Biome command to use for formatting the files.
+		 */
+		private List<String> buildBiomeBatchCommand(Path configRoot, Iterable<String> relativePaths) {
+			var argList = new ArrayList<String>();
+			argList.add(pathToExe);
+			argList.add("format");
+			argList.add("--write");
+			if (configRoot != null) {
+				argList.add("--config-path");
+				argList.add(configRoot.toString());
+			}
+			relativePaths.forEach(argList::add);
+			return argList;
+		}
+
+		private static void deleteRecursively(Path dir) {
+			try (var paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			} catch (IOException e) {
+				logger.debug("Unable to delete Biome scratch directory {}", dir, e);
+			}
+		}
+
+		private class BiomeFormatterFunc implements FormatterFunc.NeedsFile, FormatterFunc.Batch {
+			private final ProcessRunner runner;
+
+			BiomeFormatterFunc(ProcessRunner runner) {
+				this.runner = runner;
+			}
+
+			@Override
+			public String applyWithFile(String unix, File file) throws Exception {
+				return format(runner, unix, file);
+			}
+
+			@Override
+			public Map<File, String> applyBatch(Map<File, String> unixByFile) throws Exception {
+				return formatBatch(runner, unixByFile);
+			}
 		}
 	}
 }
@@ -5,8 +5,47 @@ const express = require("express");
 const app = express();
 
 app.use(express.json({ limit: "50mb" }));
+app.use(express.raw({ type: "application/octet-stream", limit: "50mb" }));
+app.use((req, res, next) => {
+	if (Buffer.isBuffer(req.body)) {
+		try {
+			req.body = parseFramedBody(req.body);
+		} catch (err) {
+			res.status(400).send("Error while parsing request: " + err.message);
+			return;
+		}
+	}
+	next();
+});
+
+// Framed requests carry their parameters as json, followed by the raw utf-8 file contents, each frame as "<length in bytes>\n<bytes>".
+// The contents become the "file_content" of the parameters, or of the entries of their "files" array, so that endpoints see the same body as for json.
+function parseFramedBody(buffer) {
+	const frames = [];
+	let offset = 0;
+	while (offset < buffer.length) {
+		const newline = buffer.indexOf(10, offset);
+		const length = newline < 0 ? NaN : parseInt(buffer.toString("latin1", offset, newline), 10);
+		if (isNaN(length) || newline + 1 + length > buffer.length) {
+			throw new Error("Malformed frame at byte " + offset);
+		}
+		frames.push(buffer.toString("utf8", newline + 1, newline + 1 + length));
+		offset = newline + 1 + length;
+	}
+	const body = JSON.parse(frames.shift() || "{}");
+	if (Array.isArray(body.files)) {
+		if (body.files.length !== frames.length) {
+			throw new Error("Expected " + body.files.length + " file contents, but got " + frames.length);
+		}
+		body.files.forEach((file, i) => file.file_content = frames[i]);
+	} else {
+		body.file_content = frames[0];
+	}
+	return body;
+}
 
-const fs = require("fs");
+// if given, listen on this unix domain socket instead of a loopback tcp port
+const serverSocket = process.env.SPOTLESS_NPM_SERVER_SOCKET;
 
 function debugLog() {
 	if (debug_serve) {
@@ -14,20 +53,13 @@ function debugLog() {
 	}
 }
 
-var listener = app.listen(0, "127.0.0.1", () => {
-	debugLog("Server running on port " + listener.address().port);
-	fs.writeFile("server.port.tmp", "" + listener.address().port, function(err) {
-		if (err) {
-			return console.log(err);
-		} else {
-			fs.rename("server.port.tmp", "server.port", function(err) {
-				if (err) {
-					return console.log(err);
-				}
-			}); // try to be as atomic as possible
-		}
-	});
-});
+// the java side waits for this line on stdout, and then connects to the given address
+function onListening() {
+	const serverAddress = serverSocket ? "unix:" + serverSocket : "" + listener.address().port;
+	console.log("SPOTLESS_READY address=" + serverAddress);
+}
+
+var listener = serverSocket ? app.listen(serverSocket, onListening) : app.listen(0, "127.0.0.1", onListening);
 const shutdownManager = new GracefulShutdownManager(listener);
 
 app.post("/shutdown", (req, res) => {
@@ -37,3 +69,28 @@ app.post("/shutdown", (req, res) => {
 	}, 200);
 });
 
+
+// Formats every entry of a batch request with the given async function, and streams each result as soon as it is ready.
+// Results are in the order of the entries, each framed as "<status> <length in bytes>\n<content>" with status "ok" or "error".
+async function formatBatch(req, res, formatEntry) {
+	const entries = req.body.files;
+	if (!Array.isArray(entries)) {
+		res.status(400).send("Error while formatting: No files provided");
+		return;
+	}
+	res.set("Content-Type", "application/octet-stream");
+	for (const entry of entries) {
+		let status = "ok";
+		let content;
+		try {
+			content = await formatEntry(entry);
+		} catch (err) {
+			status = "error";
+			content = "Error while formatting: " + (err instanceof Error ? err.message : err);
+		}
+		const bytes = Buffer.from(content, "utf8");
+		res.write(status + " " + bytes.length + "\n");
+		res.write(bytes);
+	}
+	res.end();
+}
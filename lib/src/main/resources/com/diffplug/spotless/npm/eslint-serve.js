@@ -1,70 +1,129 @@
 const {ESLint} = require("eslint");
+const crypto = require("crypto");
+const fs = require("fs");
 
-app.post("/eslint/format", async (req, res) => {
+// ESLint instances are expensive to create (config evaluation, plugin and parser loading, typescript programs),
+// so we create one per distinct configuration and keep it for the lifetime of the server
+const eslintInstances = new Map(); // config id -> ESLint
+const eslintConfigIds = new Map(); // config key -> {configFileHash, configId}
+let eslintConfigCount = 0;
+
+function eslintConfigKey(format_data) {
+	return JSON.stringify([format_data.eslint_override_config || null, format_data.eslint_override_config_file || null, format_data.ts_config_root_dir || null]);
+}
+
+// an ESLint instance keeps the config file it has loaded, so an edited config file needs a new instance
+function eslintConfigFileHash(format_data) {
+	if (!format_data.eslint_override_config_file) {
+		return null;
+	}
 	try {
-		const format_data = req.body;
+		return crypto.createHash("sha256").update(fs.readFileSync(format_data.eslint_override_config_file)).digest("hex");
+	} catch (err) {
+		debugLog("unable to read config file: " + err);
+		return null; // ESLint itself reports the missing file when it lints
+	}
+}
 
-		const ESLintOverrideConfig = format_data.eslint_override_config;
+function createESLint(format_data) {
+	const ESLintOverrideConfig = format_data.eslint_override_config;
+	const ESLintOverrideConfigFile = format_data.eslint_override_config_file;
 
-		const ESLintOverrideConfigFile = format_data.eslint_override_config_file;
+	const ESLintOptions = {
+		fix: true,
+		useEslintrc: false, // would result in (gradle) cache issues
+	};
 
-		if (!ESLintOverrideConfig && !ESLintOverrideConfigFile) {
-			res.status(400).send("Error while formatting: No config provided");
-			return;
-		}
+	if (format_data.ts_config_root_dir) {
+		ESLintOptions.baseConfig = {
+			parserOptions: {
+				tsconfigRootDir: format_data.ts_config_root_dir
+			}
+		};
+	}
 
-		const filePath = format_data.file_path;
+	if (ESLintOverrideConfigFile) {
+		ESLintOptions.overrideConfigFile = ESLintOverrideConfigFile;
+	}
+	if (ESLintOverrideConfig) {
+		eval("ESLintOptions.overrideConfig = " + ESLintOverrideConfig);
+	}
 
-		if (!filePath) {
-			res.status(400).send("Error while formatting: No file path provided");
-			return;
-		}
+	debugLog("using options: " + JSON.stringify(ESLintOptions));
+	return new ESLint(ESLintOptions);
+}
 
-		const ESLintOptions = {
-			fix: true,
-			useEslintrc: false, // would result in (gradle) cache issues
-		};
+function eslintConfigId(format_data) {
+	const key = eslintConfigKey(format_data);
+	const configFileHash = eslintConfigFileHash(format_data);
+	const known = eslintConfigIds.get(key);
+	if (known && known.configFileHash === configFileHash) {
+		return known.configId;
+	}
+	if (known) {
+		// the config file has changed since, so the instance which loaded the old one is no longer needed
+		eslintInstances.delete(known.configId);
+	}
+	const eslint = createESLint(format_data);
+	const configId = "" + (++eslintConfigCount);
+	eslintInstances.set(configId, eslint);
+	eslintConfigIds.set(key, {configFileHash, configId});
+	return configId;
+}
 
-		if (format_data.ts_config_root_dir) {
-			ESLintOptions.baseConfig = {
-				parserOptions: {
-					tsconfigRootDir: format_data.ts_config_root_dir
-				}
-			};
+// registers a configuration once, so that format requests only need to send its id
+app.post("/eslint/init", (req, res) => {
+	try {
+		const format_data = req.body;
+		if (!format_data.eslint_override_config && !format_data.eslint_override_config_file) {
+			res.status(400).send("Error while initializing: No config provided");
+			return;
 		}
+		res.set("Content-Type", "text/plain");
+		res.send(eslintConfigId(format_data));
+	} catch (err) {
+		console.log("error", err);
+		res.status(500).send("Error while initializing: " + err);
+	}
+});
 
+app.post("/eslint/format", async (req, res) => {
+	try {
+		const format_data = req.body;
 
-		if (ESLintOverrideConfigFile) {
-			ESLintOptions.overrideConfigFile = ESLintOverrideConfigFile;
+		let configId = format_data.eslint_config_id;
+		if (!configId) {
+			if (!format_data.eslint_override_config && !format_data.eslint_override_config_file) {
+				res.status(400).send("Error while formatting: No config provided");
+				return;
+			}
+			configId = eslintConfigId(format_data);
 		}
-		if (ESLintOverrideConfig) {
-			eval("ESLintOptions.overrideConfig = " + ESLintOverrideConfig);
+		const eslint = eslintInstances.get(configId);
+		if (!eslint) {
+			res.status(400).send("Error while formatting: Unknown config id " + configId);
+			return;
 		}
 
-		debugLog("using options: " + JSON.stringify(ESLintOptions));
-		debugLog("format input: ", format_data.file_content);
-
-		const eslint = new ESLint(ESLintOptions);
-
-
-		const lintTextOptions = {
-			filePath: filePath,
-		}
-		debugLog("lintTextOptions", lintTextOptions);
+		const filePath = format_data.file_path;
 
-		// LintResult[] // https://eslint.org/docs/latest/developer-guide/nodejs-api#-lintresult-type
-		const results = await eslint.lintText(format_data.file_content, lintTextOptions);
-		if (results.length !== 1) {
-			res.status(500).send("Error while formatting: Unexpected number of results: " + JSON.stringify(results));
+		if (!filePath) {
+			res.status(400).send("Error while formatting: No file path provided");
 			return;
 		}
-		const result = results[0];
-		debugLog("result: " + JSON.stringify(result));
-		if (result.fatalErrorCount && result.fatalErrorCount > 0) {
-			res.status(500).send("Fatal error while formatting: " + JSON.stringify(result.messages));
-			return;
+
+		debugLog("format input: ", format_data.file_content);
+
+		let formatted;
+		try {
+			formatted = await eslintFormat(eslint, format_data.file_content, filePath);
+		} catch (err) {
+			if (err instanceof EslintFormatError) {
+				res.status(500).send(err.message);
+				return;
+			}
+			throw err;
 		}
-		const formatted = result.output || result.source || format_data.file_content;
 		res.set("Content-Type", "text/plain");
 		res.send(formatted);
 	} catch (err) {
@@ -72,3 +131,34 @@ app.post("/eslint/format", async (req, res) => {
 		res.status(500).send("Error while formatting: " + err);
 	}
 });
+
+app.post("/eslint/format-batch", async (req, res) => {
+	const configId = req.body.eslint_config_id;
+	const eslint = configId ? eslintInstances.get(configId) : undefined;
+	if (!eslint) {
+		res.status(400).send("Error while formatting: Unknown config id " + configId);
+		return;
+	}
+	await formatBatch(req, res, entry => eslintFormat(eslint, entry.file_content, entry.file_path));
+});
+
+class EslintFormatError extends Error {}
+
+const eslintFormat = async function(eslint, file_content, file_path) {
+	const lintTextOptions = {
+		filePath: file_path,
+	}
+	debugLog("lintTextOptions", lintTextOptions);
+
+	// LintResult[] // https://eslint.org/docs/latest/developer-guide/nodejs-api#-lintresult-type
+	const results = await eslint.lintText(file_content, lintTextOptions);
+	if (results.length !== 1) {
+		throw new EslintFormatError("Error while formatting: Unexpected number of results: " + JSON.stringify(results));
+	}
+	const result = results[0];
+	debugLog("result: " + JSON.stringify(result));
+	if (result.fatalErrorCount && result.fatalErrorCount > 0) {
+		throw new EslintFormatError("Fatal error while formatting: " + JSON.stringify(result.messages));
+	}
+	return result.output || result.source || file_content;
+};
@@ -34,6 +34,10 @@ app.post("/prettier/format", async (req, res) => {
 	res.send(formatted_file_content);
 });
 
+app.post("/prettier/format-batch", async (req, res) => {
+	await formatBatch(req, res, entry => prettierFormat(entry.file_content, entry.config_options));
+});
+
 const prettierFormat = async function(file_content, config_options) {
 	const result = prettier.format(file_content, config_options);
 
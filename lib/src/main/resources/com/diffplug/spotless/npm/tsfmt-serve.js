@@ -2,7 +2,26 @@ const tsfmt = require("typescript-formatter");
 
 app.post("/tsfmt/format", (req, res) => {
 	var format_data = req.body;
-	tsfmt.processString("spotless-format-string.ts", format_data.file_content, format_data.config_options).then(resultMap => {
+	tsfmtFormat(format_data.file_content, format_data.config_options).then(formatted => {
+		res.set("Content-Type", "text/plain");
+		res.send(formatted);
+	}).catch(reason => {
+		if (reason instanceof TsFmtError) {
+			res.status(400).send(reason.message);
+			return;
+		}
+		res.status(500).send(reason);
+	});
+});
+
+app.post("/tsfmt/format-batch", async (req, res) => {
+	await formatBatch(req, res, entry => tsfmtFormat(entry.file_content, req.body.config_options));
+});
+
+class TsFmtError extends Error {}
+
+const tsfmtFormat = function(file_content, config_options) {
+	return tsfmt.processString("spotless-format-string.ts", file_content, config_options).then(resultMap => {
 		/*
         export interface ResultMap {
             [fileName: string]: Result;
@@ -19,12 +38,8 @@ app.post("/tsfmt/format", (req, res) => {
         */
 		// result contains 'message' (String), 'error' (boolean), 'dest' (String) => formatted
 		if (resultMap.error !== undefined && resultMap.error) {
-			res.status(400).send(resultmap.message);
-			return;
+			throw new TsFmtError(resultMap.message);
 		}
-		res.set("Content-Type", "text/plain");
-		res.send(resultMap.dest);
-	}).catch(reason => {
-		res.status(500).send(reason);
+		return resultMap.dest;
 	});
-});
+};
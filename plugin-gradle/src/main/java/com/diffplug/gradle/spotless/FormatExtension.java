@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -484,6 +484,14 @@ public class FormatExtension {
 		addStep(NativeCmdStep.create(name, new File(pathToExe), arguments));
 	}
 
+	/**
+	 * Ensures formatting of files via a native binary which is started once and formats every file, see
+	 * {@link NativeCmdStep#createServer(String, File, List, int, java.time.Duration)} for the protocol.
+	 */
+	public void nativeCmdServer(String name, String pathToExe, List<String> arguments) {
+		addStep(NativeCmdStep.createServer(name, new File(pathToExe), arguments));
+	}
+
 	/**
 	 * Created by {@link FormatExtension#licenseHeader(String, String)} or
 	 * {@link FormatExtension#licenseHeaderFile(Object, String)}. For most
@@ -693,6 +701,8 @@ public class FormatExtension {
 
 		final Map<String, String> devDependencies;
 
+		int serverPoolSize = 1;
+
 		PrettierConfig(Map<String, String> devDependencies) {
 			super(getProject(), FormatExtension.this::replaceStep);
 			this.devDependencies = requireNonNull(devDependencies);
@@ -710,6 +720,13 @@ public class FormatExtension {
 			return this;
 		}
 
+		/** Runs up to this many prettier servers, which format the files of a batch in parallel. */
+		public PrettierConfig serverPoolSize(int serverPoolSize) {
+			this.serverPoolSize = serverPoolSize;
+			replaceStep();
+			return this;
+		}
+
 		@Override
 		protected FormatterStep createStep() {
 			final Project project = getProject();
@@ -719,7 +736,7 @@ public class FormatExtension {
 							Arrays.asList(project.getProjectDir(), project.getRootDir())),
 					new com.diffplug.spotless.npm.PrettierConfig(
 							this.prettierConfigFile != null ? project.file(this.prettierConfigFile) : null,
-							this.prettierConfig));
+							this.prettierConfig).withServerPoolSize(serverPoolSize));
 		}
 	}
 
@@ -909,7 +926,7 @@ public class FormatExtension {
 		ClangFormatStep stepCfg;
 
 		ClangFormatConfig(String version) {
-			this.stepCfg = ClangFormatStep.withVersion(version);
+			this.stepCfg = ClangFormatStep.withVersion(version).withProbeCacheDir(foreignExeProbeCacheDir());
 			addStep(createStep());
 		}
 
@@ -1082,6 +1099,11 @@ public class FormatExtension {
 		return spotless.project;
 	}
 
+	/** Where the versions of foreign executables are remembered across builds, see {@link com.diffplug.spotless.ForeignExe#probeCacheDir(File)}. */
+	File foreignExeProbeCacheDir() {
+		return new File(getProject().getGradle().getGradleUserHomeDir(), "caches/spotless/probes");
+	}
+
 	/** Eager version of {@link #createIndependentApplyTaskLazy(String)} */
 	public SpotlessApply createIndependentApplyTask(String taskName) {
 		return createIndependentApplyTaskLazy(taskName).get();
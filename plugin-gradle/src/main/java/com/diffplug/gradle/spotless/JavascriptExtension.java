@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -69,6 +69,8 @@ public class JavascriptExtension extends FormatExtension {
 		@Nullable
 		String configJs = null;
 
+		int serverPoolSize = 1;
+
 		public EslintBaseConfig(Project project, Consumer<FormatterStep> replaceStep,
 				Map<String, String> devDependencies) {
 			super(project, replaceStep);
@@ -95,6 +97,14 @@ public class JavascriptExtension extends FormatExtension {
 			replaceStep();
 			return (T) this;
 		}
+
+		/** Runs up to this many ESLint servers, which format the files of a batch in parallel. */
+		@SuppressWarnings("unchecked")
+		public T serverPoolSize(int serverPoolSize) {
+			this.serverPoolSize = serverPoolSize;
+			replaceStep();
+			return (T) this;
+		}
 	}
 
 	public class JavascriptEslintConfig extends EslintBaseConfig<JavascriptEslintConfig> {
@@ -114,7 +124,7 @@ public class JavascriptExtension extends FormatExtension {
 		}
 
 		protected EslintConfig eslintConfig() {
-			return new EslintConfig(configFilePath != null ? getProject().file(configFilePath) : null, configJs);
+			return new EslintConfig(configFilePath != null ? getProject().file(configFilePath) : null, configJs).withServerPoolSize(serverPoolSize);
 		}
 	}
 
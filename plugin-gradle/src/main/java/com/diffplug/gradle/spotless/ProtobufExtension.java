@@ -1,5 +1,5 @@
 /*
- * Copyright 2022-2023 DiffPlug
+ * Copyright 2022-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -65,7 +65,7 @@ public class ProtobufExtension extends FormatExtension implements HasBuiltinDeli
 		BufStep step;
 
 		BufFormatExtension(String version) {
-			this.step = BufStep.withVersion(version);
+			this.step = BufStep.withVersion(version).withProbeCacheDir(foreignExeProbeCacheDir());
 			if (!steps.isEmpty()) {
 				throw new IllegalArgumentException("buf() must be the first step, move other steps after it. Thumbs up [this issue](https://github.com/bufbuild/buf/issues/1035) for a resolution, see [here](https://github.com/diffplug/spotless/pull/1208#discussion_r1264439669) for more details on the problem.");
 			}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,7 +40,7 @@ public class PythonExtension extends FormatExtension {
 		BlackStep stepCfg;
 
 		BlackConfig(String version) {
-			this.stepCfg = BlackStep.withVersion(version);
+			this.stepCfg = BlackStep.withVersion(version).withProbeCacheDir(foreignExeProbeCacheDir());
 			addStep(createStep());
 		}
 
@@ -50,6 +50,13 @@ public class PythonExtension extends FormatExtension {
 			return this;
 		}
 
+		/** Formats with a single {@code blackd} server instead of starting black for every file, see {@link BlackStep#withBlackd(boolean)}. */
+		public BlackConfig blackd() {
+			stepCfg = stepCfg.withBlackd(true);
+			replaceStep(createStep());
+			return this;
+		}
+
 		private FormatterStep createStep() {
 			return stepCfg.create();
 		}
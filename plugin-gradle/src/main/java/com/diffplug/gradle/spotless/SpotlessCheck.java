@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,23 +18,29 @@ package com.diffplug.gradle.spotless;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.gradle.api.GradleException;
 import org.gradle.api.file.ConfigurableFileTree;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.TaskAction;
 
 import com.diffplug.spotless.FileSignature;
 import com.diffplug.spotless.ThrowingEx;
+import com.diffplug.spotless.extra.integration.CheckReportWriter;
 import com.diffplug.spotless.extra.integration.DiffMessageFormatter;
 
 public abstract class SpotlessCheck extends SpotlessTaskService.ClientTask {
@@ -44,6 +50,15 @@ public abstract class SpotlessCheck extends SpotlessTaskService.ClientTask {
 	@Input
 	public abstract Property<String> getRunToFixMessage();
 
+	/**
+	 * If set, every problem file is written to this report while the check runs, as
+	 * <a href="https://jsonlines.org/">JSON Lines</a>, or as SARIF if the file ends with {@code .sarif} or {@code .sarif.json}.
+	 * Marked as internal rather than as an output, so that the report never makes the check up-to-date.
+	 */
+	@Internal
+	@Optional
+	public abstract RegularFileProperty getReportFile();
+
 	public void performActionTest() throws IOException {
 		performAction(true);
 	}
@@ -54,6 +69,13 @@ public abstract class SpotlessCheck extends SpotlessTaskService.ClientTask {
 	}
 
 	private void performAction(boolean isTest) throws IOException {
+		File reportFile = getReportFile().isPresent() ? getReportFile().get().getAsFile() : null;
+		try (CheckReportWriter report = reportFile == null ? null : CheckReportWriter.open(reportFile, getProjectDir().get().getAsFile().toPath())) {
+			performAction(isTest, report);
+		}
+	}
+
+	private void performAction(boolean isTest, @Nullable CheckReportWriter report) {
 		ConfigurableFileTree files = getConfigCacheWorkaround().fileTree().from(getSpotlessOutDirectory().get());
 		if (files.isEmpty()) {
 			getState().setDidWork(sourceDidWork());
@@ -93,6 +115,9 @@ public abstract class SpotlessCheck extends SpotlessTaskService.ClientTask {
 							// If the on-disk content is equal to the formatted content,
 							// just don't add it as a problem file. Easy!
 							problemFiles.add(originalSource);
+							if (report != null) {
+								report.violation(getFormatName().get(), originalSource, userFile, formatted, Charset.forName(getEncoding().get()));
+							}
 						}
 					} catch (IOException e) {
 						throw ThrowingEx.asRuntime(e);
@@ -116,11 +141,15 @@ public abstract class SpotlessCheck extends SpotlessTaskService.ClientTask {
 	@Internal
 	abstract Property<String> getProjectPath();
 
+	@Internal
+	abstract Property<String> getFormatName();
+
 	@Override
 	void init(SpotlessTaskImpl impl) {
 		super.init(impl);
 		getProjectPath().set(getProject().getPath());
 		getEncoding().set(impl.getEncoding());
+		getFormatName().set(impl.formatName());
 		getRunToFixMessage().convention(
 				"Run '" + calculateGradleCommand() + " " + getTaskPathPrefix() + "spotlessApply' to fix these violations.");
 	}
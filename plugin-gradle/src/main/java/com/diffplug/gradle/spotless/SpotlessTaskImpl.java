@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -80,25 +84,58 @@ public abstract class SpotlessTaskImpl extends SpotlessTask {
 
 		try (Formatter formatter = buildFormatter()) {
 			GitRatchetGradle ratchet = getRatchet();
+			List<File> batch = new ArrayList<>();
 			for (FileChange fileChange : inputs.getFileChanges(target)) {
 				File input = fileChange.getFile();
 				if (fileChange.getChangeType() == ChangeType.REMOVED) {
 					deletePreviousResult(input);
 				} else {
 					if (input.isFile()) {
-						processInputFile(ratchet, formatter, input);
+						if (isRatchetClean(ratchet, input)) {
+							writeResult(input, PaddedCell.isClean());
+						} else {
+							batch.add(input);
+							if (batch.size() == BATCH_SIZE) {
+								processInputFiles(formatter, batch);
+								batch.clear();
+							}
+						}
 					}
 				}
 			}
+			if (!batch.isEmpty()) {
+				processInputFiles(formatter, batch);
+			}
+		}
+	}
+
+	/** How many files are formatted together, so that steps which can format many files at once do so. */
+	private static final int BATCH_SIZE = 64;
+
+	private void processInputFiles(Formatter formatter, List<File> batch) throws IOException {
+		Map<File, PaddedCell.DirtyState> dirtyStates;
+		try {
+			Map<File, byte[]> rawBytesByFile = new LinkedHashMap<>();
+			for (File input : batch) {
+				rawBytesByFile.put(input, Files.readAllBytes(input.toPath()));
+			}
+			dirtyStates = PaddedCell.calculateDirtyStates(formatter, rawBytesByFile);
+		} catch (IOException | RuntimeException e) {
+			// process the files one at a time, so that the error names the file which caused it
+			for (File input : batch) {
+				processInputFile(null, formatter, input);
+			}
+			return;
+		}
+		for (Map.Entry<File, PaddedCell.DirtyState> entry : dirtyStates.entrySet()) {
+			writeResult(entry.getKey(), entry.getValue());
 		}
 	}
 
 	@VisibleForTesting
 	void processInputFile(@Nullable GitRatchet ratchet, Formatter formatter, File input) throws IOException {
-		File output = getOutputFile(input);
-		getLogger().debug("Applying format to {} and writing to {}", input, output);
 		PaddedCell.DirtyState dirtyState;
-		if (ratchet != null && ratchet.isClean(getProjectDir().get().getAsFile(), getRootTreeSha(), input)) {
+		if (isRatchetClean(ratchet, input)) {
 			dirtyState = PaddedCell.isClean();
 		} else {
 			try {
@@ -109,6 +146,16 @@ public abstract class SpotlessTaskImpl extends SpotlessTask {
 				throw new IllegalArgumentException("Issue processing file: " + input, e);
 			}
 		}
+		writeResult(input, dirtyState);
+	}
+
+	private boolean isRatchetClean(@Nullable GitRatchet ratchet, File input) throws IOException {
+		return ratchet != null && ratchet.isClean(getProjectDir().get().getAsFile(), getRootTreeSha(), input);
+	}
+
+	private void writeResult(File input, PaddedCell.DirtyState dirtyState) throws IOException {
+		File output = getOutputFile(input);
+		getLogger().debug("Applying format to {} and writing to {}", input, output);
 		if (dirtyState.isClean()) {
 			// Remove previous output if it exists
 			Files.deleteIfExists(output.toPath());
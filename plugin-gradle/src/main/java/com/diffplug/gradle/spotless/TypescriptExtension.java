@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -223,7 +223,7 @@ public class TypescriptExtension extends FormatExtension {
 
 		protected EslintConfig eslintConfig() {
 			return new EslintTypescriptConfig(configFilePath != null ? getProject().file(configFilePath) : null,
-					configJs, typescriptConfigFilePath != null ? getProject().file(typescriptConfigFilePath) : null);
+					configJs, typescriptConfigFilePath != null ? getProject().file(typescriptConfigFilePath) : null).withServerPoolSize(serverPoolSize);
 		}
 	}
 
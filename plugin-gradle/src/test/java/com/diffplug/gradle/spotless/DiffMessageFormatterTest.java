@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,11 +17,14 @@ package com.diffplug.gradle.spotless;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.assertj.core.api.Assertions;
 import org.gradle.api.Project;
@@ -185,6 +188,37 @@ class DiffMessageFormatterTest extends ResourceHarness {
 				"        +4\\n");
 	}
 
+	@Test
+	void jsonLinesReport() throws Exception {
+		Bundle spotless = create(
+				setFile("A").toContent("1\r\n2\r\n"),
+				setFile("B").toContent("3\n4\r\n"));
+		File report = new File(rootFolder(), "build/spotless/report.jsonl");
+		spotless.check.getReportFile().set(report);
+		spotless.checkFailureMsg();
+
+		List<String> lines = Files.readAllLines(report.toPath(), StandardCharsets.UTF_8).stream().sorted().collect(Collectors.toList());
+		Assertions.assertThat(lines).hasSize(2);
+		Assertions.assertThat(lines.get(0)).isEqualTo("{\"format\":\"undertest\",\"file\":\"A\",\"status\":\"violation\",\"line\":1,"
+				+ "\"diff\":\"@@ -1,2 +1,2 @@\\n-1\\\\r\\\\n\\n-2\\\\r\\\\n\\n+1\\\\n\\n+2\\\\n\"}");
+		Assertions.assertThat(lines.get(1)).startsWith("{\"format\":\"undertest\",\"file\":\"B\",\"status\":\"violation\",\"line\":2,");
+	}
+
+	@Test
+	void sarifReport() throws Exception {
+		Bundle spotless = create(setFile("A").toContent("1\r\n2\r\n"));
+		File report = new File(rootFolder(), "build/spotless/report.sarif");
+		spotless.check.getReportFile().set(report);
+		spotless.checkFailureMsg();
+
+		String sarif = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+		Assertions.assertThat(sarif)
+				.startsWith("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",")
+				.contains("\"ruleId\":\"undertest\",\"level\":\"error\"")
+				.contains("\"artifactLocation\":{\"uri\":\"A\"},\"region\":{\"startLine\":1}")
+				.endsWith("]}]}\n");
+	}
+
 	@Test
 	void manyFiles() throws Exception {
 		List<File> testFiles = new ArrayList<>();
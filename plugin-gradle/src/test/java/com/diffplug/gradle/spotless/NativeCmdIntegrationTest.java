@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -42,4 +42,31 @@ class NativeCmdIntegrationTest extends GradleIntegrationHarness {
 		gradleRunner().withArguments("spotlessApply").build();
 		assertFile("test.txt").sameAsResource("native_cmd/clean.txt");
 	}
+
+	@Test
+	void nativeCmdServer() throws IOException {
+		// This will only work if /bin/sh and /usr/bin/sed are available
+		assumeThat(new File("/bin/sh")).exists();
+		assumeThat(new File("/usr/bin/sed")).exists();
+
+		setFile("server.sh").toLines(
+				"while IFS= read -r len; do",
+				"  out=$(dd bs=1 count=\"$len\" 2>/dev/null | /usr/bin/sed -e '1d' -e 's/placeholder/replaced/g'; printf x)",
+				"  out=${out%x}",
+				"  printf 'ok %s\\n%s' \"$(printf '%s' \"$out\" | wc -c | tr -d ' ')\" \"$out\"",
+				"done");
+		setFile("build.gradle").toLines(
+				"plugins {",
+				"  id 'com.diffplug.spotless'",
+				"}",
+				"spotless {",
+				"  format 'test', {",
+				"    target '**/*.txt'",
+				"    nativeCmdServer('sed', '/bin/sh', [file('server.sh').absolutePath])",
+				"  }",
+				"}");
+		setFile("test.txt").toResource("native_cmd/dirty.txt");
+		gradleRunner().withArguments("spotlessApply").build();
+		assertFile("test.txt").sameAsResource("native_cmd/clean.txt");
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,13 +15,14 @@
  */
 package com.diffplug.spotless.maven;
 
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -31,12 +32,12 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+
+import javax.annotation.Nullable;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -46,15 +47,16 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.resource.ResourceManager;
 import org.codehaus.plexus.resource.loader.FileResourceLoader;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.MatchPatterns;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import com.diffplug.spotless.Formatter;
 import com.diffplug.spotless.Jvm;
 import com.diffplug.spotless.LineEnding;
+import com.diffplug.spotless.PaddedCell;
 import com.diffplug.spotless.Provisioner;
 import com.diffplug.spotless.generic.LicenseHeaderStep;
 import com.diffplug.spotless.maven.antlr4.Antlr4;
@@ -81,6 +83,8 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 	private static final String DEFAULT_INDEX_FILE_NAME = "spotless-index";
 	private static final String DEFAULT_ENCODING = "UTF-8";
 	private static final String DEFAULT_LINE_ENDINGS = "GIT_ATTRIBUTES_FAST_ALLSAME";
+	private static final String DIRTY_PATHS_CACHE_KEY = AbstractSpotlessMojo.class.getName() + ".dirtyPaths";
+	private static final String VALIDATED_URLS_KEY = AbstractSpotlessMojo.class.getName() + ".validatedUrls";
 
 	/** Value to allow unsetting the ratchet inherited from parent pom configuration. */
 	static final String RATCHETFROM_NONE = "NONE";
@@ -193,8 +197,57 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 	@Parameter
 	private UpToDateChecking upToDateChecking = UpToDateChecking.enabled();
 
+	/**
+	 * Keep resolved artifacts and formatters alive across builds which share a JVM.
+	 * Defaults to true inside the Maven daemon (mvnd), and false otherwise.
+	 */
+	@Parameter(property = "spotless.daemonCache")
+	private Boolean daemonCache;
+
 	protected abstract void process(Iterable<File> files, Formatter formatter, UpToDateChecker upToDateChecker) throws MojoExecutionException;
 
+	/** Called once {@link #process} has been called for every formatter without failing, before {@link #afterProcess()}. */
+	protected void afterAllFormats() throws MojoExecutionException {}
+
+	/** Called once {@link #process} has been called for every formatter, or once one of those calls has failed. */
+	protected void afterProcess() throws MojoExecutionException {}
+
+	/** How many files {@link #calculateDirtyStates} is given at a time, so that steps which can format many files at once do so. */
+	static final int BATCH_SIZE = 64;
+
+	/** Reads a batch of files, in order. */
+	static Map<File, byte[]> readAllBytes(List<File> batch, String errorMessage) throws MojoExecutionException {
+		Map<File, byte[]> rawBytesByFile = new LinkedHashMap<>();
+		for (File file : batch) {
+			try {
+				rawBytesByFile.put(file, Files.readAllBytes(file.toPath()));
+			} catch (IOException e) {
+				throw new MojoExecutionException(errorMessage + file, e);
+			}
+		}
+		return rawBytesByFile;
+	}
+
+	/**
+	 * Checks a batch of files with a single {@link PaddedCell#calculateDirtyStates} call.
+	 * If the batch fails, its files are checked one at a time so that the error names the file which caused it.
+	 */
+	static Map<File, PaddedCell.DirtyState> calculateDirtyStates(Formatter formatter, Map<File, byte[]> rawBytesByFile, String errorMessage) throws MojoExecutionException {
+		try {
+			return PaddedCell.calculateDirtyStates(formatter, rawBytesByFile);
+		} catch (IOException | RuntimeException batchError) {
+			Map<File, PaddedCell.DirtyState> dirtyStates = new LinkedHashMap<>();
+			for (Map.Entry<File, byte[]> entry : rawBytesByFile.entrySet()) {
+				try {
+					dirtyStates.put(entry.getKey(), PaddedCell.calculateDirtyState(formatter, entry.getKey(), entry.getValue()));
+				} catch (IOException | RuntimeException e) {
+					throw new MojoExecutionException(errorMessage + entry.getKey(), e);
+				}
+			}
+			return dirtyStates;
+		}
+	}
+
 	private static final int MINIMUM_JRE = 11;
 
 	protected AbstractSpotlessMojo() {
@@ -213,7 +266,8 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 		}
 
 		List<FormatterFactory> formatterFactories = getFormatterFactories();
-		FormatterConfig config = getFormatterConfig();
+		DaemonCache cache = getDaemonCache();
+		FormatterConfig config = getFormatterConfig(cache);
 
 		Map<FormatterFactory, Supplier<Iterable<File>>> formatterFactoryToFiles = new LinkedHashMap<>();
 		for (FormatterFactory formatterFactory : formatterFactories) {
@@ -221,15 +275,18 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 			formatterFactoryToFiles.put(formatterFactory, filesToFormat);
 		}
 
-		try (FormattersHolder formattersHolder = FormattersHolder.create(formatterFactoryToFiles, config);
+		try (FormattersHolder formattersHolder = FormattersHolder.create(formatterFactoryToFiles, config, cache);
 				UpToDateChecker upToDateChecker = createUpToDateChecker(formattersHolder.getFormatters())) {
 			for (Entry<Formatter, Supplier<Iterable<File>>> entry : formattersHolder.getFormattersWithFiles().entrySet()) {
 				Formatter formatter = entry.getKey();
 				Iterable<File> files = entry.getValue().get();
 				process(files, formatter, upToDateChecker);
 			}
+			afterAllFormats();
 		} catch (PluginException e) {
 			throw e.asMojoExecutionException();
+		} finally {
+			afterProcess();
 		}
 	}
 
@@ -252,70 +309,39 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 
 	private List<File> collectFiles(FormatterFactory formatterFactory, FormatterConfig config) {
 		Optional<String> ratchetFrom = formatterFactory.ratchetFrom(config);
+		FileCollector fileCollector = FileCollector.create(baseDir, getIncludes(formatterFactory), getExcludes(formatterFactory), filePatterns);
 		try {
-			final List<File> files;
 			if (ratchetFrom.isPresent()) {
-				files = collectFilesFromGit(formatterFactory, ratchetFrom.get());
+				return collectFilesFromGit(fileCollector, ratchetFrom.get());
 			} else {
-				files = collectFilesFromFormatterFactory(formatterFactory);
+				return fileCollector.parallel().collect();
 			}
-			if (filePatterns == null || filePatterns.isEmpty()) {
-				return files;
-			}
-			final String[] includePatterns = this.filePatterns.split(",");
-			final List<Pattern> compiledIncludePatterns = Arrays.stream(includePatterns)
-					.map(Pattern::compile)
-					.collect(Collectors.toList());
-			final Predicate<File> shouldInclude = file -> compiledIncludePatterns
-					.stream()
-					.anyMatch(filePattern -> filePattern.matcher(file.getAbsolutePath())
-							.matches());
-			return files
-					.stream()
-					.filter(shouldInclude)
-					.collect(toList());
 		} catch (IOException e) {
 			throw new PluginException("Unable to scan file tree rooted at " + baseDir, e);
 		}
 	}
 
-	private List<File> collectFilesFromGit(FormatterFactory formatterFactory, String ratchetFrom) {
-		MatchPatterns includePatterns = MatchPatterns.from(
-				withNormalizedFileSeparators(getIncludes(formatterFactory)));
-		MatchPatterns excludePatterns = MatchPatterns.from(
-				withNormalizedFileSeparators(getExcludes(formatterFactory)));
-
-		Iterable<String> dirtyFiles;
-		try {
-			dirtyFiles = GitRatchetMaven
-					.instance().getDirtyFiles(baseDir, ratchetFrom);
-		} catch (IOException e) {
-			throw new PluginException("Unable to scan file tree rooted at " + baseDir, e);
-		}
+	private List<File> collectFilesFromGit(FileCollector fileCollector, String ratchetFrom) throws IOException {
+		Iterable<String> dirtyFiles = GitRatchetMaven.instance().getDirtyFiles(baseDir, ratchetFrom, dirtyPathsCache());
 
 		List<File> result = new ArrayList<>();
-		for (String file : withNormalizedFileSeparators(dirtyFiles)) {
-			if (includePatterns.matches(file, true)) {
-				if (!excludePatterns.matches(file, true)) {
-					result.add(new File(baseDir.getPath(), file));
-				}
+		for (String file : dirtyFiles) {
+			if (fileCollector.matches(file)) {
+				result.add(new File(baseDir.getPath(), file));
 			}
 		}
 		return result;
 	}
 
-	private List<File> collectFilesFromFormatterFactory(FormatterFactory formatterFactory) throws IOException {
-		String includesString = String.join(",", getIncludes(formatterFactory));
-		String excludesString = String.join(",", getExcludes(formatterFactory));
-
-		return FileUtils.getFiles(baseDir, includesString, excludesString);
-	}
-
-	private Iterable<String> withNormalizedFileSeparators(Iterable<String> patterns) {
-		return StreamSupport.stream(patterns.spliterator(), true)
-				.map(pattern -> pattern.replace('/', File.separatorChar))
-				.map(pattern -> pattern.replace('\\', File.separatorChar))
-				.collect(Collectors.toSet());
+	/**
+	 * The dirty paths of a repository are stored in the repository session, so they are computed
+	 * once per Maven session and shared by every module and format which ratchets from the same tree.
+	 */
+	@SuppressWarnings("unchecked")
+	private ConcurrentMap<String, Set<String>> dirtyPathsCache() {
+		SessionData sessionData = repositorySystemSession.getData();
+		sessionData.set(DIRTY_PATHS_CACHE_KEY, null, new ConcurrentHashMap<String, Set<String>>());
+		return (ConcurrentMap<String, Set<String>>) sessionData.get(DIRTY_PATHS_CACHE_KEY);
 	}
 
 	private static String withTrailingSeparator(String path) {
@@ -340,9 +366,20 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 		return excludes;
 	}
 
-	private FormatterConfig getFormatterConfig() {
+	private @Nullable DaemonCache getDaemonCache() {
+		boolean enabled = daemonCache != null ? daemonCache : DaemonCache.isDaemon();
+		return enabled ? DaemonCache.instance() : null;
+	}
+
+	private FormatterConfig getFormatterConfig(@Nullable DaemonCache cache) {
 		ArtifactResolver resolver = new ArtifactResolver(repositorySystem, repositorySystemSession, repositories, getLog());
 		Provisioner provisioner = MavenProvisioner.create(resolver);
+		if (cache != null) {
+			String repositoriesKey = repositories.stream()
+					.map(repository -> repository.getId() + '=' + repository.getUrl())
+					.collect(joining(","));
+			provisioner = cache.provisioner(repositoriesKey, provisioner);
+		}
 		List<FormatterStepFactory> formatterStepFactories = getFormatterStepFactories();
 		FileLocator fileLocator = getFileLocator();
 		final Optional<String> optionalRatchetFrom = Optional.ofNullable(this.ratchetFrom)
@@ -354,7 +391,14 @@ public abstract class AbstractSpotlessMojo extends AbstractMojo {
 		resourceManager.addSearchPath(FileResourceLoader.ID, baseDir.getAbsolutePath());
 		resourceManager.addSearchPath("url", "");
 		resourceManager.setOutputDirectory(buildDir);
-		return new FileLocator(resourceManager, baseDir, buildDir);
+		return new FileLocator(resourceManager, baseDir, buildDir, validatedUrls(), getLog());
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentMap<String, File> validatedUrls() {
+		SessionData sessionData = repositorySystemSession.getData();
+		sessionData.set(VALIDATED_URLS_KEY, null, new ConcurrentHashMap<String, File>());
+		return (ConcurrentMap<String, File>) sessionData.get(VALIDATED_URLS_KEY);
 	}
 
 	private List<FormatterFactory> getFormatterFactories() {
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+/**
+ * A fingerprint of the mojo configuration of a format, which {@link DaemonCache} uses to find a cached formatter
+ * before any step state is built. It is made of the values of every field of the configuration objects, where each
+ * file which a value names is stamped with its size and modification time.
+ * <p>
+ * There is no fingerprint for a configuration which names a URL, since its content can change without
+ * anything local changing, and an object which is not part of Spotless' configuration never matches.
+ */
+final class ConfigFingerprint {
+	private final File baseDir;
+	private final IdentityHashMap<Object, Boolean> visiting = new IdentityHashMap<>();
+	private boolean remote;
+
+	private ConfigFingerprint(File baseDir) {
+		this.baseDir = baseDir;
+	}
+
+	/** Returns the fingerprint of the given configuration objects, or null if they can't be fingerprinted. */
+	@Nullable
+	static String of(File baseDir, Object... configuration) {
+		ConfigFingerprint fingerprint = new ConfigFingerprint(baseDir);
+		StringBuilder out = new StringBuilder();
+		for (Object object : configuration) {
+			fingerprint.append(out, object);
+			out.append('\n');
+		}
+		return fingerprint.remote ? null : out.toString();
+	}
+
+	private void append(StringBuilder out, @Nullable Object value) {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof String) {
+			appendString(out, (String) value);
+		} else if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum || value instanceof Charset) {
+			out.append(value.getClass().getName()).append(':').append(value);
+		} else if (value instanceof File) {
+			appendFile(out, (File) value);
+		} else if (value instanceof Optional) {
+			append(out, ((Optional<?>) value).orElse(null));
+		} else if (visiting.put(value, Boolean.TRUE) != null) {
+			out.append("cycle");
+		} else {
+			try {
+				if (value instanceof Map) {
+					appendMap(out, (Map<?, ?>) value);
+				} else if (value instanceof Iterable) {
+					out.append('[');
+					for (Object element : (Iterable<?>) value) {
+						append(out, element);
+						out.append(',');
+					}
+					out.append(']');
+				} else if (value.getClass().isArray()) {
+					out.append('[');
+					for (int i = 0; i < Array.getLength(value); ++i) {
+						append(out, Array.get(value, i));
+						out.append(',');
+					}
+					out.append(']');
+				} else if (value.getClass().getName().startsWith("com.diffplug.")) {
+					appendFields(out, value);
+				} else {
+					// not part of the configuration, so there is no telling what it depends on
+					out.append(value.getClass().getName()).append('@').append(System.identityHashCode(value));
+				}
+			} finally {
+				visiting.remove(value);
+			}
+		}
+	}
+
+	private void appendString(StringBuilder out, String value) {
+		out.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		if (RemoteResourceCache.isRemote(value)) {
+			remote = true;
+		}
+		// a string may name a file, either relative to the working directory (as FileLocator resolves it) or to the project
+		stampIfFile(out, new File(value));
+		if (!new File(value).isAbsolute()) {
+			stampIfFile(out, new File(baseDir, value));
+		}
+	}
+
+	private void appendFile(StringBuilder out, File file) {
+		out.append("file:").append(file.getAbsolutePath());
+		stampIfFile(out, file);
+	}
+
+	private static void stampIfFile(StringBuilder out, File file) {
+		if (file.isFile()) {
+			out.append("{").append(file.getAbsolutePath()).append(':').append(file.length()).append(':').append(file.lastModified()).append('}');
+		}
+	}
+
+	/** Entries are sorted by the fingerprint of their key, since the order of a map such as {@code Properties} is arbitrary. */
+	private void appendMap(StringBuilder out, Map<?, ?> map) {
+		List<String> entries = new ArrayList<>(map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			StringBuilder entryOut = new StringBuilder();
+			append(entryOut, entry.getKey());
+			entryOut.append('=');
+			append(entryOut, entry.getValue());
+			entries.add(entryOut.toString());
+		}
+		entries.sort(null);
+		out.append('{');
+		for (String entry : entries) {
+			out.append(entry).append(',');
+		}
+		out.append('}');
+	}
+
+	private void appendFields(StringBuilder out, Object value) {
+		out.append(value.getClass().getName()).append('{');
+		for (Class<?> clazz = value.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+			for (Field field : clazz.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+					continue;
+				}
+				out.append(clazz.getSimpleName()).append('.').append(field.getName()).append('=');
+				try {
+					field.setAccessible(true);
+					append(out, field.get(value));
+				} catch (ReflectiveOperationException | RuntimeException e) {
+					// inaccessible, so there is no telling what it depends on
+					out.append("inaccessible@").append(System.identityHashCode(value));
+				}
+				out.append(',');
+			}
+		}
+		out.append('}');
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import com.diffplug.spotless.Formatter;
+import com.diffplug.spotless.LazyForwardingEquality;
+import com.diffplug.spotless.Provisioner;
+
+/**
+ * Keeps resolved artifacts and fully-built formatters alive across builds which share a JVM, as they do under
+ * the Maven daemon (mvnd). A cached {@link Formatter} keeps its step states and any live {@code FormatterFunc}
+ * (e.g. a running npm server or an initialized Eclipse formatter), so a warm build skips all of that startup.
+ * <p>
+ * A formatter is found by the {@link ConfigFingerprint} of its mojo configuration, as long as the artifacts which its
+ * steps resolved are unchanged, so that a warm build doesn't even build the step states. Otherwise a fresh formatter
+ * is built, and replaced by a cached one which is {@link Formatter#equals(Object) equal} to it, if there is one.
+ * Entries which haven't been used for {@link #IDLE_TIMEOUT} are evicted, and evicted formatters are closed.
+ * A formatter is only considered idle once every build which {@link #acquire acquired} it has {@link #release released} it.
+ */
+final class DaemonCache {
+	/** System property which mvnd sets in its daemon JVMs. */
+	private static final String MVND_HOME = "mvnd.home";
+
+	static final Duration IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+	private static DaemonCache instance;
+
+	/** Returns true if Spotless is running inside the Maven daemon. */
+	static boolean isDaemon() {
+		return System.getProperty(MVND_HOME) != null;
+	}
+
+	/** The JVM-wide instance, which evicts idle entries in the background. */
+	static synchronized DaemonCache instance() {
+		if (instance == null) {
+			DaemonCache cache = new DaemonCache(IDLE_TIMEOUT, System::nanoTime);
+			ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "spotless-daemon-cache-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = IDLE_TIMEOUT.toMillis() / 4;
+			evictor.scheduleWithFixedDelay(cache::evictIdle, period, period, TimeUnit.MILLISECONDS);
+			Runtime.getRuntime().addShutdownHook(new Thread(cache::clear, "spotless-daemon-cache-shutdown"));
+			instance = cache;
+		}
+		return instance;
+	}
+
+	private final long idleTimeoutNanos;
+	private final LongSupplier nanoTime;
+	private final Map<ArtifactsRequest, Entry<Set<File>>> artifacts = new HashMap<>();
+	private final Map<Formatter, Entry<Formatter>> formatters = new HashMap<>();
+	private final Map<String, Fingerprinted> fingerprints = new HashMap<>();
+	/** The artifacts which are provisioned while the current thread builds the states of a formatter. */
+	private final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+	DaemonCache(Duration idleTimeout, LongSupplier nanoTime) {
+		this.idleTimeoutNanos = idleTimeout.toNanos();
+		this.nanoTime = Objects.requireNonNull(nanoTime);
+	}
+
+	/**
+	 * Wraps the given provisioner so that its results are reused by every later build, for as long as the
+	 * resolved jars still exist. Requests for snapshots or version ranges are never cached.
+	 *
+	 * @param repositoriesKey identifies the remote repositories which {@code provisioner} resolves from
+	 */
+	Provisioner provisioner(String repositoriesKey, Provisioner provisioner) {
+		return (withTransitives, mavenCoordinates) -> {
+			Recording current = recording.get();
+			if (!isCacheable(mavenCoordinates)) {
+				if (current != null) {
+					current.reproducible = false;
+				}
+				return provisioner.provisionWithTransitives(withTransitives, mavenCoordinates);
+			}
+			ArtifactsRequest request = new ArtifactsRequest(repositoriesKey, withTransitives, mavenCoordinates);
+			Set<File> resolved = null;
+			synchronized (this) {
+				Entry<Set<File>> cached = artifacts.get(request);
+				if (cached != null && cached.value.stream().allMatch(File::isFile)) {
+					resolved = cached.touch(nanoTime.getAsLong());
+				}
+			}
+			if (resolved == null) {
+				resolved = provisioner.provisionWithTransitives(withTransitives, mavenCoordinates);
+				synchronized (this) {
+					artifacts.put(request, new Entry<>(resolved, nanoTime.getAsLong()));
+				}
+			}
+			if (current != null) {
+				current.artifacts.addAll(resolved);
+			}
+			return resolved;
+		};
+	}
+
+	/**
+	 * Returns a cached formatter which is equal to the given one, or caches and returns the given one.
+	 * The cache owns every formatter it returns, so callers must {@link #release} them instead of closing them.
+	 */
+	Formatter acquire(Formatter formatter) {
+		return acquire(null, () -> formatter);
+	}
+
+	/**
+	 * Returns the cached formatter for the given fingerprint, if the artifacts it resolved are unchanged. Otherwise
+	 * builds a new formatter, and returns a cached one which is equal to it, or else caches and returns the new one.
+	 * The cache owns every formatter it returns, so callers must {@link #release} them instead of closing them.
+	 *
+	 * @param fingerprint the {@link ConfigFingerprint} of the configuration which {@code newFormatter} builds
+	 *                    the formatter from, or null if it has none
+	 */
+	Formatter acquire(@Nullable String fingerprint, Supplier<Formatter> newFormatter) {
+		if (fingerprint != null) {
+			synchronized (this) {
+				Fingerprinted cached = fingerprints.get(fingerprint);
+				if (cached != null && cached.artifactsUnchanged()) {
+					++cached.entry.users;
+					return cached.entry.touch(nanoTime.getAsLong());
+				}
+			}
+		}
+		Formatter formatter = newFormatter.get();
+		// equality requires the lazy step states, so compute them outside of the lock
+		Recording built = new Recording();
+		recording.set(built);
+		try {
+			LazyForwardingEquality.unlazy(formatter.getSteps());
+		} finally {
+			recording.remove();
+		}
+		Formatter duplicate = null;
+		Formatter result;
+		synchronized (this) {
+			Entry<Formatter> entry = formatters.get(formatter);
+			if (entry == null) {
+				entry = new Entry<>(formatter, nanoTime.getAsLong());
+				formatters.put(formatter, entry);
+			} else if (entry.value != formatter) {
+				// built by an earlier build, or by another thread at the same time
+				duplicate = formatter;
+			}
+			if (fingerprint != null && built.reproducible) {
+				fingerprints.put(fingerprint, new Fingerprinted(entry, built.artifacts));
+			}
+			++entry.users;
+			result = entry.touch(nanoTime.getAsLong());
+		}
+		if (duplicate != null) {
+			close(Collections.singletonList(duplicate));
+		}
+		return result;
+	}
+
+	/** Marks a formatter returned by {@link #acquire} as no longer in use by the current build. */
+	synchronized void release(Formatter formatter) {
+		Entry<Formatter> entry = formatters.get(formatter);
+		if (entry != null && entry.value == formatter) {
+			--entry.users;
+			entry.touch(nanoTime.getAsLong());
+		}
+	}
+
+	/** Removes everything which has been idle for longer than the timeout, and closes the evicted formatters. */
+	void evictIdle() {
+		long now = nanoTime.getAsLong();
+		List<Formatter> evicted = new ArrayList<>();
+		synchronized (this) {
+			artifacts.values().removeIf(entry -> entry.isIdle(now, idleTimeoutNanos));
+			Iterator<Entry<Formatter>> iterator = formatters.values().iterator();
+			while (iterator.hasNext()) {
+				Entry<Formatter> entry = iterator.next();
+				if (entry.isIdle(now, idleTimeoutNanos)) {
+					evicted.add(entry.value);
+					iterator.remove();
+				}
+			}
+			fingerprints.values().removeIf(fingerprinted -> formatters.get(fingerprinted.entry.value) != fingerprinted.entry);
+		}
+		close(evicted);
+	}
+
+	/** Removes everything, and closes all cached formatters. */
+	void clear() {
+		List<Formatter> evicted;
+		synchronized (this) {
+			artifacts.clear();
+			evicted = new ArrayList<>();
+			for (Entry<Formatter> entry : formatters.values()) {
+				evicted.add(entry.value);
+			}
+			formatters.clear();
+			fingerprints.clear();
+		}
+		close(evicted);
+	}
+
+	private static void close(List<Formatter> formatters) {
+		for (Formatter formatter : formatters) {
+			try {
+				formatter.close();
+			} catch (RuntimeException e) {
+				// a formatter which fails to close must not prevent closing the others
+			}
+		}
+	}
+
+	private static boolean isCacheable(Collection<String> mavenCoordinates) {
+		for (String coordinate : mavenCoordinates) {
+			if (coordinate.endsWith("-SNAPSHOT") || coordinate.indexOf('[') >= 0 || coordinate.indexOf('(') >= 0 || coordinate.endsWith("LATEST") || coordinate.endsWith("RELEASE")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Entry<T> {
+		final T value;
+		long lastUsed;
+		int users;
+
+		Entry(T value, long lastUsed) {
+			this.value = value;
+			this.lastUsed = lastUsed;
+		}
+
+		T touch(long now) {
+			lastUsed = now;
+			return value;
+		}
+
+		boolean isIdle(long now, long idleTimeoutNanos) {
+			return users == 0 && now - lastUsed > idleTimeoutNanos;
+		}
+	}
+
+	/** The artifacts which were provisioned while building the states of a formatter. */
+	private static final class Recording {
+		final Set<File> artifacts = new HashSet<>();
+		/** False if any of them may resolve differently next time, such as a snapshot. */
+		boolean reproducible = true;
+	}
+
+	/** A cached formatter, with the size and modification time of each artifact which its steps resolved. */
+	private static final class Fingerprinted {
+		final Entry<Formatter> entry;
+		final Map<File, List<Long>> artifacts = new HashMap<>();
+
+		Fingerprinted(Entry<Formatter> entry, Set<File> artifacts) {
+			this.entry = entry;
+			for (File artifact : artifacts) {
+				this.artifacts.put(artifact, stamp(artifact));
+			}
+		}
+
+		boolean artifactsUnchanged() {
+			for (Map.Entry<File, List<Long>> artifact : artifacts.entrySet()) {
+				if (!artifact.getValue().equals(stamp(artifact.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static List<Long> stamp(File file) {
+			return Arrays.asList(file.length(), file.lastModified());
+		}
+	}
+
+	private static final class ArtifactsRequest {
+		final String repositoriesKey;
+		final boolean withTransitives;
+		final List<String> mavenCoordinates;
+
+		ArtifactsRequest(String repositoriesKey, boolean withTransitives, Collection<String> mavenCoordinates) {
+			this.repositoriesKey = repositoriesKey;
+			this.withTransitives = withTransitives;
+			this.mavenCoordinates = new ArrayList<>(mavenCoordinates);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof ArtifactsRequest) {
+				ArtifactsRequest o = (ArtifactsRequest) obj;
+				return o.withTransitives == withTransitives && o.repositoriesKey.equals(repositoriesKey) && o.mavenCoordinates.equals(mavenCoordinates);
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(repositoriesKey, withTransitives, mavenCoordinates);
+		}
+	}
+}
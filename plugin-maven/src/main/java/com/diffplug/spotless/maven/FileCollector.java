@@ -0,0 +1,433 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the files below a base directory which match a set of Ant-style include and exclude patterns,
+ * with the same semantics as plexus' {@code DirectoryScanner} (which backs {@code FileUtils.getFiles}).
+ * <p>
+ * Unlike {@code DirectoryScanner} it walks the tree with {@link Files#walkFileTree}, never descends into
+ * directories which can't hold an included file or which are entirely excluded (e.g. {@code **}{@code /node_modules/**}),
+ * and can walk the top-level subtrees of the base directory in parallel.
+ */
+final class FileCollector {
+	private static final String REGEX_PREFIX = "%regex[";
+	private static final String ANT_PREFIX = "%ant[";
+	private static final String PATTERN_SUFFIX = "]";
+
+	private final Path baseDir;
+	private final List<PathPattern> includes;
+	private final List<PathPattern> excludes;
+	private final List<Pattern> filePatterns;
+	private final boolean parallel;
+
+	private FileCollector(Path baseDir, List<PathPattern> includes, List<PathPattern> excludes, List<Pattern> filePatterns, boolean parallel) {
+		this.baseDir = baseDir;
+		this.includes = includes;
+		this.excludes = excludes;
+		this.filePatterns = filePatterns;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Creates a collector for the given patterns.
+	 *
+	 * @param baseDir the directory which all patterns are relative to
+	 * @param includes Ant-style include patterns, separated by {@code /} or {@code \}
+	 * @param excludes Ant-style exclude patterns, absolute patterns are made relative to {@code baseDir}
+	 * @param filePatterns comma-separated regexes (the {@code spotlessFiles} property), or null to accept every file
+	 */
+	static FileCollector create(File baseDir, Iterable<String> includes, Iterable<String> excludes, String filePatterns) {
+		Path base = baseDir.toPath().toAbsolutePath().normalize();
+		return new FileCollector(base, compile(base, includes), compile(base, excludes), compileFilePatterns(filePatterns), false);
+	}
+
+	/** Returns a copy of this collector which walks the top-level subtrees of the base directory in parallel. */
+	FileCollector parallel() {
+		return new FileCollector(baseDir, includes, excludes, filePatterns, true);
+	}
+
+	/** Returns every matching file below the base directory, sorted by path. */
+	List<File> collect() throws IOException {
+		List<Path> result = new ArrayList<>();
+		List<ForkJoinTask<List<Path>>> subtrees = new ArrayList<>();
+		walk(baseDir, result, parallel ? subtrees : null);
+		try {
+			for (ForkJoinTask<List<Path>> subtree : subtrees) {
+				result.addAll(subtree.join());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Collections.sort(result);
+		return result.stream().map(Path::toFile).collect(Collectors.toList());
+	}
+
+	/**
+	 * Determines whether the given path, relative to the base directory, would be collected.
+	 * Used to filter file lists which didn't come from a directory walk, e.g. the dirty files from git.
+	 */
+	boolean matches(String relativePath) {
+		return matches(tokenize(relativePath), relativePath);
+	}
+
+	private boolean matches(String[] segments, String relativePath) {
+		if (!anyMatch(includes, segments, relativePath) || anyMatch(excludes, segments, relativePath)) {
+			return false;
+		}
+		if (filePatterns.isEmpty()) {
+			return true;
+		}
+		for (Pattern filePattern : filePatterns) {
+			if (filePattern.matcher(relativePath).matches()) {
+				return true;
+			}
+		}
+		// for compatibility, the patterns are also allowed to match the absolute path
+		String absolutePath = baseDir.resolve(relativePath).toString();
+		for (Pattern filePattern : filePatterns) {
+			if (filePattern.matcher(absolutePath).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void walk(Path root, List<Path> result, List<ForkJoinTask<List<Path>>> subtrees) throws IOException {
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				if (dir.equals(root)) {
+					return FileVisitResult.CONTINUE;
+				}
+				String[] segments = tokenize(baseDir.relativize(dir));
+				if (!couldHoldIncluded(segments) || isEntirelyExcluded(segments)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				if (subtrees != null) {
+					subtrees.add(ForkJoinPool.commonPool().submit(() -> {
+						List<Path> subtreeResult = new ArrayList<>();
+						try {
+							walk(dir, subtreeResult, null);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						return subtreeResult;
+					}));
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() || attrs.isOther()) {
+					Path relative = baseDir.relativize(file);
+					if (matches(tokenize(relative), relative.toString())) {
+						result.add(file);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+				if (file.equals(baseDir)) {
+					throw exc;
+				}
+				// like DirectoryScanner, silently skip anything we can't read (and symlink loops)
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private boolean couldHoldIncluded(String[] dirSegments) {
+		for (PathPattern include : includes) {
+			if (include.couldMatchBelow(dirSegments)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isEntirelyExcluded(String[] dirSegments) {
+		for (PathPattern exclude : excludes) {
+			if (exclude.matchesEverythingBelow(dirSegments)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean anyMatch(List<PathPattern> patterns, String[] segments, String relativePath) {
+		for (PathPattern pattern : patterns) {
+			if (pattern.matches(segments, relativePath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String[] tokenize(Path relativePath) {
+		String[] segments = new String[relativePath.getNameCount()];
+		for (int i = 0; i < segments.length; ++i) {
+			segments[i] = relativePath.getName(i).toString();
+		}
+		return segments;
+	}
+
+	private static String[] tokenize(String path) {
+		return Arrays.stream(path.split("[/\\\\]+"))
+				.filter(segment -> !segment.isEmpty())
+				.toArray(String[]::new);
+	}
+
+	private static List<PathPattern> compile(Path baseDir, Iterable<String> patterns) {
+		List<PathPattern> compiled = new ArrayList<>();
+		for (String raw : patterns) {
+			String pattern = raw.trim();
+			if (pattern.isEmpty()) {
+				continue;
+			}
+			if (pattern.startsWith(REGEX_PREFIX) && pattern.endsWith(PATTERN_SUFFIX)) {
+				compiled.add(new RegexPattern(Pattern.compile(pattern.substring(REGEX_PREFIX.length(), pattern.length() - PATTERN_SUFFIX.length()))));
+				continue;
+			}
+			if (pattern.startsWith(ANT_PREFIX) && pattern.endsWith(PATTERN_SUFFIX)) {
+				pattern = pattern.substring(ANT_PREFIX.length(), pattern.length() - PATTERN_SUFFIX.length());
+			}
+			pattern = pattern.replace('\\', '/');
+			if (pattern.endsWith("/")) {
+				// same as DirectoryScanner, "foo/" is shorthand for "foo/**"
+				pattern += "**";
+			}
+			if (isAbsolute(pattern)) {
+				pattern = relativize(baseDir, pattern);
+				if (pattern == null) {
+					continue;
+				}
+			}
+			compiled.add(new AntPattern(tokenize(pattern)));
+		}
+		return compiled;
+	}
+
+	private static boolean isAbsolute(String pattern) {
+		return pattern.startsWith("/") || (pattern.length() > 2 && pattern.charAt(1) == ':' && pattern.charAt(2) == '/');
+	}
+
+	/**
+	 * DirectoryScanner only ever matches relative paths, so an absolute pattern (such as the build directory
+	 * which is always excluded) can only take effect once it is made relative to the base directory.
+	 * Returns null if the pattern can't match anything below the base directory.
+	 */
+	private static String relativize(Path baseDir, String absolutePattern) {
+		int firstWildcard = indexOfWildcard(absolutePattern);
+		int literalEnd = firstWildcard < 0 ? absolutePattern.length() : absolutePattern.lastIndexOf('/', firstWildcard);
+		if (literalEnd <= 0) {
+			return null;
+		}
+		Path literal = Path.of(absolutePattern.substring(0, literalEnd)).normalize();
+		if (!literal.startsWith(baseDir)) {
+			return null;
+		}
+		return baseDir.relativize(literal).toString().replace('\\', '/') + absolutePattern.substring(literalEnd);
+	}
+
+	private static int indexOfWildcard(String pattern) {
+		int star = pattern.indexOf('*');
+		int question = pattern.indexOf('?');
+		return star < 0 ? question : question < 0 ? star : Math.min(star, question);
+	}
+
+	private static List<Pattern> compileFilePatterns(String filePatterns) {
+		if (filePatterns == null || filePatterns.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Arrays.stream(filePatterns.split(","))
+				.map(Pattern::compile)
+				.collect(Collectors.toList());
+	}
+
+	private interface PathPattern {
+		/** True if the path (given both as segments and as a relative path) matches. */
+		boolean matches(String[] segments, String relativePath);
+
+		/** True if some path below the given directory might match, false if the walk can skip it. */
+		boolean couldMatchBelow(String[] dirSegments);
+
+		/** True if every path below the given directory matches. */
+		boolean matchesEverythingBelow(String[] dirSegments);
+	}
+
+	/** A raw {@code %regex[...]} pattern, matched against the whole relative path. */
+	private static final class RegexPattern implements PathPattern {
+		private final Pattern regex;
+
+		RegexPattern(Pattern regex) {
+			this.regex = regex;
+		}
+
+		@Override
+		public boolean matches(String[] segments, String relativePath) {
+			return regex.matcher(relativePath).matches();
+		}
+
+		@Override
+		public boolean couldMatchBelow(String[] dirSegments) {
+			return true;
+		}
+
+		@Override
+		public boolean matchesEverythingBelow(String[] dirSegments) {
+			return false;
+		}
+	}
+
+	/** An Ant-style pattern, where {@code **} matches zero or more directories, and {@code *}, {@code ?} match within one. */
+	private static final class AntPattern implements PathPattern {
+		private static final String ANY_DIRS = "**";
+
+		private final String[] segments;
+		private final Segment[] matchers;
+
+		AntPattern(String[] segments) {
+			this.segments = segments;
+			this.matchers = new Segment[segments.length];
+			for (int i = 0; i < segments.length; ++i) {
+				matchers[i] = ANY_DIRS.equals(segments[i]) ? null : Segment.compile(segments[i]);
+			}
+		}
+
+		@Override
+		public boolean matches(String[] path, String relativePath) {
+			return matches(0, path, 0, path.length);
+		}
+
+		private boolean matches(int patternIdx, String[] path, int pathIdx, int pathEnd) {
+			while (patternIdx < matchers.length && matchers[patternIdx] != null) {
+				if (pathIdx == pathEnd || !matchers[patternIdx].matches(path[pathIdx])) {
+					return false;
+				}
+				++patternIdx;
+				++pathIdx;
+			}
+			if (patternIdx == matchers.length) {
+				return pathIdx == pathEnd;
+			}
+			// collapse consecutive "**"
+			while (patternIdx < matchers.length && matchers[patternIdx] == null) {
+				++patternIdx;
+			}
+			if (patternIdx == matchers.length) {
+				return true;
+			}
+			for (int skip = pathIdx; skip < pathEnd; ++skip) {
+				if (matches(patternIdx, path, skip, pathEnd)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean couldMatchBelow(String[] dir) {
+			// same as SelectorUtils.matchPatternStart
+			int patternIdx = 0;
+			for (String segment : dir) {
+				if (patternIdx == matchers.length) {
+					return false;
+				}
+				if (matchers[patternIdx] == null) {
+					return true;
+				}
+				if (!matchers[patternIdx].matches(segment)) {
+					return false;
+				}
+				++patternIdx;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean matchesEverythingBelow(String[] dir) {
+			// if "prefix/**" matches the directory, then it also matches everything below it
+			return matchers.length > 0 && matchers[matchers.length - 1] == null && matches(0, dir, 0, dir.length);
+		}
+
+		@Override
+		public String toString() {
+			return String.join("/", segments);
+		}
+	}
+
+	/** A single path segment of an Ant-style pattern. */
+	private static final class Segment {
+		private final String literal;
+		private final Pattern wildcard;
+
+		private Segment(String literal, Pattern wildcard) {
+			this.literal = literal;
+			this.wildcard = wildcard;
+		}
+
+		static Segment compile(String glob) {
+			if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0) {
+				return new Segment(glob, null);
+			}
+			StringBuilder regex = new StringBuilder();
+			StringBuilder literalRun = new StringBuilder();
+			for (char c : glob.toCharArray()) {
+				if (c == '*' || c == '?') {
+					if (literalRun.length() > 0) {
+						regex.append(Pattern.quote(literalRun.toString()));
+						literalRun.setLength(0);
+					}
+					regex.append(c == '*' ? ".*" : ".");
+				} else {
+					literalRun.append(c);
+				}
+			}
+			if (literalRun.length() > 0) {
+				regex.append(Pattern.quote(literalRun.toString()));
+			}
+			return new Segment(null, Pattern.compile(regex.toString(), Pattern.DOTALL));
+		}
+
+		boolean matches(String segment) {
+			return literal != null ? literal.equals(segment) : wildcard.matcher(segment).matches();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,22 +16,22 @@
 package com.diffplug.spotless.maven;
 
 import static com.diffplug.common.base.Strings.isNullOrEmpty;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.codehaus.plexus.resource.ResourceManager;
-import org.codehaus.plexus.resource.loader.FileResourceCreationException;
 import org.codehaus.plexus.resource.loader.ResourceNotFoundException;
-import org.codehaus.plexus.util.FileUtils;
 
 public class FileLocator {
 
@@ -39,17 +39,29 @@ public class FileLocator {
 
 	private final ResourceManager resourceManager;
 	private final File baseDir, buildDir, dataDir;
+	private final RemoteResourceCache remoteResources;
 
 	public FileLocator(ResourceManager resourceManager, File baseDir, File buildDir) {
+		this(resourceManager, baseDir, buildDir, new ConcurrentHashMap<>(), new SystemStreamLog());
+	}
+
+	/**
+	 * @param validatedUrls the remote resources which were already validated, shared by every project in the Maven session
+	 * @param log the log of the running mojo
+	 */
+	FileLocator(ResourceManager resourceManager, File baseDir, File buildDir, ConcurrentMap<String, File> validatedUrls, Log log) {
 		this.resourceManager = Objects.requireNonNull(resourceManager);
 		this.baseDir = Objects.requireNonNull(baseDir);
 		this.buildDir = Objects.requireNonNull(buildDir);
 		this.dataDir = findDataDir();
+		this.remoteResources = new RemoteResourceCache(new File(dataDir, "resources"), validatedUrls, log);
 	}
 
 	/**
-	 * If the given path is a local file returns it as such unchanged, otherwise
-	 * extracts the given resource to a randomly-named file in the build folder.
+	 * If the given path is a local file returns it as such unchanged. Otherwise returns
+	 * a copy from the shared {@link RemoteResourceCache}, either downloaded from an
+	 * http(s) URL or extracted from the given resource, whose path only changes when
+	 * its content does.
 	 */
 	public File locateFile(String path) {
 		if (isNullOrEmpty(path)) {
@@ -61,14 +73,24 @@ public class FileLocator {
 			return localFile;
 		}
 
-		String outputFile = tmpOutputFileName(path);
-		try {
-			return resourceManager.getResourceAsFile(path, outputFile);
-		} catch (ResourceNotFoundException e) {
+		if (RemoteResourceCache.isRemote(path)) {
+			try {
+				return remoteResources.locate(path);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to locate file with path: " + path, e);
+			}
+		}
+
+		byte[] content;
+		try (InputStream input = resourceManager.getResourceAsInputStream(path)) {
+			content = input.readAllBytes();
+		} catch (ResourceNotFoundException | IOException e) {
 			throw new RuntimeException("Unable to locate file with path: " + path, e);
-		} catch (FileResourceCreationException e) {
-			throw new RuntimeException("Unable to create temporary file '" + outputFile + "' in the output directory",
-					e);
+		}
+		try {
+			return remoteResources.store(path, content);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to cache file with path: " + path + " in " + dataDir, e);
 		}
 	}
 
@@ -103,24 +125,6 @@ public class FileLocator {
 		return dataDir;
 	}
 
-	private static String tmpOutputFileName(String path) {
-		String extension = FileUtils.extension(path);
-		byte[] pathHash = hash(path);
-		String pathBase64 = Base64.getEncoder().encodeToString(pathHash);
-		return TMP_RESOURCE_FILE_PREFIX + pathBase64 + '.' + extension;
-	}
-
-	private static byte[] hash(String value) {
-		MessageDigest messageDigest;
-		try {
-			messageDigest = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("SHA-256 digest algorithm not available", e);
-		}
-		messageDigest.update(value.getBytes(UTF_8));
-		return messageDigest.digest();
-	}
-
 	private static File findDataDir() {
 		try {
 			// JAR path is e.g.
@@ -1,5 +1,5 @@
 /*
- * Copyright 2021-2023 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,36 +22,61 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
+
 import com.diffplug.spotless.Formatter;
 
 class FormattersHolder implements AutoCloseable {
 
 	private final Map<Formatter, Supplier<Iterable<File>>> formatterToFiles;
+	private final @Nullable DaemonCache daemonCache;
 
-	FormattersHolder(Map<Formatter, Supplier<Iterable<File>>> formatterToFiles) {
+	FormattersHolder(Map<Formatter, Supplier<Iterable<File>>> formatterToFiles, @Nullable DaemonCache daemonCache) {
 		this.formatterToFiles = formatterToFiles;
+		this.daemonCache = daemonCache;
 	}
 
-	static FormattersHolder create(Map<FormatterFactory, Supplier<Iterable<File>>> formatterFactoryToFiles, FormatterConfig config) {
+	/**
+	 * Creates the formatters for the given factories. If {@code daemonCache} is non-null, equal formatters from
+	 * earlier builds are reused, and the formatters are left open for later builds instead of being closed.
+	 */
+	static FormattersHolder create(Map<FormatterFactory, Supplier<Iterable<File>>> formatterFactoryToFiles, FormatterConfig config, @Nullable DaemonCache daemonCache) {
 		Map<Formatter, Supplier<Iterable<File>>> formatterToFiles = new LinkedHashMap<>();
 		try {
 			for (Entry<FormatterFactory, Supplier<Iterable<File>>> entry : formatterFactoryToFiles.entrySet()) {
 				FormatterFactory formatterFactory = entry.getKey();
 				Supplier<Iterable<File>> files = entry.getValue();
 
-				Formatter formatter = formatterFactory.newFormatter(files, config);
+				Formatter formatter;
+				if (daemonCache == null) {
+					formatter = formatterFactory.newFormatter(files, config);
+				} else {
+					formatter = daemonCache.acquire(fingerprint(formatterFactory, config), () -> formatterFactory.newFormatter(files, config));
+					if (formatterToFiles.containsKey(formatter)) {
+						// only released once in close()
+						daemonCache.release(formatter);
+					}
+				}
 				formatterToFiles.put(formatter, files);
 			}
 		} catch (RuntimeException openError) {
 			try {
-				close(formatterToFiles.keySet());
+				new FormattersHolder(formatterToFiles, daemonCache).close();
 			} catch (Exception closeError) {
 				openError.addSuppressed(closeError);
 			}
 			throw openError;
 		}
 
-		return new FormattersHolder(formatterToFiles);
+		return new FormattersHolder(formatterToFiles, daemonCache);
+	}
+
+	/** The fingerprint of everything which the formatter of the given factory is built from, besides the artifacts it resolves. */
+	@Nullable
+	private static String fingerprint(FormatterFactory formatterFactory, FormatterConfig config) {
+		File baseDir = config.getFileLocator().getBaseDir();
+		return ConfigFingerprint.of(baseDir, baseDir, formatterFactory, config.getEncoding(), config.getLineEndings(), config.getRatchetFrom(),
+				config.getGlobalStepFactories(), config.getSpotlessSetLicenseHeaderYearsFromGitHistory());
 	}
 
 	Iterable<Formatter> getFormatters() {
@@ -64,6 +89,11 @@ class FormattersHolder implements AutoCloseable {
 
 	@Override
 	public void close() {
+		if (daemonCache != null) {
+			// the daemon cache owns the formatters, and closes them once they are evicted
+			formatterToFiles.keySet().forEach(daemonCache::release);
+			return;
+		}
 		try {
 			close(formatterToFiles.keySet());
 		} catch (Exception e) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,10 +17,13 @@ package com.diffplug.spotless.maven;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import org.eclipse.jgit.lib.IndexDiff;
@@ -56,15 +59,42 @@ final class GitRatchetMaven extends GitRatchet<File> {
 		return instance;
 	}
 
-	Iterable<String> getDirtyFiles(File baseDir, String ratchetFrom) throws IOException {
+	/**
+	 * Returns the files below the repository containing {@code baseDir} which are dirty relative to {@code ratchetFrom},
+	 * relativized against {@code baseDir}. Computing the dirty set requires an {@link IndexDiff} over the whole working tree,
+	 * so the repository-relative result is stored in {@code dirtyPathsCache} keyed by repository and tree sha, and every
+	 * module and format which shares the cache shares a single diff.
+	 */
+	Iterable<String> getDirtyFiles(File baseDir, String ratchetFrom, ConcurrentMap<String, Set<String>> dirtyPathsCache) throws IOException {
 		Repository repository = repositoryFor(baseDir);
 		ObjectId sha = rootTreeShaOf(baseDir, ratchetFrom);
 
-		IndexDiff indexDiff = new IndexDiff(repository, sha, new FileTreeIterator(repository));
-		indexDiff.diff();
+		Set<String> dirtyPaths;
+		try {
+			String key = repository.getDirectory().getAbsolutePath() + '@' + sha.name();
+			dirtyPaths = dirtyPathsCache.computeIfAbsent(key, unused -> {
+				try {
+					return getDirtyPaths(repository, sha);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 
 		String workTreePath = repository.getWorkTree().getPath();
 		Path baseDirPath = Paths.get(baseDir.getPath());
+		return dirtyPaths.stream()
+				.map(path -> baseDirPath.relativize(Paths.get(workTreePath, path)).toString())
+				.collect(Collectors.toList());
+	}
+
+	/** Returns the paths, relative to the root of the repository, which are dirty relative to the given tree. */
+	private Set<String> getDirtyPaths(Repository repository, ObjectId sha) throws IOException {
+		File workTree = repository.getWorkTree();
+		IndexDiff indexDiff = new IndexDiff(repository, sha, new FileTreeIterator(repository));
+		indexDiff.diff();
 
 		Set<String> dirtyPaths = new HashSet<>(indexDiff.getChanged());
 		dirtyPaths.addAll(indexDiff.getAdded());
@@ -75,7 +105,7 @@ final class GitRatchetMaven extends GitRatchet<File> {
 			if (!dirtyPaths.add(path)) {
 				// File differs to index both in working tree and local repository,
 				// which means the working tree and local repository versions may be equal
-				if (isClean(baseDir, sha, path)) {
+				if (isClean(workTree, sha, path)) {
 					dirtyPaths.remove(path);
 				}
 			}
@@ -84,16 +114,13 @@ final class GitRatchetMaven extends GitRatchet<File> {
 			if (dirtyPaths.contains(path)) {
 				// A removed file can also be untracked, if a new file with the same name has been created.
 				// This file may be identical to the one in the local repository.
-				if (isClean(baseDir, sha, path)) {
+				if (isClean(workTree, sha, path)) {
 					dirtyPaths.remove(path);
 				}
 			}
 		}
 		// A file can be modified in the index but removed in the tree
 		dirtyPaths.removeAll(indexDiff.getMissing());
-
-		return dirtyPaths.stream()
-				.map(path -> baseDirPath.relativize(Paths.get(workTreePath, path)).toString())
-				.collect(Collectors.toList());
+		return Collections.unmodifiableSet(dirtyPaths);
 	}
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A local, content-addressed cache for configuration files which are downloaded from http(s) URLs or extracted from the
+ * classpath, shared by every module and every build on the machine.
+ * <p>
+ * Each downloaded file is stored as {@code <contentSha>/spotless-resource-<urlSha>.<ext>}, so its path only changes when
+ * its content does, and {@code FileSignature} (which caches by path and last-modified time) only ever hashes it once per JVM.
+ * The ETag and Last-Modified headers of the response are stored alongside, so the file is revalidated with a conditional
+ * request instead of being downloaded again, and a URL which was validated once is not revalidated for the rest of the
+ * Maven session.
+ * <p>
+ * Each URL is fetched under a lock on its index file, which is held both within the JVM (parallel builds create one
+ * cache per module) and across processes (other builds on the machine share the cache directory).
+ */
+final class RemoteResourceCache {
+	private static final String INDEX_DIR = "index";
+	private static final String KEY_SHA = "sha256";
+	private static final String KEY_ETAG = "etag";
+	private static final String KEY_LAST_MODIFIED = "lastModified";
+	private static final String KEY_FILE_NAME = "fileName";
+
+	private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+	private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(60);
+
+	/** Locks by index file, because a {@link FileLock} is held by the whole JVM and can't exclude other threads. */
+	private static final ConcurrentMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path cacheDir;
+	private final ConcurrentMap<String, File> validatedThisSession;
+	private final Log log;
+
+	/**
+	 * @param cacheDir the directory which holds the cache, normally shared by the whole machine
+	 * @param validatedThisSession the URLs which have already been validated, should live as long as the Maven session
+	 * @param log where to warn about stale copies which are used because their URL is unreachable
+	 */
+	RemoteResourceCache(File cacheDir, ConcurrentMap<String, File> validatedThisSession, Log log) {
+		this.cacheDir = cacheDir.toPath().toAbsolutePath().normalize();
+		this.validatedThisSession = Objects.requireNonNull(validatedThisSession);
+		this.log = Objects.requireNonNull(log);
+	}
+
+	/** Returns true if the given path is a URL which this cache can handle. */
+	static boolean isRemote(String path) {
+		String lowercase = path.toLowerCase(Locale.ROOT);
+		return lowercase.startsWith("http://") || lowercase.startsWith("https://");
+	}
+
+	/** Returns a local copy of the given URL, downloading it only if the cached copy is missing or stale. */
+	File locate(String url) throws IOException {
+		File validated = validatedThisSession.get(url);
+		if (validated != null && validated.isFile()) {
+			return validated;
+		}
+		String urlSha = sha256(url.getBytes(UTF_8));
+		Path indexFile = cacheDir.resolve(INDEX_DIR).resolve(urlSha + ".properties");
+		synchronized (LOCKS.computeIfAbsent(indexFile, unused -> new Object())) {
+			validated = validatedThisSession.get(url);
+			if (validated == null || !validated.isFile()) {
+				Files.createDirectories(indexFile.getParent());
+				Path lockFile = indexFile.resolveSibling(urlSha + ".lock");
+				try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+						FileLock fileLock = channel.lock()) {
+					validated = fetch(url, urlSha, indexFile);
+				}
+				validatedThisSession.put(url, validated);
+			}
+			return validated;
+		}
+	}
+
+	private File fetch(String url, String urlSha, Path indexFile) throws IOException {
+		Properties index = readIndex(indexFile);
+		Path cached = cachedFile(index);
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		try {
+			if (cached != null) {
+				setIfPresent(connection, "If-None-Match", index.getProperty(KEY_ETAG));
+				setIfPresent(connection, "If-Modified-Since", index.getProperty(KEY_LAST_MODIFIED));
+			}
+			byte[] content;
+			try {
+				int responseCode = connection.getResponseCode();
+				if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+					return cached.toFile();
+				} else if (responseCode < 200 || responseCode >= 300) {
+					throw new IOException("Unable to download " + url + ", server responded with " + responseCode);
+				}
+				try (InputStream input = connection.getInputStream()) {
+					content = input.readAllBytes();
+				}
+			} catch (IOException e) {
+				if (cached != null) {
+					// unreachable or failing, but we have a copy which was valid the last time we checked
+					log.warn("Unable to reach " + url + ", using the copy which was cached at " + Files.getLastModifiedTime(cached) + ": " + e);
+					return cached.toFile();
+				}
+				throw e;
+			}
+			Path file = store(urlSha, new URL(url).getPath(), content);
+
+			Properties updated = new Properties();
+			updated.setProperty(KEY_SHA, file.getParent().getFileName().toString());
+			updated.setProperty(KEY_FILE_NAME, file.getFileName().toString());
+			setIfPresent(updated, KEY_ETAG, connection.getHeaderField("ETag"));
+			setIfPresent(updated, KEY_LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+			writeAtomically(indexFile, out -> {
+				try (Writer writer = new OutputStreamWriter(out, UTF_8)) {
+					updated.store(writer, url);
+				}
+			});
+			return file.toFile();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Returns a copy of the given content, such as a resource from the classpath of the plugin, in this cache. Like a
+	 * downloaded file, its path only changes when its content does.
+	 *
+	 * @param name the name of the resource, whose extension is kept
+	 */
+	File store(String name, byte[] content) throws IOException {
+		return store(sha256(name.getBytes(UTF_8)), name, content).toFile();
+	}
+
+	private Path store(String nameSha, String name, byte[] content) throws IOException {
+		String extension = FileUtils.extension(name);
+		String fileName = FileLocator.TMP_RESOURCE_FILE_PREFIX + nameSha + (extension.isEmpty() ? "" : '.' + extension);
+		Path file = cacheDir.resolve(sha256(content)).resolve(fileName);
+		if (!Files.isRegularFile(file)) {
+			writeAtomically(file, out -> out.write(content));
+		}
+		return file;
+	}
+
+	private Path cachedFile(Properties index) {
+		String sha = index.getProperty(KEY_SHA);
+		String fileName = index.getProperty(KEY_FILE_NAME);
+		if (sha == null || fileName == null) {
+			return null;
+		}
+		Path file = cacheDir.resolve(sha).resolve(fileName);
+		return Files.isRegularFile(file) ? file : null;
+	}
+
+	private static Properties readIndex(Path indexFile) throws IOException {
+		Properties index = new Properties();
+		if (Files.isRegularFile(indexFile)) {
+			try (Reader reader = Files.newBufferedReader(indexFile, UTF_8)) {
+				index.load(reader);
+			}
+		}
+		return index;
+	}
+
+	private static void setIfPresent(HttpURLConnection connection, String header, String value) {
+		if (value != null) {
+			connection.setRequestProperty(header, value);
+		}
+	}
+
+	private static void setIfPresent(Properties properties, String key, String value) {
+		if (value != null) {
+			properties.setProperty(key, value);
+		}
+	}
+
+	private interface ContentWriter {
+		void write(OutputStream out) throws IOException;
+	}
+
+	/** Other processes may read the cache concurrently, so every file is written to a temp file and then moved into place. */
+	private static void writeAtomically(Path target, ContentWriter writer) throws IOException {
+		Files.createDirectories(target.getParent());
+		Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				writer.write(out);
+			}
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static String sha256(byte[] content) {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 digest algorithm not available", e);
+		}
+		byte[] hash = messageDigest.digest(content);
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,9 @@ package com.diffplug.spotless.maven;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -50,6 +53,7 @@ public class SpotlessApplyMojo extends AbstractSpotlessMojo {
 
 		ImpactedFilesTracker counter = new ImpactedFilesTracker();
 
+		List<File> batch = new ArrayList<>();
 		for (File file : files) {
 			if (upToDateChecker.isUpToDate(file.toPath())) {
 				counter.skippedAsCleanCache();
@@ -59,8 +63,31 @@ public class SpotlessApplyMojo extends AbstractSpotlessMojo {
 				continue;
 			}
 
+			batch.add(file);
+			if (batch.size() == BATCH_SIZE) {
+				processBatch(batch, formatter, upToDateChecker, counter);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			processBatch(batch, formatter, upToDateChecker, counter);
+		}
+
+		// We print the number of considered files which is useful when ratchetFrom is setup
+		if (counter.getTotal() > 0) {
+			getLog().info(String.format("Spotless.%s is keeping %s files clean - %s were changed to be clean, %s were already clean, %s were skipped because caching determined they were already clean",
+					formatter.getName(), counter.getTotal(), counter.getCleaned(), counter.getCheckedButAlreadyClean(), counter.getSkippedAsCleanCache()));
+		} else {
+			getLog().debug(String.format("Spotless.%s has no target files. Examine your `<includes>`: https://github.com/diffplug/spotless/tree/main/plugin-maven#quickstart", formatter.getName()));
+		}
+	}
+
+	private void processBatch(List<File> batch, Formatter formatter, UpToDateChecker upToDateChecker, ImpactedFilesTracker counter) throws MojoExecutionException {
+		Map<File, byte[]> rawBytesByFile = readAllBytes(batch, "Unable to format file ");
+		for (Map.Entry<File, PaddedCell.DirtyState> entry : calculateDirtyStates(formatter, rawBytesByFile, "Unable to format file ").entrySet()) {
+			File file = entry.getKey();
+			PaddedCell.DirtyState dirtyState = entry.getValue();
 			try {
-				PaddedCell.DirtyState dirtyState = PaddedCell.calculateDirtyState(formatter, file);
 				if (!dirtyState.isClean() && !dirtyState.didNotConverge()) {
 					getLog().info(String.format("Writing clean file: %s", file));
 					dirtyState.writeCanonicalTo(file);
@@ -75,14 +102,6 @@ public class SpotlessApplyMojo extends AbstractSpotlessMojo {
 
 			upToDateChecker.setUpToDate(file.toPath());
 		}
-
-		// We print the number of considered files which is useful when ratchetFrom is setup
-		if (counter.getTotal() > 0) {
-			getLog().info(String.format("Spotless.%s is keeping %s files clean - %s were changed to be clean, %s were already clean, %s were skipped because caching determined they were already clean",
-					formatter.getName(), counter.getTotal(), counter.getCleaned(), counter.getCheckedButAlreadyClean(), counter.getSkippedAsCleanCache()));
-		} else {
-			getLog().debug(String.format("Spotless.%s has no target files. Examine your `<includes>`: https://github.com/diffplug/spotless/tree/main/plugin-maven#quickstart", formatter.getName()));
-		}
 	}
 
 	private boolean isIdeHook() {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,19 +15,24 @@
  */
 package com.diffplug.spotless.maven;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import com.diffplug.spotless.Formatter;
 import com.diffplug.spotless.PaddedCell;
+import com.diffplug.spotless.extra.integration.CheckReportWriter;
 import com.diffplug.spotless.extra.integration.DiffMessageFormatter;
 import com.diffplug.spotless.maven.incremental.UpToDateChecker;
 
@@ -38,11 +43,25 @@ import com.diffplug.spotless.maven.incremental.UpToDateChecker;
 @Mojo(name = AbstractSpotlessMojo.GOAL_CHECK, defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
 public class SpotlessCheckMojo extends AbstractSpotlessMojo {
 
+	/**
+	 * If set, every problem file is written to this report while the check runs, as JSON Lines,
+	 * or as SARIF if the file ends with {@code .sarif} or {@code .sarif.json}.
+	 */
+	@Parameter(property = "spotless.check.report")
+	private File report;
+
+	private CheckReportWriter reportWriter;
+
+	/** The violations of every format, which fail the build once all formats have been checked. */
+	private final List<String> violations = new ArrayList<>();
+
 	@Override
 	protected void process(Iterable<File> files, Formatter formatter, UpToDateChecker upToDateChecker) throws MojoExecutionException {
 		ImpactedFilesTracker counter = new ImpactedFilesTracker();
+		CheckReportWriter checkReport = reportWriter(formatter);
 
 		List<File> problemFiles = new ArrayList<>();
+		List<File> batch = new ArrayList<>();
 		for (File file : files) {
 			if (upToDateChecker.isUpToDate(file.toPath())) {
 				counter.skippedAsCleanCache();
@@ -52,23 +71,15 @@ public class SpotlessCheckMojo extends AbstractSpotlessMojo {
 				continue;
 			}
 
-			try {
-				PaddedCell.DirtyState dirtyState = PaddedCell.calculateDirtyState(formatter, file);
-				if (!dirtyState.isClean() && !dirtyState.didNotConverge()) {
-					problemFiles.add(file);
-					if (buildContext.isIncremental()) {
-						Map.Entry<Integer, String> diffEntry = DiffMessageFormatter.diff(formatter, file);
-						buildContext.addMessage(file, diffEntry.getKey() + 1, 0, diffEntry.getValue(), BuildContext.SEVERITY_ERROR, null);
-					}
-					counter.cleaned();
-				} else {
-					counter.checkedButAlreadyClean();
-					upToDateChecker.setUpToDate(file.toPath());
-				}
-			} catch (IOException | RuntimeException e) {
-				throw new MojoExecutionException("Unable to check file " + file, e);
+			batch.add(file);
+			if (batch.size() == BATCH_SIZE) {
+				processBatch(batch, formatter, upToDateChecker, counter, checkReport, problemFiles);
+				batch.clear();
 			}
 		}
+		if (!batch.isEmpty()) {
+			processBatch(batch, formatter, upToDateChecker, counter, checkReport, problemFiles);
+		}
 
 		// We print the number of considered files which is useful when ratchetFrom is setup
 		if (counter.getTotal() > 0) {
@@ -79,11 +90,86 @@ public class SpotlessCheckMojo extends AbstractSpotlessMojo {
 		}
 
 		if (!problemFiles.isEmpty()) {
-			throw new MojoExecutionException(DiffMessageFormatter.builder()
+			// the message needs the formatter, which is closed by the time all formats have been checked
+			violations.add(DiffMessageFormatter.builder()
 					.runToFix("Run 'mvn spotless:apply' to fix these violations.")
 					.formatter(formatter)
 					.problemFiles(problemFiles)
 					.getMessage());
 		}
 	}
+
+	private void processBatch(List<File> batch, Formatter formatter, UpToDateChecker upToDateChecker, ImpactedFilesTracker counter,
+			@Nullable CheckReportWriter checkReport, List<File> problemFiles) throws MojoExecutionException {
+		Map<File, byte[]> rawBytesByFile = readAllBytes(batch, "Unable to check file ");
+		for (Map.Entry<File, PaddedCell.DirtyState> entry : calculateDirtyStates(formatter, rawBytesByFile, "Unable to check file ").entrySet()) {
+			File file = entry.getKey();
+			PaddedCell.DirtyState dirtyState = entry.getValue();
+			byte[] rawBytes = rawBytesByFile.get(file);
+			try {
+				if (!dirtyState.isClean() && !dirtyState.didNotConverge()) {
+					problemFiles.add(file);
+					if (buildContext.isIncremental() || checkReport != null) {
+						// reuse the formatted content which the check just computed, rather than formatting the file again
+						ByteArrayOutputStream formatted = new ByteArrayOutputStream();
+						dirtyState.writeCanonicalTo(formatted);
+						byte[] formattedBytes = formatted.toByteArray();
+						if (buildContext.isIncremental()) {
+							Map.Entry<Integer, String> diffEntry = DiffMessageFormatter.diff(new String(rawBytes, formatter.getEncoding()), new String(formattedBytes, formatter.getEncoding()));
+							buildContext.addMessage(file, diffEntry.getKey() + 1, 0, diffEntry.getValue(), BuildContext.SEVERITY_ERROR, null);
+						}
+						if (checkReport != null) {
+							checkReport.violation(formatter.getName(), file, rawBytes, formattedBytes, formatter.getEncoding());
+						}
+					}
+					counter.cleaned();
+				} else {
+					if (dirtyState.didNotConverge() && checkReport != null) {
+						checkReport.didNotConverge(formatter.getName(), file);
+					}
+					counter.checkedButAlreadyClean();
+					upToDateChecker.setUpToDate(file.toPath());
+				}
+			} catch (IOException | RuntimeException e) {
+				throw new MojoExecutionException("Unable to check file " + file, e);
+			}
+		}
+	}
+
+	/** The report is shared by every formatter, so it is opened by the first one and closed by {@link #afterProcess()}. */
+	private CheckReportWriter reportWriter(Formatter formatter) throws MojoExecutionException {
+		if (report != null && reportWriter == null) {
+			try {
+				reportWriter = CheckReportWriter.open(report, formatter.getRootDir());
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to open report " + report, e);
+			}
+		}
+		return reportWriter;
+	}
+
+	@Override
+	protected void afterAllFormats() throws MojoExecutionException {
+		closeReport();
+		if (!violations.isEmpty()) {
+			throw new MojoExecutionException(String.join("\n", violations));
+		}
+	}
+
+	@Override
+	protected void afterProcess() throws MojoExecutionException {
+		closeReport();
+	}
+
+	private void closeReport() throws MojoExecutionException {
+		if (reportWriter != null) {
+			try {
+				reportWriter.close();
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to write report " + report, e);
+			} finally {
+				reportWriter = null;
+			}
+		}
+	}
 }
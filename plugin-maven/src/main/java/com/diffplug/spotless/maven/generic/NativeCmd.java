@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -36,12 +36,15 @@ public class NativeCmd implements FormatterStepFactory {
 	@Parameter
 	private List<String> arguments;
 
+	@Parameter
+	private boolean server;
+
 	@Override
 	public FormatterStep newFormatterStep(FormatterStepConfig config) {
 		if (name == null || pathToExe == null) {
 			throw new IllegalArgumentException("Must specify 'name' and 'pathToExe'.");
 		}
 
-		return NativeCmdStep.create(name, pathToExe, arguments);
+		return server ? NativeCmdStep.createServer(name, pathToExe, arguments) : NativeCmdStep.create(name, pathToExe, arguments);
 	}
 }
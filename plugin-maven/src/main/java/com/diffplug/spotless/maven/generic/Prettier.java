@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -47,6 +47,9 @@ public class Prettier extends AbstractNpmFormatterStepFactory {
 	@Parameter
 	private String configFile;
 
+	@Parameter
+	private int serverPoolSize = 1;
+
 	@Override
 	public FormatterStep newFormatterStep(FormatterStepConfig stepConfig) {
 
@@ -101,7 +104,7 @@ public class Prettier extends AbstractNpmFormatterStepFactory {
 		File baseDir = baseDir(stepConfig);
 		File buildDir = buildDir(stepConfig);
 		File cacheDir = cacheDir(stepConfig);
-		PrettierConfig prettierConfig = new PrettierConfig(configFileHandler, configInline);
+		PrettierConfig prettierConfig = new PrettierConfig(configFileHandler, configInline).withServerPoolSize(serverPoolSize);
 		NpmPathResolver npmPathResolver = npmPathResolver(stepConfig);
 		return PrettierFormatterStep.create(devDependencies, stepConfig.getProvisioner(), baseDir, buildDir, cacheDir, npmPathResolver, prettierConfig);
 	}
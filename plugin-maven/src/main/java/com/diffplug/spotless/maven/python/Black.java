@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,6 +15,8 @@
  */
 package com.diffplug.spotless.maven.python;
 
+import java.io.File;
+
 import org.apache.maven.plugins.annotations.Parameter;
 
 import com.diffplug.spotless.FormatterStep;
@@ -30,12 +32,19 @@ public class Black implements FormatterStepFactory {
 	@Parameter
 	private String pathToExe;
 
+	@Parameter
+	private boolean blackd;
+
 	@Override
 	public FormatterStep newFormatterStep(FormatterStepConfig stepConfig) {
-		BlackStep black = BlackStep.withVersion(version == null ? BlackStep.defaultVersion() : version);
+		BlackStep black = BlackStep.withVersion(version == null ? BlackStep.defaultVersion() : version)
+				.withProbeCacheDir(new File(stepConfig.getFileLocator().getDataDir(), "probes"));
 		if (pathToExe != null) {
 			black = black.withPathToExe(pathToExe);
 		}
+		if (blackd) {
+			black = black.withBlackd(true);
+		}
 		return black.create();
 	}
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class ConfigFingerprintTest extends ResourceHarness {
+	@SuppressWarnings("unused")
+	private static class Config {
+		String file = "config.xml";
+		Map<String, String> options = new LinkedHashMap<>();
+		List<Object> steps = Arrays.asList("step", 1, true);
+		Config self = this;
+	}
+
+	private String fingerprint(Object config) {
+		return ConfigFingerprint.of(rootFolder(), config);
+	}
+
+	@Test
+	void equalConfigurationsHaveTheSameFingerprint() {
+		Config first = new Config();
+		first.options.put("a", "1");
+		first.options.put("b", "2");
+		Config second = new Config();
+		second.options.put("b", "2");
+		second.options.put("a", "1");
+		assertThat(fingerprint(first)).isNotNull().isEqualTo(fingerprint(second));
+
+		second.options.put("a", "changed");
+		assertThat(fingerprint(second)).isNotEqualTo(fingerprint(first));
+	}
+
+	@Test
+	void fileWhichIsNamedChangesTheFingerprintWhenItChanges() {
+		setFile("config.xml").toContent("first");
+		String before = fingerprint(new Config());
+		assertThat(fingerprint(new Config())).isEqualTo(before);
+
+		File config = setFile("config.xml").toContent("second");
+		assertThat(config.setLastModified(config.lastModified() + 2000)).isTrue();
+		assertThat(fingerprint(new Config())).isNotEqualTo(before);
+	}
+
+	@Test
+	void remoteConfigurationHasNoFingerprint() {
+		Config config = new Config();
+		config.file = "https://example.com/config.xml";
+		assertThat(fingerprint(config)).isNull();
+	}
+
+	@Test
+	void objectWhichIsNotConfigurationNeverMatches() {
+		assertThat(fingerprint(new Object())).isNotEqualTo(fingerprint(new Object()));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.Formatter;
+import com.diffplug.spotless.FormatterFunc;
+import com.diffplug.spotless.FormatterStep;
+import com.diffplug.spotless.LineEnding;
+import com.diffplug.spotless.Provisioner;
+import com.diffplug.spotless.ResourceHarness;
+
+class DaemonCacheTest extends ResourceHarness {
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicInteger funcsCreated = new AtomicInteger();
+	private final AtomicInteger funcsClosed = new AtomicInteger();
+	private final DaemonCache cache = new DaemonCache(Duration.ofNanos(100), clock::get);
+
+	@Test
+	void equalFormattersAreReusedWithTheirFormatterFunc() throws Exception {
+		File file = setFile("test.txt").toContent("abc");
+		Formatter first = cache.acquire(formatter("upper"));
+		first.applyTo(file);
+		cache.release(first);
+
+		Formatter second = cache.acquire(formatter("upper"));
+		assertThat(second).isSameAs(first);
+		second.applyTo(file);
+		assertThat(funcsCreated).hasValue(1);
+
+		assertThat(cache.acquire(formatter("other"))).isNotSameAs(first);
+	}
+
+	@Test
+	void formatterIsFoundByItsFingerprintWithoutBuildingIt() throws Exception {
+		Formatter first = cache.acquire("fingerprint", () -> formatter("upper"));
+		cache.release(first);
+
+		Formatter second = cache.acquire("fingerprint", () -> {
+			throw new AssertionError("must not be built again");
+		});
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	void duplicateOfACachedFormatterIsClosed() throws Exception {
+		File file = setFile("test.txt").toContent("abc");
+		Formatter cached = cache.acquire("fingerprint", () -> formatter("upper"));
+
+		Formatter duplicate = formatter("upper");
+		duplicate.applyTo(file);
+		// another fingerprint, e.g. because another thread built the same configuration at the same time
+		assertThat(cache.acquire("other fingerprint", () -> duplicate)).isSameAs(cached);
+		assertThat(funcsClosed).hasValue(1);
+
+		cache.release(cached);
+		cache.release(cached);
+		assertThat(cache.acquire("other fingerprint", () -> formatter("upper"))).isSameAs(cached);
+	}
+
+	@Test
+	void formatterIsBuiltAgainWhenAnArtifactChanges() throws Exception {
+		File jar = setFile("lib.jar").toContent("jar");
+		Provisioner provisioner = cache.provisioner("central=https://repo", (withTransitives, coordinates) -> Collections.singleton(jar));
+		AtomicInteger built = new AtomicInteger();
+		Supplier<Formatter> newFormatter = () -> {
+			built.incrementAndGet();
+			return formatter(FormatterStep.createLazy("test", () -> provisioner.provisionWithTransitives(false, "group:artifact:1.0").size(),
+					unused -> input -> input));
+		};
+		cache.release(cache.acquire("fingerprint", newFormatter));
+		cache.release(cache.acquire("fingerprint", newFormatter));
+		assertThat(built).hasValue(1);
+
+		setFile("lib.jar").toContent("changed jar");
+		cache.acquire("fingerprint", newFormatter);
+		assertThat(built).hasValue(2);
+	}
+
+	@Test
+	void idleFormattersAreEvictedAndClosed() throws Exception {
+		File file = setFile("test.txt").toContent("abc");
+		Formatter formatter = cache.acquire(formatter("upper"));
+		formatter.applyTo(file);
+
+		clock.addAndGet(1_000);
+		cache.evictIdle();
+		assertThat(funcsClosed).describedAs("still in use").hasValue(0);
+
+		cache.release(formatter);
+		clock.addAndGet(1_000);
+		cache.evictIdle();
+		assertThat(funcsClosed).hasValue(1);
+		assertThat(cache.acquire(formatter("upper"))).isNotSameAs(formatter);
+	}
+
+	@Test
+	void provisionedArtifactsAreReused() {
+		File jar = setFile("lib.jar").toContent("jar");
+		AtomicInteger resolutions = new AtomicInteger();
+		Provisioner delegate = (withTransitives, coordinates) -> {
+			resolutions.incrementAndGet();
+			return Collections.singleton(jar);
+		};
+		Provisioner provisioner = cache.provisioner("central=https://repo", delegate);
+
+		Set<File> first = provisioner.provisionWithTransitives(true, "group:artifact:1.0");
+		assertThat(provisioner.provisionWithTransitives(true, "group:artifact:1.0")).isSameAs(first);
+		assertThat(resolutions).hasValue(1);
+
+		provisioner.provisionWithTransitives(false, "group:artifact:1.0");
+		provisioner.provisionWithTransitives(true, "group:artifact:1.0-SNAPSHOT");
+		provisioner.provisionWithTransitives(true, "group:artifact:1.0-SNAPSHOT");
+		assertThat(resolutions).hasValue(4);
+
+		clock.addAndGet(1_000);
+		cache.evictIdle();
+		provisioner.provisionWithTransitives(true, "group:artifact:1.0");
+		assertThat(resolutions).hasValue(5);
+	}
+
+	private Formatter formatter(String state) {
+		return formatter(FormatterStep.create("test", state, unused -> {
+			funcsCreated.incrementAndGet();
+			AutoCloseable onClose = funcsClosed::incrementAndGet;
+			FormatterFunc toUpperCase = String::toUpperCase;
+			return FormatterFunc.Closeable.of(onClose, toUpperCase);
+		}));
+	}
+
+	private Formatter formatter(FormatterStep step) {
+		return Formatter.builder()
+				.encoding(StandardCharsets.UTF_8)
+				.lineEndingsPolicy(LineEnding.UNIX.createPolicy())
+				.rootDir(rootFolder().toPath())
+				.steps(Collections.singletonList(step))
+				.build();
+	}
+}
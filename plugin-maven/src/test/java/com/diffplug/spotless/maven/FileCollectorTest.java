@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class FileCollectorTest extends ResourceHarness {
+	private static final List<String> DEFAULT_EXCLUDES = Arrays.asList("**/.git/**", "**/node_modules/**");
+
+	@BeforeEach
+	void createTree() {
+		for (String path : Arrays.asList(
+				"src/main/java/A.java",
+				"src/main/java/pkg/B.java",
+				"src/test/java/C.java",
+				"src/main/my-java/D.java",
+				"src/main/scala/a.sc",
+				"src/main/scala/b.scala",
+				"node_modules/lib/E.java",
+				"target/generated-sources/F.java",
+				".git/G.java")) {
+			setFile(path).toContent("content");
+		}
+	}
+
+	@Test
+	void defaultStyleIncludes() throws IOException {
+		assertThat(collect(FileCollector.create(rootFolder(), Arrays.asList("src/main/java/**/*.java", "src/test/java/**/*.java"), DEFAULT_EXCLUDES, null)))
+				.containsExactly("src/main/java/A.java", "src/main/java/pkg/B.java", "src/test/java/C.java");
+	}
+
+	@Test
+	void excludedDirectoriesArePruned() throws IOException {
+		assertThat(collect(FileCollector.create(rootFolder(), Collections.singletonList("**/*.java"), DEFAULT_EXCLUDES, null)))
+				.containsExactly("src/main/java/A.java", "src/main/java/pkg/B.java", "src/main/my-java/D.java", "src/test/java/C.java", "target/generated-sources/F.java");
+	}
+
+	@Test
+	void absoluteExcludeIsRelativizedToBaseDir() throws IOException {
+		String buildDir = new File(rootFolder(), "target").getAbsolutePath() + File.separator;
+		assertThat(collect(FileCollector.create(rootFolder(), Collections.singletonList("**/*.java"), Collections.singletonList(buildDir), null)))
+				.doesNotContain("target/generated-sources/F.java");
+	}
+
+	@Test
+	void trailingSeparatorExcludesWholeDirectory() throws IOException {
+		assertThat(collect(FileCollector.create(rootFolder(), Collections.singletonList("src/**"), Collections.singletonList("src/main/"), null)))
+				.containsExactly("src/test/java/C.java");
+	}
+
+	@Test
+	void excludingDirectoryNameDoesNotExcludeItsContent() throws IOException {
+		// same as plexus' DirectoryScanner
+		assertThat(collect(FileCollector.create(rootFolder(), Collections.singletonList("src/main/scala/*"), Arrays.asList("src/main/scala/*.sc", "src/main/scala"), null)))
+				.containsExactly("src/main/scala/b.scala");
+	}
+
+	@Test
+	void parallelMatchesSequential() throws IOException {
+		FileCollector collector = FileCollector.create(rootFolder(), Collections.singletonList("**"), Collections.emptyList(), null);
+		assertThat(collect(collector.parallel())).containsExactlyElementsOf(collect(collector));
+	}
+
+	@Test
+	void filePatternsMatchRelativeOrAbsolutePaths() throws IOException {
+		String absolute = new File(rootFolder(), "src/test/java/C.java").getAbsolutePath();
+		String filePatterns = ".*pkg.B\\.java," + Pattern.quote(absolute);
+		assertThat(collect(FileCollector.create(rootFolder(), Collections.singletonList("src/**/*.java"), DEFAULT_EXCLUDES, filePatterns)))
+				.containsExactly("src/main/java/pkg/B.java", "src/test/java/C.java");
+	}
+
+	@Test
+	void matchesRelativePath() {
+		FileCollector collector = FileCollector.create(rootFolder(), Collections.singletonList("src/main/java/**/*.java"), DEFAULT_EXCLUDES, null);
+		assertThat(collector.matches("src/main/java/Z.java")).isTrue();
+		assertThat(collector.matches("src/main/java/deep/er/Z.java")).isTrue();
+		assertThat(collector.matches("src/main/Z.java")).isFalse();
+		assertThat(collector.matches("src/main/java/Z.kt")).isFalse();
+	}
+
+	private List<String> collect(FileCollector collector) throws IOException {
+		return collector.collect().stream()
+				.map(file -> rootFolder().toPath().relativize(file.toPath()).toString().replace('\\', '/'))
+				.collect(Collectors.toList());
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2021 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,20 +16,18 @@
 package com.diffplug.spotless.maven;
 
 import static com.diffplug.spotless.maven.FileLocator.TMP_RESOURCE_FILE_PREFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.file.Paths;
 
 import org.codehaus.plexus.resource.ResourceManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
 
 import com.diffplug.spotless.ResourceHarness;
 
@@ -72,15 +70,25 @@ class FileLocatorTest extends ResourceHarness {
 		testFileLocator(path, "conf");
 	}
 
+	@Test
+	void resourceKeepsItsPathWhileItsContentIsUnchanged() throws Exception {
+		String path = Paths.get("tmp", "configs", "unchanged.xml").toString();
+		when(resourceManager.getResourceAsInputStream(path)).then(invocation -> new ByteArrayInputStream("<a/>".getBytes(UTF_8)));
+		File first = fileLocator.locateFile(path);
+		assertThat(fileLocator.locateFile(path)).isEqualTo(first);
+
+		when(resourceManager.getResourceAsInputStream(path)).then(invocation -> new ByteArrayInputStream("<b/>".getBytes(UTF_8)));
+		File changed = fileLocator.locateFile(path);
+		assertThat(changed).isNotEqualTo(first);
+		assertThat(changed).hasContent("<b/>");
+	}
+
 	private void testFileLocator(String path, String extension) throws Exception {
-		File tmpOutputFile = new File("tmp-file");
-		when(resourceManager.getResourceAsFile(any(), any())).thenReturn(tmpOutputFile);
+		when(resourceManager.getResourceAsInputStream(path)).thenReturn(new ByteArrayInputStream(path.getBytes(UTF_8)));
 
 		File locatedFile = fileLocator.locateFile(path);
-		assertThat(locatedFile).isEqualTo(tmpOutputFile);
-
-		ArgumentCaptor<String> argCaptor = ArgumentCaptor.forClass(String.class);
-		verify(resourceManager).getResourceAsFile(eq(path), argCaptor.capture());
-		assertThat(argCaptor.getValue()).startsWith(TMP_RESOURCE_FILE_PREFIX).endsWith('.' + extension);
+		assertThat(locatedFile.getName()).startsWith(TMP_RESOURCE_FILE_PREFIX).endsWith('.' + extension);
+		assertThat(locatedFile).hasContent(path);
+		assertThat(locatedFile.toPath()).startsWith(fileLocator.getDataDir().toPath());
 	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2020-2021 DiffPlug
+ * Copyright 2020-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,7 +15,12 @@
  */
 package com.diffplug.spotless.maven;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -81,6 +86,27 @@ class GitRatchetMavenTest extends MavenIntegrationHarness {
 		}
 	}
 
+	@Test
+	void dirtyPathsAreComputedOncePerCache() throws Exception {
+		try (Git git = initRepo()) {
+			setFile(TEST_PATH).toContent("HELLO");
+			git.add().addFilepattern(TEST_PATH).call();
+			git.commit().setMessage("Initial state").call();
+			git.tag().setName("baseline").call();
+
+			setFile(TEST_PATH).toContent("HELLO WORLD");
+			ConcurrentMap<String, Set<String>> cache = new ConcurrentHashMap<>();
+			assertThat(GitRatchetMaven.instance().getDirtyFiles(rootFolder(), "baseline", cache)).containsExactly(TEST_PATH);
+			assertThat(GitRatchetMaven.instance().getDirtyFiles(newFile("src"), "baseline", cache)).containsExactly("markdown/test.md");
+
+			// a cache which was already populated doesn't look at the working tree again
+			setFile("src/markdown/new.md").toContent("HELLO");
+			assertThat(GitRatchetMaven.instance().getDirtyFiles(rootFolder(), "baseline", cache)).containsExactly(TEST_PATH);
+			assertThat(GitRatchetMaven.instance().getDirtyFiles(rootFolder(), "baseline", new ConcurrentHashMap<>()))
+					.containsExactlyInAnyOrder(TEST_PATH, "src/markdown/new.md");
+		}
+	}
+
 	private void checkBehavior(Git git) throws Exception {
 		setFile(TEST_PATH).toContent("HELLO");
 		git.add().addFilepattern(TEST_PATH).call();
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class RemoteResourceCacheTest extends ResourceHarness {
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger downloads = new AtomicInteger();
+	private final Log log = mock(Log.class);
+	private volatile String content = "<formatter/>";
+	private volatile int failWith = 0;
+	private HttpServer server;
+	private String url;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			if (failWith != 0) {
+				exchange.sendResponseHeaders(failWith, -1);
+				exchange.close();
+				return;
+			}
+			String etag = '"' + Integer.toHexString(content.hashCode()) + '"';
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				downloads.incrementAndGet();
+				byte[] body = content.getBytes(UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/config/eclipse-formatter.xml";
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	void validatedOncePerSession() throws IOException {
+		RemoteResourceCache cache = new RemoteResourceCache(newFolder("cache"), new ConcurrentHashMap<>(), log);
+		File first = cache.locate(url);
+		assertFile(first).hasContent(content);
+		assertThat(first.getName()).startsWith(FileLocator.TMP_RESOURCE_FILE_PREFIX).endsWith(".xml");
+
+		assertThat(cache.locate(url)).isEqualTo(first);
+		assertThat(requests).hasValue(1);
+	}
+
+	@Test
+	void revalidatedWithConditionalRequestInNextSession() throws IOException {
+		File cacheDir = newFolder("cache");
+		File first = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		File second = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		assertThat(second).isEqualTo(first);
+		assertThat(requests).hasValue(2);
+		assertThat(downloads).hasValue(1);
+	}
+
+	@Test
+	void changedContentGetsNewPath() throws IOException {
+		File cacheDir = newFolder("cache");
+		File first = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		content = "<formatter version=\"2\"/>";
+		File second = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		assertThat(second).isNotEqualTo(first);
+		assertFile(second).hasContent(content);
+		assertThat(downloads).hasValue(2);
+	}
+
+	@Test
+	void unreachableServerFallsBackToCachedCopy() throws IOException {
+		File cacheDir = newFolder("cache");
+		File first = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		verify(log, never()).warn(contains(url));
+		server.stop(0);
+		assertThat(new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url)).isEqualTo(first);
+		verify(log).warn(contains("Unable to reach " + url));
+	}
+
+	@Test
+	void failingServerFallsBackToCachedCopy() throws IOException {
+		File cacheDir = newFolder("cache");
+		File first = new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+		failWith = 503;
+		assertThat(new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url)).isEqualTo(first);
+		verify(log).warn(contains("responded with 503"));
+	}
+
+	@Test
+	void failingServerWithoutCachedCopyFails() {
+		failWith = 500;
+		assertThatThrownBy(() -> new RemoteResourceCache(newFolder("cache"), new ConcurrentHashMap<>(), log).locate(url))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("responded with 500");
+	}
+
+	@Test
+	void parallelModulesDownloadOnce() throws Exception {
+		// every module of a parallel build has its own cache over the same directory
+		File cacheDir = newFolder("cache");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<File>> located = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				Callable<File> locate = () -> new RemoteResourceCache(cacheDir, new ConcurrentHashMap<>(), log).locate(url);
+				located.add(executor.submit(locate));
+			}
+			HashSet<File> files = new HashSet<>();
+			for (Future<File> file : located) {
+				files.add(file.get());
+			}
+			assertThat(files).hasSize(1);
+			assertThat(downloads).hasValue(1);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,6 +27,7 @@ class SpotlessCheckMojoTest extends MavenIntegrationHarness {
 
 	private static final String UNFORMATTED_FILE = "license/MissingLicense.test";
 	private static final String FORMATTED_FILE = "license/HasLicense.test";
+	private static final String JAVA_FILE = "src/main/java/com.github.youribonnaffe.gradle.format/Java8Test.java";
 
 	@Test
 	void testSpotlessCheckWithFormattingViolations() throws Exception {
@@ -68,9 +69,81 @@ class SpotlessCheckMojoTest extends MavenIntegrationHarness {
 		testSpotlessCheck(UNFORMATTED_FILE, "verify", true);
 	}
 
+	@Test
+	void testSpotlessCheckReportAsJsonLines() throws Exception {
+		writePomWithJavaLicenseHeaderStep();
+		testSpotlessCheck(UNFORMATTED_FILE, "spotless:check -Dspotless.check.report=target/spotless/report.jsonl", true);
+
+		String report = read("target/spotless/report.jsonl");
+		assertThat(report.split("\n")).hasSize(1);
+		assertThat(report)
+				.startsWith("{\"format\":\"java\",\"file\":\"" + JAVA_FILE + "\",\"status\":\"violation\",\"line\":1,\"diff\":\"")
+				.contains("+// If you can't trust a man's word\\n")
+				.endsWith("\"}\n");
+	}
+
+	@Test
+	void testSpotlessCheckReportAsSarif() throws Exception {
+		writePomWithJavaLicenseHeaderStep();
+		testSpotlessCheck(UNFORMATTED_FILE, "spotless:check -Dspotless.check.report=target/spotless/report.sarif", true);
+
+		assertThat(read("target/spotless/report.sarif"))
+				.startsWith("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{")
+				.contains("\"results\":[{\"ruleId\":\"java\",\"level\":\"error\",\"message\":{\"text\":\"Format violations for 'java':\\n")
+				.contains("+// If you can't trust a man's word")
+				.contains("\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"" + JAVA_FILE + "\"},\"region\":{\"startLine\":1}}}]}")
+				.endsWith("}]}]}\n");
+	}
+
+	@Test
+	void testSpotlessCheckReportWithoutFormattingViolations() throws Exception {
+		writePomWithJavaLicenseHeaderStep();
+		testSpotlessCheck(FORMATTED_FILE, "spotless:check -Dspotless.check.report=target/spotless/report.jsonl", false);
+
+		assertThat(read("target/spotless/report.jsonl")).isEmpty();
+	}
+
+	@Test
+	void testSpotlessCheckReportsViolationsOfEveryFormatBeforeFailing() throws Exception {
+		writePom(
+				"<formats>",
+				"  <format>",
+				"    <includes>",
+				"      <include>src/**/java/**/*.java</include>",
+				"    </includes>",
+				"    <licenseHeader>",
+				"      <content>// License Header #1</content>",
+				"      <delimiter>package</delimiter>",
+				"    </licenseHeader>",
+				"  </format>",
+				"  <format>",
+				"    <includes>",
+				"      <include>src/**/txt/**/*.txt</include>",
+				"    </includes>",
+				"    <licenseHeader>",
+				"      <content>// License Header #2</content>",
+				"      <delimiter>Just</delimiter>",
+				"    </licenseHeader>",
+				"  </format>",
+				"</formats>");
+		setFile("src/main/java/test.java").toContent("package test;\npublic class Test {}");
+		setFile("src/main/txt/test.txt").toContent("Just a text file\n");
+
+		ProcessRunner.Result result = mavenRunner().withArguments("spotless:check", "-Dspotless.check.report=target/spotless/report.jsonl").runHasError();
+		assertThat(result.stdOutUtf8())
+				.contains("src/main/java/test.java")
+				.contains("src/main/txt/test.txt");
+
+		String report = read("target/spotless/report.jsonl");
+		assertThat(report.split("\n")).hasSize(2);
+		assertThat(report)
+				.contains("\"file\":\"src/main/java/test.java\"")
+				.contains("\"file\":\"src/main/txt/test.txt\"");
+	}
+
 	private void testSpotlessCheck(String fileName, String command, boolean expectError) throws Exception {
 		setFile("license.txt").toResource("license/TestLicense");
-		setFile("src/main/java/com.github.youribonnaffe.gradle.format/Java8Test.java").toResource(fileName);
+		setFile(JAVA_FILE).toResource(fileName);
 
 		MavenRunner mavenRunner = mavenRunner().withArguments(command);
 
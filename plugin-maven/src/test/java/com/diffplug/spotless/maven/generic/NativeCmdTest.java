@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 DiffPlug
+ * Copyright 2021-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,6 +40,29 @@ public class NativeCmdTest extends MavenIntegrationHarness {
 		runTest("Hello World", "Hello Mars");
 	}
 
+	@Test
+	public void serverMode() throws Exception {
+		// This will only work if /bin/sh and /usr/bin/sed are available
+		assumeThat(new File("/bin/sh")).exists();
+		assumeThat(new File("/usr/bin/sed")).exists();
+		setFile("server.sh").toLines(
+				"while IFS= read -r len; do",
+				"  out=$(dd bs=1 count=\"$len\" 2>/dev/null | /usr/bin/sed -e '1d' -e 's/World/Mars/g'; printf x)",
+				"  out=${out%x}",
+				"  printf 'ok %s\\n%s' \"$(printf '%s' \"$out\" | wc -c | tr -d ' ')\" \"$out\"",
+				"done");
+		writePomWithFormatSteps(
+				"<nativeCmd>",
+				"  <name>Greetings to Mars</name>",
+				"  <pathToExe>/bin/sh</pathToExe>",
+				"  <arguments>",
+				"    <argument>" + newFile("server.sh").getAbsolutePath() + "</argument>",
+				"  </arguments>",
+				"  <server>true</server>",
+				"</nativeCmd>");
+		runTest("Hello World", "Hello Mars");
+	}
+
 	private void runTest(String sourceContent, String targetContent) throws Exception {
 		String path = "src/main/java/test.java";
 		setFile(path).toContent(sourceContent);
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+@DisabledOnOs(WINDOWS)
+class CoProcessPoolTest {
+	/** Echoes each request, fails on "fail", and exits after as many requests as its first argument says. */
+	private static final String ECHO_SCRIPT = "n=0; while IFS= read -r len; do payload=$(dd bs=1 count=\"$len\" 2>/dev/null); n=$((n+1)); "
+			+ "if [ \"$payload\" = fail ]; then printf 'error 4\\nfail'; else printf 'ok %s\\n%s' \"$len\" \"$payload\"; fi; "
+			+ "if [ \"$n\" -ge \"$1\" ]; then exit 3; fi; done";
+
+	private final AtomicInteger started = new AtomicInteger();
+
+	private CoProcessPool echoPool(int requestsPerProcess) {
+		return new CoProcessPool(2, Duration.ofSeconds(10), () -> {
+			started.incrementAndGet();
+			return CoProcess.start(null, null, Arrays.asList("sh", "-c", ECHO_SCRIPT, "sh", String.valueOf(requestsPerProcess)), CoProcess.Framing.lengthPrefixed());
+		});
+	}
+
+	private static String call(CoProcessPool pool, String request) throws Exception {
+		return new String(pool.call(request.getBytes(UTF_8)), UTF_8);
+	}
+
+	@Test
+	void sequentialRequestsShareOneProcess() throws Exception {
+		try (CoProcessPool pool = echoPool(100)) {
+			assertThat(call(pool, "a")).isEqualTo("a");
+			assertThat(call(pool, "héllo")).isEqualTo("héllo");
+		}
+		assertThat(started).hasValue(1);
+	}
+
+	@Test
+	void errorResponseKeepsTheProcess() throws Exception {
+		try (CoProcessPool pool = echoPool(100)) {
+			assertThatThrownBy(() -> call(pool, "fail")).isInstanceOf(CoProcess.ErrorResponseException.class).hasMessage("fail");
+			assertThat(call(pool, "a")).isEqualTo("a");
+		}
+		assertThat(started).hasValue(1);
+	}
+
+	@Test
+	void crashedProcessIsRestarted() throws Exception {
+		try (CoProcessPool pool = echoPool(1)) {
+			assertThat(call(pool, "a")).isEqualTo("a");
+			assertThat(call(pool, "b")).isEqualTo("b");
+		}
+		assertThat(started).hasValue(2);
+	}
+
+	@Test
+	void hungProcessTimesOut() {
+		try (CoProcessPool pool = new CoProcessPool(1, Duration.ofMillis(200), () -> CoProcess.start(null, null, Arrays.asList("sleep", "30"), CoProcess.Framing.lengthPrefixed()))) {
+			assertThatThrownBy(() -> call(pool, "a")).isInstanceOf(TimeoutException.class);
+		}
+	}
+}
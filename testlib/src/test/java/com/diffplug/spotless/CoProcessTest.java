@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+@DisabledOnOs(WINDOWS)
+class CoProcessTest {
+	private static CoProcess sh(String script) throws IOException {
+		return CoProcess.start(null, null, Arrays.asList("sh", "-c", script), CoProcess.Framing.lengthPrefixed());
+	}
+
+	private static void awaitEnd(CoProcess coProcess) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (coProcess.isAlive() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void malformedResponseDestroysTheProcess() throws Exception {
+		CoProcess coProcess = sh("read len; echo garbage; sleep 30");
+		try {
+			assertThatThrownBy(() -> coProcess.exchange("a".getBytes(UTF_8), 10, TimeUnit.SECONDS))
+					.isInstanceOf(IOException.class)
+					.hasMessageStartingWith("Unable to read the response");
+			awaitEnd(coProcess);
+			assertThat(coProcess.isAlive()).isFalse();
+		} finally {
+			coProcess.close();
+		}
+	}
+
+	@Test
+	void errorResponseKeepsTheProcess() throws Exception {
+		CoProcess coProcess = sh("read len; dd bs=1 count=\"$len\" >/dev/null 2>&1; printf 'error 4\\nfail'; read len");
+		try {
+			assertThatThrownBy(() -> coProcess.exchange("a".getBytes(UTF_8), 10, TimeUnit.SECONDS))
+					.isInstanceOf(CoProcess.ErrorResponseException.class);
+			assertThat(coProcess.isAlive()).isTrue();
+		} finally {
+			coProcess.close();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+@DisabledOnOs(WINDOWS)
+class ForeignExeTest extends ResourceHarness {
+	private File exe;
+	private File runs;
+
+	@BeforeEach
+	void createExe() throws IOException {
+		runs = newFile("runs");
+		// without a #! line it is probed like a binary, and the JVM runs it with /bin/sh
+		exe = fakeExeFile("fake-exe", "");
+	}
+
+	private File fakeExeFile(String path, String firstLine) throws IOException {
+		File file = newFile(path);
+		Files.createDirectories(file.getParentFile().toPath());
+		String script = firstLine + "echo run >> '" + runs.getAbsolutePath() + "'\necho \"fake-exe version 1.0\"\n";
+		Files.write(file.toPath(), script.getBytes(UTF_8));
+		assertThat(file.setExecutable(true)).isTrue();
+		return file;
+	}
+
+	private ForeignExe fakeExe(String version) {
+		return ForeignExe.nameAndVersion("fake-exe", version).pathToExe(exe.getAbsolutePath());
+	}
+
+	private int runCount() throws IOException {
+		return runs.exists() ? Files.readAllLines(runs.toPath()).size() : 0;
+	}
+
+	@Test
+	void probesOnceUntilTheExeChanges() throws Exception {
+		assertThat(fakeExe("1.0").confirmVersionAndGetAbsolutePath()).isEqualTo(exe.getAbsolutePath());
+		assertThat(fakeExe("1.0").confirmVersionAndGetAbsolutePath()).isEqualTo(exe.getAbsolutePath());
+		assertThat(runCount()).isEqualTo(1);
+
+		Files.write(exe.toPath(), "# changed\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+		fakeExe("1.0").confirmVersionAndGetAbsolutePath();
+		assertThat(runCount()).isEqualTo(2);
+	}
+
+	@Test
+	void linkWithTheSameNameSharesTheProbeOfItsTarget() throws Exception {
+		fakeExe("1.0").confirmVersionAndGetAbsolutePath();
+		File link = newFile("bin/fake-exe");
+		Files.createDirectories(link.getParentFile().toPath());
+		Files.createSymbolicLink(link.toPath(), exe.toPath());
+		assertThat(ForeignExe.nameAndVersion("fake-exe", "1.0").pathToExe(link.getAbsolutePath()).confirmVersionAndGetAbsolutePath())
+				.isEqualTo(link.getAbsolutePath());
+		assertThat(runCount()).isEqualTo(1);
+	}
+
+	@Test
+	void scriptIsProbedEveryTime() throws Exception {
+		// such as the shims of pyenv or asdf, which pick an executable by the environment
+		File shim = fakeExeFile("shims/fake-exe", "#!/bin/sh\n");
+		ForeignExe.nameAndVersion("fake-exe", "1.0").pathToExe(shim.getAbsolutePath()).confirmVersionAndGetAbsolutePath();
+		ForeignExe.nameAndVersion("fake-exe", "1.0").pathToExe(shim.getAbsolutePath()).confirmVersionAndGetAbsolutePath();
+		assertThat(runCount()).isEqualTo(2);
+	}
+
+	@Test
+	void linkToAnExeOfAnotherNameIsProbedEveryTime() throws Exception {
+		// such as mise, which picks an executable by the name it is called with
+		File dispatcher = fakeExeFile("mise/dispatcher", "");
+		File link = newFile("mise/fake-exe");
+		Files.createSymbolicLink(link.toPath(), dispatcher.toPath());
+		ForeignExe.nameAndVersion("fake-exe", "1.0").pathToExe(link.getAbsolutePath()).confirmVersionAndGetAbsolutePath();
+		ForeignExe.nameAndVersion("fake-exe", "1.0").pathToExe(link.getAbsolutePath()).confirmVersionAndGetAbsolutePath();
+		assertThat(runCount()).isEqualTo(2);
+	}
+
+	@Test
+	void wrongVersionFailsAfterACachedProbe() throws Exception {
+		fakeExe("1.0").confirmVersionAndGetAbsolutePath();
+		assertThatThrownBy(() -> fakeExe("2.0").confirmVersionAndGetAbsolutePath())
+				.hasMessageContaining("You specified version 2.0, but Spotless found 1.0");
+	}
+
+	@Test
+	void probeIsPersistedInTheCacheDir() throws Exception {
+		File cacheDir = newFolder("probes");
+		fakeExe("1.0").probeCacheDir(cacheDir).confirmVersionAndGetAbsolutePath();
+		File[] probeFiles = cacheDir.listFiles();
+		assertThat(probeFiles).hasSize(1);
+		assertThat(new String(Files.readAllBytes(probeFiles[0].toPath()), UTF_8)).contains("versionFound=1.0");
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2023 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,7 +24,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -185,4 +188,87 @@ class FormatterTest {
 		formatter.compute("someFileContent", new File("/some/folder/some.file"));
 	}
 
+	@Test
+	void computeBatchFormatsAllFilesWithOneCall() throws Exception {
+		List<Map<File, String>> batches = new ArrayList<>();
+		try (Formatter formatter = batchFormatter(upperCaseStep(batches, false))) {
+			Map<File, String> unixByFile = unixByFile(formatter, "a.txt", "b.txt", "c.txt");
+
+			Assertions.assertEquals(computeEach(formatter, unixByFile), formatter.computeBatch(unixByFile));
+			Assertions.assertEquals(Collections.singletonList(unixByFile), batches);
+		}
+	}
+
+	@Test
+	void computeBatchFallsBackToEachFileWhenTheBatchFails() throws Exception {
+		List<Map<File, String>> batches = new ArrayList<>();
+		try (Formatter formatter = batchFormatter(upperCaseStep(batches, true))) {
+			Map<File, String> unixByFile = unixByFile(formatter, "a.txt", "b.txt");
+
+			Map<File, String> expected = new LinkedHashMap<>();
+			unixByFile.forEach((file, unix) -> expected.put(file, unix.toUpperCase(Locale.ROOT) + "\n"));
+			Assertions.assertEquals(expected, formatter.computeBatch(unixByFile));
+			Assertions.assertEquals(1, batches.size());
+		}
+	}
+
+	@Test
+	void computeBatchOnlyPassesFilteredFilesToTheBatch() throws Exception {
+		List<Map<File, String>> batches = new ArrayList<>();
+		FormatterStep step = upperCaseStep(batches, false).filterByFile(SerializableFileFilter.skipFilesNamed("b.txt"));
+		try (Formatter formatter = batchFormatter(step)) {
+			Map<File, String> unixByFile = unixByFile(formatter, "a.txt", "b.txt", "c.txt");
+
+			Map<File, String> formatted = formatter.computeBatch(unixByFile);
+			Assertions.assertEquals(computeEach(formatter, unixByFile), formatted);
+			Assertions.assertEquals("b.txt", formatted.get(new File(formatter.getRootDir().toFile(), "b.txt")));
+			Assertions.assertEquals(1, batches.size());
+			Assertions.assertEquals(2, batches.get(0).size());
+		}
+	}
+
+	/** A step which upper-cases and ends with a newline, and records the batches it was given. */
+	private static FormatterStep upperCaseStep(List<Map<File, String>> batches, boolean batchFails) {
+		return FormatterStep.create("upperCase", batchFails, batchFailsState -> new FormatterFunc.Batch() {
+			@Override
+			public String apply(String unix) {
+				return unix.toUpperCase(Locale.ROOT) + "\n";
+			}
+
+			@Override
+			public Map<File, String> applyBatch(Map<File, String> unixByFile) {
+				batches.add(new LinkedHashMap<>(unixByFile));
+				if (batchFailsState) {
+					throw new IllegalStateException("batch failed");
+				}
+				Map<File, String> formatted = new LinkedHashMap<>();
+				unixByFile.forEach((file, unix) -> formatted.put(file, apply(unix)));
+				return formatted;
+			}
+		});
+	}
+
+	private static Formatter batchFormatter(FormatterStep step) {
+		return Formatter.builder()
+				.lineEndingsPolicy(LineEnding.UNIX.createPolicy())
+				.encoding(StandardCharsets.UTF_8)
+				.rootDir(Paths.get(StandardSystemProperty.USER_DIR.value()))
+				.steps(Collections.singletonList(step))
+				.exceptionPolicy(FormatExceptionPolicy.failOnlyOnError())
+				.build();
+	}
+
+	private static Map<File, String> unixByFile(Formatter formatter, String... names) {
+		Map<File, String> unixByFile = new LinkedHashMap<>();
+		for (String name : names) {
+			unixByFile.put(new File(formatter.getRootDir().toFile(), name), name);
+		}
+		return unixByFile;
+	}
+
+	private static Map<File, String> computeEach(Formatter formatter, Map<File, String> unixByFile) {
+		Map<File, String> formatted = new LinkedHashMap<>();
+		unixByFile.forEach((file, unix) -> formatted.put(file, formatter.compute(unix, file)));
+		return formatted;
+	}
 }
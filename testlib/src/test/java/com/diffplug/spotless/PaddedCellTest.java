@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2021 DiffPlug
+ * Copyright 2016-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ import static com.diffplug.spotless.PaddedCell.Type.CONVERGE;
 import static com.diffplug.spotless.PaddedCell.Type.CYCLE;
 import static com.diffplug.spotless.PaddedCell.Type.DIVERGE;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -26,7 +27,9 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 import org.junit.jupiter.api.Assertions;
@@ -132,4 +135,48 @@ class PaddedCellTest {
 		// length > alphabetic
 		testCase.accept("b,aa,aaa", "b");
 	}
+
+	@Test
+	void calculateDirtyStatesMatchesCalculateDirtyState() throws IOException {
+		FormatterFunc step = input -> {
+			switch (input) {
+			case "dirty":
+				return "clean";
+			case "ping":
+				return "pong";
+			case "pong":
+				return "ping";
+			default:
+				return input.startsWith("diverge") ? input + " " : input;
+			}
+		};
+		try (Formatter formatter = Formatter.builder()
+				.lineEndingsPolicy(LineEnding.UNIX.createPolicy())
+				.encoding(StandardCharsets.UTF_8)
+				.rootDir(rootFolder.toPath())
+				.steps(Collections.singletonList(FormatterStep.createNeverUpToDate("step", step))).build()) {
+			Map<File, byte[]> rawBytesByFile = new LinkedHashMap<>();
+			for (String input : Arrays.asList("clean", "dirty", "pong", "diverge")) {
+				rawBytesByFile.put(new File(rootFolder, input), input.getBytes(StandardCharsets.UTF_8));
+			}
+
+			Map<File, PaddedCell.DirtyState> dirtyStates = PaddedCell.calculateDirtyStates(formatter, rawBytesByFile);
+			Assertions.assertEquals(new ArrayList<>(rawBytesByFile.keySet()), new ArrayList<>(dirtyStates.keySet()));
+			for (Map.Entry<File, byte[]> entry : rawBytesByFile.entrySet()) {
+				PaddedCell.DirtyState expected = PaddedCell.calculateDirtyState(formatter, entry.getKey(), entry.getValue());
+				PaddedCell.DirtyState actual = dirtyStates.get(entry.getKey());
+				Assertions.assertEquals(expected.isClean(), actual.isClean());
+				Assertions.assertEquals(expected.didNotConverge(), actual.didNotConverge());
+				if (!expected.isClean() && !expected.didNotConverge()) {
+					Assertions.assertEquals(canonical(expected), canonical(actual));
+				}
+			}
+		}
+	}
+
+	private static String canonical(PaddedCell.DirtyState dirtyState) throws IOException {
+		ByteArrayOutputStream canonical = new ByteArrayOutputStream();
+		dirtyState.writeCanonicalTo(canonical);
+		return new String(canonical.toByteArray(), StandardCharsets.UTF_8);
+	}
 }
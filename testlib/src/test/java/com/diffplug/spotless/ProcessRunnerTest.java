@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+@DisabledOnOs(WINDOWS)
+class ProcessRunnerTest {
+	private static ProcessRunner.LongRunningProcess sh(ProcessRunner runner, String script) throws Exception {
+		return runner.start(null, null, null, Arrays.asList("sh", "-c", script));
+	}
+
+	@Test
+	void awaitOutputLineReturnsTheReadyLine() throws Exception {
+		try (ProcessRunner.LongRunningProcess server = sh(new ProcessRunner(), "echo starting; sleep 0.2; printf 'SPOTLESS_READY address=127.0.0.1:1234\\r\\n'; sleep 30")) {
+			assertThat(server.awaitOutputLine("SPOTLESS_READY address=", 10, TimeUnit.SECONDS)).isEqualTo("SPOTLESS_READY address=127.0.0.1:1234");
+		}
+	}
+
+	@Test
+	void awaitOutputLineFindsTheReadyLineAfterLotsOfOutput() throws Exception {
+		try (ProcessRunner.LongRunningProcess server = sh(ProcessRunner.usingRingBuffersOfCapacity(4 * 1024),
+				"i=0; while [ $i -lt 2000 ]; do echo \"SPOTLESS_READ log line $i\"; i=$((i+1)); done; echo SPOTLESS_READY address=socket; sleep 30")) {
+			assertThat(server.awaitOutputLine("SPOTLESS_READY address=", 10, TimeUnit.SECONDS)).isEqualTo("SPOTLESS_READY address=socket");
+		}
+	}
+
+	@Test
+	void awaitOutputLineFindsAReadyLineWhichIsPrintedInPieces() throws Exception {
+		try (ProcessRunner.LongRunningProcess server = sh(new ProcessRunner(),
+				"echo SPOTLESS_READ; printf SPOTLESS_; sleep 0.3; printf 'READY addr'; sleep 0.3; echo ess=socket; sleep 30")) {
+			assertThat(server.awaitOutputLine("SPOTLESS_READY address=", 10, TimeUnit.SECONDS)).isEqualTo("SPOTLESS_READY address=socket");
+		}
+	}
+
+	@Test
+	void awaitOutputLineTimesOut() throws Exception {
+		try (ProcessRunner.LongRunningProcess server = sh(new ProcessRunner(), "echo starting; printf SPOTLESS_READY; sleep 30")) {
+			assertThatThrownBy(() -> server.awaitOutputLine("SPOTLESS_READY", 300, TimeUnit.MILLISECONDS))
+					.isInstanceOf(TimeoutException.class);
+		}
+	}
+
+	@Test
+	void awaitOutputLineFailsWhenTheOutputEnds() throws Exception {
+		try (ProcessRunner.LongRunningProcess server = sh(new ProcessRunner(), "echo starting; echo failed to start")) {
+			assertThatThrownBy(() -> server.awaitOutputLine("SPOTLESS_READY", 10, TimeUnit.SECONDS))
+					.isInstanceOf(EOFException.class);
+		}
+	}
+
+	@Test
+	void outputLargerThanThePipeBufferIsDrainedWhileInputIsFed() throws Exception {
+		byte[] input = new byte[4 * 1024 * 1024 + 17];
+		new Random(42).nextBytes(input);
+		try (ProcessRunner runner = new ProcessRunner()) {
+			ProcessRunner.Result result = runner.exec(input, "cat");
+			assertThat(result.exitCode()).isZero();
+			assertThat(result.stdOut()).isEqualTo(input);
+		}
+	}
+
+	@Test
+	void stdOutAndStdErrAreDrainedConcurrently() throws Exception {
+		// each stream gets far more than a pipe buffer, interleaved, so draining one after the other would deadlock
+		String script = "i=0; while [ $i -lt 20000 ]; do echo out$i; echo err$i >&2; i=$((i+1)); done";
+		try (ProcessRunner runner = new ProcessRunner()) {
+			ProcessRunner.Result result = runner.exec("sh", "-c", script);
+			assertThat(result.exitCode()).isZero();
+			String[] out = new String(result.stdOut(), UTF_8).split("\n");
+			String[] err = new String(result.stdErr(), UTF_8).split("\n");
+			assertThat(out).hasSize(20000).startsWith("out0").endsWith("out19999");
+			assertThat(err).hasSize(20000).startsWith("err0").endsWith("err19999");
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.cpp;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+import com.diffplug.spotless.FormatterStep;
+import com.diffplug.spotless.ResourceHarness;
+
+/** Checks how the batch of clang-format is laid out, with a fake clang-format which prepends a comment. */
+@DisabledOnOs(WINDOWS)
+class ClangFormatStepBatchTest extends ResourceHarness {
+	private static final String REPLACEMENT = "<replacement offset='0' length='0'>// formatted&#10;</replacement>";
+
+	private File log;
+
+	private FormatterStep fakeClangFormat(String style) throws IOException {
+		log = newFile("clang-format.log");
+		File exe = setFile("bin/clang-format").toLines(
+				"#!/bin/sh",
+				"if [ \"$1\" = \"--version\" ]; then echo 'clang-format version 10.0.1'; exit 0; fi",
+				"echo \"$*\" >> '" + log.getAbsolutePath() + "'",
+				"case \"$*\" in *--output-replacements-xml*) ;; *) printf '// formatted\\n'; cat; exit 0;; esac",
+				"for f in \"$@\"; do",
+				"  case \"$f\" in -*) continue;; esac",
+				"  printf \"<?xml version='1.0'?>\\n<replacements xml:space='preserve' incomplete_format='false'>\\n" + REPLACEMENT + "\\n</replacements>\\n\"",
+				"done");
+		exe.setExecutable(true);
+		return ClangFormatStep.withVersion("10.0.1").withPathToExe(exe.getAbsolutePath()).withStyle(style).create();
+	}
+
+	private List<String> invocations() throws IOException {
+		return Files.readAllLines(log.toPath(), UTF_8);
+	}
+
+	@Test
+	void filesWithTheSameConfigAreFormattedByOneProcess() throws Exception {
+		setFile("a/.clang-format").toContent("BasedOnStyle: LLVM");
+		setFile("b/.clang-format").toContent("BasedOnStyle: Google");
+		File a1 = setFile("a/one.c").toContent("int a;\n");
+		File a2 = setFile("a/nested/two.c").toContent("int b;\n");
+		File b1 = setFile("b/three.c").toContent("int c;\n");
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(a1, "int a;\n");
+		input.put(b1, "int c;\n");
+		input.put(a2, "int b;\n");
+
+		Map<File, String> formatted = fakeClangFormat("file").formatBatch(input);
+
+		assertThat(formatted).containsEntry(a1, "// formatted\nint a;\n")
+				.containsEntry(a2, "// formatted\nint b;\n")
+				.containsEntry(b1, "// formatted\nint c;\n");
+		assertThat(invocations()).containsExactly(
+				"--style=file --output-replacements-xml " + a1.getAbsolutePath() + " " + a2.getAbsolutePath(),
+				"--style=file --output-replacements-xml " + b1.getAbsolutePath());
+		// clang-format only reads the files
+		assertFile("a/one.c").hasContent("int a;\n");
+	}
+
+	@Test
+	void filesWhichDifferFromTheDiskAreFormattedOneAtATime() throws Exception {
+		File clean = setFile("src/clean.c").toContent("int a;\n");
+		File changed = setFile("src/changed.c").toContent("int  b;\r\n");
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(clean, "int a;\n");
+		input.put(changed, "int  b;\n");
+
+		Map<File, String> formatted = fakeClangFormat("LLVM").formatBatch(input);
+
+		assertThat(formatted).containsEntry(clean, "// formatted\nint a;\n")
+				.containsEntry(changed, "// formatted\nint  b;\n");
+		assertThat(invocations()).containsExactly(
+				"--style=LLVM --assume-filename=" + changed.getAbsolutePath(),
+				"--style=LLVM --output-replacements-xml " + clean.getAbsolutePath());
+	}
+
+	@Test
+	void replacementsAreAppliedAtByteOffsets() throws Exception {
+		byte[] content = "/* é */int  x;".getBytes(UTF_8);
+		String document = "<?xml version='1.0'?>\n<replacements xml:space='preserve' incomplete_format='false'>\n"
+				+ "<replacement offset='11' length='2'> </replacement>\n"
+				+ "<replacement offset='15' length='0'>&#10;&lt;&amp;&gt;&#x41;</replacement>\n"
+				+ "</replacements>\n";
+		assertThat(ClangFormatStep.applyReplacements(document, content)).isEqualTo("/* é */int x;\n<&>A");
+	}
+
+	@Test
+	void outputIsSplitIntoOneDocumentPerFile() {
+		String empty = "<?xml version='1.0'?>\n<replacements xml:space='preserve' incomplete_format='false'>\n</replacements>\n";
+		assertThat(ClangFormatStep.splitReplacements(empty + empty + empty)).hasSize(3);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/** Checks the Java side of the {@code format-batch} protocol against a fake node server. */
+class BatchRestServiceTest {
+	private HttpServer server;
+	private String requestBody;
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	private PrettierRestService serveBatch(String response) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/prettier/format-batch", exchange -> {
+			requestBody = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+			byte[] body = response.getBytes(UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		return new PrettierRestService("http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	@Test
+	void resultsAreReadInOrder() throws IOException {
+		PrettierRestService service = serveBatch("ok 7\nhéllo\nok 0\nok 2\n{}");
+		assertThat(service.formatBatch(Arrays.asList("a", "b", "c"), Arrays.asList("{\"parser\":\"css\"}", null, null)))
+				.containsExactly("héllo\n", "", "{}");
+		assertThat(requestBody).contains("\"config_options\": {\"parser\":\"css\"}").doesNotContain("file_content");
+		// the file contents follow the json parameters as raw frames
+		assertThat(requestBody).endsWith("}1\na1\nb1\nc");
+	}
+
+	@Test
+	void failedEntryFailsTheBatch() throws IOException {
+		PrettierRestService service = serveBatch("ok 1\nAerror 26\nError while formatting: no");
+		assertThatThrownBy(() -> service.formatBatch(Arrays.asList("a", "b"), Arrays.asList(null, null)))
+				.isInstanceOf(SimpleRestClient.SimpleRestResponseException.class)
+				.hasMessageContaining("Unable to format entry 1 of batch")
+				.hasMessageContaining("Error while formatting: no");
+	}
+
+	@Test
+	void latenciesAreRecordedPerEndpoint() throws IOException {
+		PrettierRestService service = serveBatch("ok 1\nA");
+		service.formatBatch(Arrays.asList("a"), Arrays.asList((String) null));
+		service.formatBatch(Arrays.asList("b"), Arrays.asList((String) null));
+		assertThat(service.describeLatencies()).startsWith("/prettier/format-batch: 2 requests, avg ");
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class FormatResultCacheTest extends ResourceHarness {
+	private File cacheDir;
+	private final AtomicInteger formatted = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		cacheDir = newFolder("cache");
+	}
+
+	@Test
+	void noCacheWithoutCacheDir() {
+		assertThat(FormatResultCache.forCacheDir(null, "prettier")).isNull();
+	}
+
+	@Test
+	void cachedResultSkipsTheFormatter() throws Exception {
+		FormatResultCache cache = FormatResultCache.forCacheDir(cacheDir, "prettier", "{}");
+		assertThat(cache.apply(cache.key("options", "a"), () -> format("a"))).isEqualTo("A");
+		// a fresh instance reads what an earlier build wrote
+		FormatResultCache laterBuild = FormatResultCache.forCacheDir(cacheDir, "prettier", "{}");
+		assertThat(laterBuild.apply(laterBuild.key("options", "a"), () -> format("a"))).isEqualTo("A");
+		assertThat(formatted).hasValue(1);
+	}
+
+	@Test
+	void keysDependOnNamespaceAndParts() {
+		FormatResultCache cache = FormatResultCache.forCacheDir(cacheDir, "prettier", "{}");
+		FormatResultCache otherDependencies = FormatResultCache.forCacheDir(cacheDir, "prettier", "{\"prettier\": \"3.0.0\"}");
+		assertThat(cache.key("options", "a")).isNotEqualTo(otherDependencies.key("options", "a"));
+		assertThat(cache.key("ab", "c")).isNotEqualTo(cache.key("a", "bc"));
+	}
+
+	@Test
+	void batchOnlyFormatsMisses() throws Exception {
+		FormatResultCache cache = FormatResultCache.forCacheDir(cacheDir, "prettier", "{}");
+		cache.put(cache.key("b"), "B");
+		Map<String, String> batch = new LinkedHashMap<>();
+		batch.put("first", "a");
+		batch.put("second", "b");
+		batch.put("third", "c");
+		Map<String, String> misses = new LinkedHashMap<>();
+		Map<String, String> results = cache.applyBatch(batch, entry -> cache.key(entry.getValue()), toFormat -> {
+			misses.putAll(toFormat);
+			Map<String, String> formattedBatch = new LinkedHashMap<>();
+			toFormat.forEach((name, content) -> formattedBatch.put(name, format(content)));
+			return formattedBatch;
+		});
+		assertThat(misses).containsOnlyKeys("first", "third");
+		assertThat(results).containsExactly(Map.entry("first", "A"), Map.entry("second", "B"), Map.entry("third", "C"));
+		assertThat(cache.get(cache.key("c"))).isEqualTo("C");
+	}
+
+	private String format(String content) {
+		formatted.incrementAndGet();
+		return content.toUpperCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.npm.NpmFormatterStepStateBase.ServerProcessInfo;
+
+class NodeServerPoolTest {
+	private final List<Integer> startedServers = new ArrayList<>();
+
+	private NodeServerPool<PrettierRestService> pool(int maxSize) {
+		return new NodeServerPool<>(maxSize, index -> {
+			synchronized (startedServers) {
+				startedServers.add(index);
+			}
+			return new ServerProcessInfo(mock(Process.class), String.valueOf(10000 + index), new File("node_modules"));
+		}, PrettierRestService::new);
+	}
+
+	@Test
+	void sequentialCallsShareOneServer() throws Exception {
+		NodeServerPool<PrettierRestService> pool = pool(4);
+		PrettierRestService first = pool.call(service -> service);
+		PrettierRestService second = pool.call(service -> service);
+		assertThat(second).isSameAs(first);
+		assertThat(startedServers).containsExactly(0);
+	}
+
+	@Test
+	void busyServersScaleUpToMaxSize() throws Exception {
+		NodeServerPool<PrettierRestService> pool = pool(2);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch busy = new CountDownLatch(2);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Future<PrettierRestService> first = executor.submit(() -> blockingCall(pool, busy, release));
+		Future<PrettierRestService> second = executor.submit(() -> blockingCall(pool, busy, release));
+		assertThat(busy.await(10, TimeUnit.SECONDS)).isTrue();
+		// both servers are busy and the pool is full, so a third call has to share one of them
+		PrettierRestService third = pool.call(service -> service);
+		release.countDown();
+
+		assertThat(first.get()).isNotSameAs(second.get());
+		assertThat(third).isIn(first.get(), second.get());
+		assertThat(startedServers).containsExactly(0, 1);
+		executor.shutdown();
+	}
+
+	@Test
+	void slicesAreSentToServersConcurrentlyAndKeepTheirOrder() throws Exception {
+		NodeServerPool<PrettierRestService> pool = pool(3);
+		CountDownLatch allSlicesRunning = new CountDownLatch(3);
+		List<String> results = pool.callSliced(Arrays.asList(1, 2, 3, 4, 5, 6, 7), (service, slice) -> {
+			allSlicesRunning.countDown();
+			// only returns once every slice is being sent, so the slices cannot have been sent one after another
+			assertThat(allSlicesRunning.await(10, TimeUnit.SECONDS)).isTrue();
+			return slice.stream().map(String::valueOf).collect(Collectors.toList());
+		});
+		assertThat(results).containsExactly("1", "2", "3", "4", "5", "6", "7");
+		assertThat(startedServers).containsExactlyInAnyOrder(0, 1, 2);
+		pool.close();
+	}
+
+	@Test
+	void aSingleServerGetsTheWholeBatch() throws Exception {
+		NodeServerPool<PrettierRestService> pool = pool(1);
+		List<List<Integer>> slices = new ArrayList<>();
+		pool.callSliced(Arrays.asList(1, 2, 3), (service, slice) -> {
+			slices.add(slice);
+			return slice;
+		});
+		assertThat(slices).containsExactly(Arrays.asList(1, 2, 3));
+	}
+
+	@Test
+	void poolSizeIsNotPartOfTheState() throws Exception {
+		PrettierConfig pooled = new PrettierConfig(null, null).withServerPoolSize(4);
+		assertThat(serialize(pooled)).isEqualTo(serialize(new PrettierConfig(null, null)));
+		assertThat(serialize(new EslintConfig(null, "{}").withServerPoolSize(4))).isEqualTo(serialize(new EslintConfig(null, "{}")));
+
+		PrettierConfig deserialized = (PrettierConfig) new ObjectInputStream(new ByteArrayInputStream(serialize(pooled))).readObject();
+		assertThat(deserialized.getServerPoolSize()).isEqualTo(1);
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void poolSizeMustBePositive() {
+		assertThatThrownBy(() -> pool(0)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new PrettierConfig(null, null).withServerPoolSize(0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static PrettierRestService blockingCall(NodeServerPool<PrettierRestService> pool, CountDownLatch busy, CountDownLatch release) throws Exception {
+		return pool.call(service -> {
+			busy.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return service;
+		});
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.npm.NpmFormatterStepStateBase.ServerProcessInfo;
+
+class NodeServerRegistryTest {
+	private final AtomicInteger startedPools = new AtomicInteger();
+
+	private NodeServerPool<PrettierRestService> startPool() {
+		startedPools.incrementAndGet();
+		return new NodeServerPool<>(1, index -> new ServerProcessInfo(mock(Process.class), "10000", new File("node_modules")), PrettierRestService::new);
+	}
+
+	@Test
+	void identicalStepsShareOneServer() {
+		String key = UUID.randomUUID().toString();
+		try (NodeServerRegistry.Lease<PrettierRestService> first = NodeServerRegistry.acquire(key, this::startPool);
+				NodeServerRegistry.Lease<PrettierRestService> second = NodeServerRegistry.acquire(key, this::startPool)) {
+			assertThat(second.servers()).isSameAs(first.servers());
+		}
+		assertThat(startedPools).hasValue(1);
+	}
+
+	@Test
+	void differentStepsGetTheirOwnServer() {
+		try (NodeServerRegistry.Lease<PrettierRestService> first = NodeServerRegistry.acquire(UUID.randomUUID().toString(), this::startPool);
+				NodeServerRegistry.Lease<PrettierRestService> second = NodeServerRegistry.acquire(UUID.randomUUID().toString(), this::startPool)) {
+			assertThat(second.servers()).isNotSameAs(first.servers());
+		}
+		assertThat(startedPools).hasValue(2);
+	}
+
+	@Test
+	void releasedServerIsReusedWhileIdle() {
+		String key = UUID.randomUUID().toString();
+		NodeServerRegistry.Lease<PrettierRestService> first = NodeServerRegistry.acquire(key, this::startPool);
+		first.close();
+		// closing twice must not release the server on behalf of another step
+		first.close();
+		try (NodeServerRegistry.Lease<PrettierRestService> second = NodeServerRegistry.acquire(key, this::startPool)) {
+			assertThat(second.servers()).isSameAs(first.servers());
+		}
+		assertThat(startedPools).hasValue(1);
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 DiffPlug
+ * Copyright 2023-2024 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -148,6 +149,34 @@ class ShadowCopyTest extends ResourceHarness {
 		Assertions.assertThat(shadowCopy.entryExists("someEntry", folderWithRandomFile.getName())).isFalse();
 	}
 
+	@Test
+	void entriesUnusedForTooLongAreEvicted() throws IOException {
+		File folderWithRandomFile = newFolderWithRandomFile();
+		shadowCopy.addEntry("oldEntry", folderWithRandomFile);
+		shadowCopy.addEntry("newEntry", folderWithRandomFile);
+		markLastUsed("oldEntry", System.currentTimeMillis() - Duration.ofDays(2).toMillis());
+		shadowCopy.evict(Duration.ofDays(1), Long.MAX_VALUE);
+		Assertions.assertThat(shadowCopy.entryExists("oldEntry", folderWithRandomFile.getName())).isFalse();
+		Assertions.assertThat(shadowCopy.entryExists("newEntry", folderWithRandomFile.getName())).isTrue();
+		Assertions.assertThat(shadowCopy.copyEntryInto("oldEntry", folderWithRandomFile.getName(), newFolder("target"))).isNull();
+	}
+
+	@Test
+	void leastRecentlyUsedEntriesAreEvictedBeyondMaxBytes() throws IOException {
+		File folderWithRandomFile = newFolderWithRandomFile();
+		shadowCopy.addEntry("firstEntry", folderWithRandomFile);
+		shadowCopy.addEntry("secondEntry", folderWithRandomFile);
+		markLastUsed("firstEntry", System.currentTimeMillis() - 60_000);
+		long entryBytes = folderWithRandomFile.listFiles()[0].length();
+		shadowCopy.evict(Duration.ofDays(1), entryBytes);
+		Assertions.assertThat(shadowCopy.entryExists("firstEntry", folderWithRandomFile.getName())).isFalse();
+		Assertions.assertThat(shadowCopy.entryExists("secondEntry", folderWithRandomFile.getName())).isTrue();
+	}
+
+	private void markLastUsed(String key, long millis) {
+		Assertions.assertThat(new File(shadowCopyRoot, key + ".lock").setLastModified(millis)).isTrue();
+	}
+
 	private void assertAllFilesAreEqualButNotSameAbsolutePath(File expected, File actual) {
 		if (expected.isFile()) {
 			assertFileIsEqualButNotSameAbsolutePath(expected, actual);
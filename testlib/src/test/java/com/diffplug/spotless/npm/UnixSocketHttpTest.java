@@ -0,0 +1,248 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.npm;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+import com.diffplug.spotless.Jvm;
+
+/** Checks the HTTP/1.0 client against a fake server on a unix domain socket, which answers with a canned response. */
+@DisabledOnOs(WINDOWS)
+class UnixSocketHttpTest {
+	private Path socketDir;
+	private Path socket;
+	private ServerSocketChannel server;
+
+	@BeforeEach
+	void createSocketDir() throws IOException {
+		// a short path, since socket paths are limited to about 100 bytes
+		socketDir = Files.createTempDirectory("spotless-uds");
+		socket = socketDir.resolve("test.sock");
+	}
+
+	@AfterEach
+	void stopServer() throws IOException {
+		if (server != null) {
+			server.close();
+		}
+		Files.deleteIfExists(socket);
+		Files.delete(socketDir);
+	}
+
+	/** Serves a single connection, answers it with the given response, and returns the raw request. */
+	private CompletableFuture<String> serve(String response, boolean closeAfterResponse) throws Exception {
+		assumeTrue(UnixSocketHttp.canUse(socket), "unix domain sockets need JDK 16+");
+		ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+		server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+		Object address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, socket);
+		server.bind((SocketAddress) address);
+		return CompletableFuture.supplyAsync(() -> {
+			try (SocketChannel connection = server.accept()) {
+				String request = readRequest(Channels.newInputStream(connection));
+				OutputStream out = Channels.newOutputStream(connection);
+				out.write(response.getBytes(UTF_8));
+				out.flush();
+				if (!closeAfterResponse) {
+					// trailing garbage on an open connection, which the client must not read as part of the body
+					out.write("garbage".getBytes(UTF_8));
+					out.flush();
+					Thread.sleep(500);
+				}
+				return request;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	private static String readRequest(InputStream in) throws IOException {
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		int contentLength = -1;
+		StringBuilder line = new StringBuilder();
+		while (true) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			request.write(b);
+			if (b == '\n') {
+				String header = line.toString().trim();
+				if (header.isEmpty()) {
+					break;
+				}
+				if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+					contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+				}
+				line.setLength(0);
+			} else {
+				line.append((char) b);
+			}
+		}
+		for (int i = 0; i < contentLength; i++) {
+			request.write(in.read());
+		}
+		return new String(request.toByteArray(), UTF_8);
+	}
+
+	private static String bodyOf(UnixSocketHttp.Response response) throws IOException {
+		return new String(response.body().readAllBytes(), UTF_8);
+	}
+
+	@Test
+	void requestIsFramedWithContentLength() throws Exception {
+		CompletableFuture<String> request = serve("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", true);
+		List<byte[]> body = Arrays.asList("héllo ".getBytes(UTF_8), "world".getBytes(UTF_8));
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/prettier/format", "application/json", body)) {
+			assertThat(response.statusCode()).isEqualTo(200);
+			assertThat(bodyOf(response)).isEqualTo("ok");
+		}
+		assertThat(request.get(10, TimeUnit.SECONDS)).isEqualTo("POST /prettier/format HTTP/1.0\r\n"
+				+ "Host: localhost\r\n"
+				+ "Content-Type: application/json\r\n"
+				+ "Content-Length: 12\r\n"
+				+ "\r\n"
+				+ "héllo world");
+	}
+
+	@Test
+	void emptyRequestHasZeroContentLength() throws Exception {
+		CompletableFuture<String> request = serve("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n", true);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/shutdown", "application/json", Collections.emptyList())) {
+			assertThat(bodyOf(response)).isEmpty();
+		}
+		assertThat(request.get(10, TimeUnit.SECONDS)).contains("Content-Length: 0\r\n\r\n").endsWith("\r\n\r\n");
+	}
+
+	@Test
+	void bodyEndsAfterContentLength() throws Exception {
+		serve("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\ncontent-length: 5\r\n\r\nhello", false);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList())) {
+			assertThat(bodyOf(response)).isEqualTo("hello");
+		}
+	}
+
+	@Test
+	void non200StatusIsReturnedWithItsBody() throws Exception {
+		serve("HTTP/1.1 501 Not Implemented\r\nContent-Length: 11\r\n\r\nunsupported", false);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList())) {
+			assertThat(response.statusCode()).isEqualTo(501);
+			assertThat(bodyOf(response)).isEqualTo("unsupported");
+		}
+	}
+
+	@Test
+	void bodyWithoutContentLengthEndsWithTheConnection() throws Exception {
+		serve("HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\n\r\nuntil the\nconnection closes", true);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList())) {
+			assertThat(bodyOf(response)).isEqualTo("until the\nconnection closes");
+		}
+	}
+
+	@Test
+	void chunkedBodyIsDecoded() throws Exception {
+		serve("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "5\r\nhello\r\n"
+				+ "7;name=value\r\n, world\r\n"
+				+ "0\r\nX-Trailer: ignored\r\n\r\n", false);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList())) {
+			assertThat(bodyOf(response)).isEqualTo("hello, world");
+		}
+	}
+
+	@Test
+	void chunkedBodyWhichEndsEarlyFails() throws Exception {
+		serve("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\na\r\nhello", true);
+		try (UnixSocketHttp.Response response = UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList())) {
+			assertThatThrownBy(() -> bodyOf(response)).isInstanceOf(EOFException.class);
+		}
+	}
+
+	@Test
+	void malformedStatusLineFails() throws Exception {
+		serve("SSH-2.0-OpenSSH\r\n\r\n", true);
+		assertThatThrownBy(() -> UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList()))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Malformed status line");
+	}
+
+	@Test
+	void responseWhichEndsWithinTheHeadersFails() throws Exception {
+		serve("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n", true);
+		assertThatThrownBy(() -> UnixSocketHttp.post(socket, "/format", "text/plain", Collections.emptyList()))
+				.isInstanceOf(EOFException.class);
+	}
+
+	@Test
+	void unixSocketsAreUsedFromJdk16() {
+		assertThat(UnixSocketHttp.canUse(socket)).isEqualTo(Jvm.version() >= 16);
+	}
+
+	@Test
+	void serverFallsBackToTcpWithoutUnixSockets() throws IOException {
+		File shortSocket = socket.toFile();
+		Map<String, String> environment = NpmFormatterStepStateBase.serverEnvironment(shortSocket);
+		if (Jvm.version() >= 16) {
+			assertThat(environment).containsOnly(Map.entry(NpmFormatterStepStateBase.SERVER_SOCKET_ENV, shortSocket.getAbsolutePath()));
+		} else {
+			assertThat(environment).isEmpty();
+		}
+
+		char[] longName = new char[120];
+		Arrays.fill(longName, 'x');
+		File longSocket = new File(socketDir.toFile(), new String(longName) + ".sock");
+		assertThat(UnixSocketHttp.canUse(longSocket.toPath())).isFalse();
+		assertThat(NpmFormatterStepStateBase.serverEnvironment(longSocket)).isEmpty();
+	}
+
+	@Test
+	void connectingWithoutAServerFails() {
+		assumeTrue(UnixSocketHttp.canUse(socket), "unix domain sockets need JDK 16+");
+		assertThatThrownBy(() -> UnixSocketHttp.post(socket, "/format", "text/plain", Collections.singletonList("x".getBytes(ISO_8859_1))))
+				.isInstanceOf(IOException.class);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.protobuf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+import com.diffplug.spotless.FormatterStep;
+import com.diffplug.spotless.ResourceHarness;
+
+/** Checks how the batch of buf is laid out, with a fake buf which prepends a comment. */
+@DisabledOnOs(WINDOWS)
+class BufStepBatchTest extends ResourceHarness {
+	private File log;
+
+	private FormatterStep fakeBuf() throws IOException {
+		log = newFile("buf.log");
+		File exe = setFile("bin/buf").toLines(
+				"#!/bin/sh",
+				"if [ \"$1\" = \"--version\" ]; then echo '1.24.0'; exit 0; fi",
+				"echo \"$*\" | sed 's/ -o .*//' >> '" + log.getAbsolutePath() + "'",
+				"if [ \"$#\" = 2 ]; then printf '// formatted\\n'; cat \"$2\"; exit 0; fi",
+				"shift 2",
+				"paths=''",
+				"while [ \"$#\" -gt 0 ]; do",
+				"  case \"$1\" in",
+				"    --path) paths=\"$paths $2\"; shift 2;;",
+				"    -o) out=\"$2\"; shift 2;;",
+				"  esac",
+				"done",
+				"for p in $paths; do",
+				"  mkdir -p \"$out/$(dirname \"$p\")\"",
+				"  { printf '// formatted\\n'; cat \"$p\"; } > \"$out/$p\"",
+				"done");
+		exe.setExecutable(true);
+		return BufStep.withVersion("1.24.0").withPathToExe(exe.getAbsolutePath()).create();
+	}
+
+	private List<String> invocations() throws IOException {
+		return Files.readAllLines(log.toPath(), UTF_8);
+	}
+
+	@Test
+	void filesOfAModuleAreFormattedByOneProcess() throws Exception {
+		setFile("module/buf.yaml").toContent("version: v1");
+		File a = setFile("module/a.proto").toContent("syntax = \"proto3\";\n");
+		File b = setFile("module/nested/b.proto").toContent("syntax = \"proto2\";\n");
+		File c = setFile("other/c.proto").toContent("syntax = \"proto3\";\n");
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(a, "syntax = \"proto3\";\n");
+		input.put(c, "syntax = \"proto3\";\n");
+		input.put(b, "syntax = \"proto2\";\n");
+
+		Map<File, String> formatted = fakeBuf().formatBatch(input);
+
+		assertThat(formatted).containsEntry(a, "// formatted\nsyntax = \"proto3\";\n")
+				.containsEntry(b, "// formatted\nsyntax = \"proto2\";\n")
+				.containsEntry(c, "// formatted\nsyntax = \"proto3\";\n");
+		assertThat(invocations()).containsExactly(
+				"format . --path a.proto --path nested/b.proto",
+				"format . --path c.proto");
+		// buf only reads the files
+		assertFile("module/a.proto").hasContent("syntax = \"proto3\";\n");
+	}
+
+	@Test
+	void filesWhichDifferFromTheDiskAreFormattedOneAtATime() throws Exception {
+		File clean = setFile("module/clean.proto").toContent("syntax = \"proto3\";\n");
+		File changed = setFile("module/changed.proto").toContent("syntax  =  \"proto3\";\r\n");
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(clean, "syntax = \"proto3\";\n");
+		input.put(changed, "syntax  =  \"proto3\";\n");
+
+		Map<File, String> formatted = fakeBuf().formatBatch(input);
+
+		assertThat(formatted).containsEntry(clean, "// formatted\nsyntax = \"proto3\";\n");
+		assertThat(invocations()).containsExactly(
+				"format " + changed.getAbsolutePath(),
+				"format . --path clean.proto");
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.python;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class BlackdHeadersTest extends ResourceHarness {
+	private static final String PYPROJECT = String.join("\n",
+			"[tool.poetry]",
+			"packages = [",
+			"  { include = \"src\" },",
+			"]",
+			"",
+			"[tool.black]",
+			"line-length = 100 # wide screens",
+			"target_version = [",
+			"  \"py38\",",
+			"  'py39', # newest",
+			"]",
+			"skip-string-normalization = false",
+			"extend-exclude = '''",
+			"/(",
+			"  generated",
+			")/",
+			"'''",
+			"",
+			"[tool.isort]",
+			"line_length = 80",
+			"");
+
+	@Test
+	void blackTableIsTranslatedToHeaders() {
+		assertThat(BlackdHeaders.fromOptions(BlackdHeaders.blackOptions(PYPROJECT)))
+				.containsExactly(
+						entry("X-Line-Length", "100"),
+						entry("X-Python-Variant", "py38,py39"));
+	}
+
+	@Test
+	void flagsAreOnlySentWhenTrue() {
+		assertThat(BlackdHeaders.fromOptions(BlackdHeaders.blackOptions("[tool.black]\npreview = true\nskip-magic-trailing-comma = false\n")))
+				.containsExactly(entry("X-Preview", "true"));
+	}
+
+	@Test
+	void optionsWithoutHeaderNeedBlack() {
+		assertThat(BlackdHeaders.fromOptions(BlackdHeaders.blackOptions("[tool.black]\npyi = true\n"))).isNull();
+		assertThat(BlackdHeaders.fromOptions(Collections.singletonMap("line-length", "\"wide\""))).isNull();
+	}
+
+	@Test
+	void pyprojectOfTheProjectRootIsUsed() throws IOException {
+		File pyproject = setFile("project/pyproject.toml").toContent("[tool.black]\nline-length = 120\n");
+		setFile("project/.git/HEAD").toContent("ref: refs/heads/main\n");
+		File workingDir = newFolder("project/src");
+
+		assertThat(BlackdHeaders.findPyproject(workingDir)).isEqualTo(pyproject.getAbsoluteFile());
+		assertThat(BlackdHeaders.forWorkingDir(workingDir)).containsExactly(entry("X-Line-Length", "120"));
+	}
+
+	@Test
+	void searchStopsAtTheRepositoryRoot() throws IOException {
+		File outer = setFile("pyproject.toml").toContent("[tool.black]\nline-length = 120\n");
+		setFile("project/.git/HEAD").toContent("ref: refs/heads/main\n");
+
+		assertThat(BlackdHeaders.findPyproject(newFolder("project/src"))).isNotEqualTo(outer.getAbsoluteFile());
+	}
+}
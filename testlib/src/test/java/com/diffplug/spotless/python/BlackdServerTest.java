@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+import com.sun.net.httpserver.HttpServer;
+
+/** Checks the blackd protocol against a stub server, see https://black.readthedocs.io/en/stable/usage_and_configuration/black_as_a_server.html */
+class BlackdServerTest extends ResourceHarness {
+	private HttpServer server;
+	private String protocolVersion;
+	private String lineLength;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			protocolVersion = exchange.getRequestHeaders().getFirst("X-Protocol-Version");
+			lineLength = exchange.getRequestHeaders().getFirst("X-Line-Length");
+			String input = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+			exchange.getResponseHeaders().add("X-Black-Version", "22.3.0");
+			if (input.equals("x = 1\n")) {
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+				return;
+			}
+			int status = input.startsWith("def") ? 400 : 200;
+			byte[] body = (status == 400 ? "Cannot parse: 1:3" : input.replace("'", "\"")).getBytes(UTF_8);
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop(0);
+	}
+
+	private BlackdServer blackd(String expectedVersion) {
+		return blackd(expectedVersion, Collections.emptyMap());
+	}
+
+	private BlackdServer blackd(String expectedVersion, Map<String, String> headers) {
+		return new BlackdServer(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"), expectedVersion, headers, null);
+	}
+
+	@Test
+	void formattedContentIsReturned() throws Exception {
+		assertThat(blackd("22.3.0").format("x = 'a'\n")).isEqualTo("x = \"a\"\n");
+		assertThat(protocolVersion).isEqualTo("1");
+	}
+
+	@Test
+	void pyprojectOptionsAreSentAsHeaders() throws Exception {
+		blackd("22.3.0", Collections.singletonMap("X-Line-Length", "100")).format("x = 'a'\n");
+		assertThat(lineLength).isEqualTo("100");
+	}
+
+	@Test
+	void isBlackdOnlyIfItAnswersWithItsVersion() throws Exception {
+		assertThat(blackd("22.3.0").isBlackd()).isTrue();
+
+		HttpServer other = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		other.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		other.start();
+		try {
+			BlackdServer notBlackd = new BlackdServer(URI.create("http://127.0.0.1:" + other.getAddress().getPort() + "/"), "22.3.0", Collections.emptyMap(), null);
+			assertThat(notBlackd.isBlackd()).isFalse();
+		} finally {
+			other.stop(0);
+		}
+	}
+
+	@Test
+	void unchangedContentIsReturnedAsIs() throws Exception {
+		assertThat(blackd("22.3.0").format("x = 1\n")).isEqualTo("x = 1\n");
+	}
+
+	@Test
+	void syntaxErrorFails() {
+		assertThatThrownBy(() -> blackd("22.3.0").format("def"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("Cannot parse: 1:3");
+	}
+
+	@Test
+	void versionMismatchFails() {
+		assertThatThrownBy(() -> blackd("23.1.0").format("x = 1\n"))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("is version 22.3.0");
+	}
+
+	@Test
+	void missingBlackdFallsBack() {
+		File black = setFile("bin/black").toContent("");
+		assertThat(BlackdServer.startNextTo(black, "22.3.0", rootFolder())).isNull();
+	}
+}
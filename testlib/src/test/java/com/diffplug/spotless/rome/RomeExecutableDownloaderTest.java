@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.rome;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+import com.diffplug.spotless.ResourceHarness;
+
+class RomeExecutableDownloaderTest extends ResourceHarness {
+	private static final FileTime MODIFIED = FileTime.fromMillis(1_700_000_000_000L);
+
+	private Path exe(String name, String content, FileTime modified) throws IOException {
+		Path exe = setFile(name).toContent(content).toPath();
+		Files.setLastModifiedTime(exe, modified);
+		return exe;
+	}
+
+	private static String sha256(String content) throws NoSuchAlgorithmException {
+		byte[] bytes = MessageDigest.getInstance("SHA-256").digest(content.getBytes(UTF_8));
+		return String.format("%0" + (bytes.length * 2) + "X", new BigInteger(1, bytes));
+	}
+
+	@Test
+	void checksumIsReusedWhileSizeAndModificationTimeAreUnchanged() throws Exception {
+		Path exe = exe("biome", "aaaa", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("aaaa"));
+
+		// same size and modification time, so the cached checksum is returned without hashing the file
+		exe("biome", "bbbb", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("aaaa"));
+	}
+
+	@Test
+	void checksumIsComputedAgainWhenModificationTimeChanges() throws Exception {
+		Path exe = exe("biome", "aaaa", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("aaaa"));
+
+		exe("biome", "bbbb", FileTime.fromMillis(MODIFIED.toMillis() + 2000));
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("bbbb"));
+	}
+
+	@Test
+	void checksumIsComputedAgainWhenSizeChanges() throws Exception {
+		Path exe = exe("biome", "aaaa", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("aaaa"));
+
+		exe("biome", "aaaaa", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, false)).isEqualTo(sha256("aaaaa"));
+	}
+
+	@Test
+	void persistedChecksumIsUsedByOtherBuilds() throws Exception {
+		Path exe = exe("downloads/biome", "aaaa", MODIFIED);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, true)).isEqualTo(sha256("aaaa"));
+		assertFile("downloads/biome.sha256.stamp").hasContent("4:" + MODIFIED.toMillis() + "\n" + sha256("aaaa"));
+
+		// a stamp which was written by another build, for a file this JVM never hashed
+		Path other = exe("downloads/other", "bbbb", MODIFIED);
+		setFile("downloads/other.sha256.stamp").toContent("4:" + MODIFIED.toMillis() + "\nPERSISTED", ISO_8859_1);
+		assertThat(RomeExecutableDownloader.getChecksum(other, true)).isEqualTo("PERSISTED");
+	}
+
+	@Test
+	void persistedChecksumIsIgnoredWhenTheFileChanged() throws Exception {
+		Path exe = exe("downloads/biome", "bbbb", MODIFIED);
+		setFile("downloads/biome.sha256.stamp").toContent("4:" + (MODIFIED.toMillis() - 2000) + "\nSTALE", ISO_8859_1);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, true)).isEqualTo(sha256("bbbb"));
+		assertFile("downloads/biome.sha256.stamp").hasContent("4:" + MODIFIED.toMillis() + "\n" + sha256("bbbb"));
+	}
+
+	private static String downloadedFileName() {
+		Platform platform = Platform.guess();
+		return String.format(BiomeFlavor.BIOME.getDownloadFilePattern(),
+				platform.getOs().name().toLowerCase(Locale.ROOT), platform.getArchitecture().name().toLowerCase(Locale.ROOT), "1.2.0");
+	}
+
+	@Test
+	void integrityCheckHashesTheFileOncePerStamp() throws Exception {
+		String fileName = downloadedFileName();
+		Path exe = exe("downloads/" + fileName, "aaaa", MODIFIED);
+		setFile("downloads/" + fileName + ".sha256").toContent(sha256("aaaa"), ISO_8859_1);
+		RomeExecutableDownloader downloader = new RomeExecutableDownloader(BiomeFlavor.BIOME, exe.getParent());
+		assertThat(downloader.findDownloaded("1.2.0")).contains(exe);
+
+		// same size and modification time, so the file which was verified by this JVM is not hashed again
+		exe("downloads/" + fileName, "bbbb", MODIFIED);
+		assertThat(downloader.findDownloaded("1.2.0")).contains(exe);
+
+		// a new modification time, so the file is hashed again
+		exe("downloads/" + fileName, "bbbb", FileTime.fromMillis(MODIFIED.toMillis() + 2000));
+		assertThat(downloader.findDownloaded("1.2.0")).isEmpty();
+	}
+
+	@Test
+	void integrityCheckDoesNotTrustPersistedChecksums() throws Exception {
+		String fileName = downloadedFileName();
+		Path exe = exe("downloads/" + fileName, "aaaa", MODIFIED);
+		setFile("downloads/" + fileName + ".sha256").toContent(sha256("bbbb"), ISO_8859_1);
+		// another build claims that the file is intact, without this JVM ever hashing it
+		setFile("downloads/" + fileName + ".sha256.stamp").toContent("4:" + MODIFIED.toMillis() + "\n" + sha256("bbbb"), ISO_8859_1);
+		assertThat(RomeExecutableDownloader.getChecksum(exe, true)).isEqualTo(sha256("bbbb"));
+
+		RomeExecutableDownloader downloader = new RomeExecutableDownloader(BiomeFlavor.BIOME, exe.getParent());
+		assertThat(downloader.findDownloaded("1.2.0")).isEmpty();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.rome;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+import com.diffplug.spotless.FormatterStep;
+import com.diffplug.spotless.ResourceHarness;
+
+/** Checks how the batch of Biome is laid out, with a fake Biome which upper-cases the code. */
+@DisabledOnOs(WINDOWS)
+class RomeStepBatchTest extends ResourceHarness {
+	private File log;
+
+	private FormatterStep fakeBiome() throws IOException {
+		log = newFile("biome.log");
+		File exe = setFile("bin/biome").toLines(
+				"#!/bin/sh",
+				"echo \"$*\" >> '" + log.getAbsolutePath() + "'",
+				"if [ \"$2\" = \"--stdin-file-path\" ]; then tr a-z A-Z; exit 0; fi",
+				"shift 2",
+				"if [ \"$1\" = \"--config-path\" ]; then shift 2; fi",
+				"for f in \"$@\"; do tr a-z A-Z < \"$f\" > \"$f.tmp\" && mv \"$f.tmp\" \"$f\"; done");
+		exe.setExecutable(true);
+		setFile("project/biome.json").toContent("{}");
+		return RomeStep.withExePath(BiomeFlavor.BIOME, exe.getAbsolutePath())
+				.withConfigPath(newFile("project").getAbsolutePath())
+				.create();
+	}
+
+	private List<String> invocations() throws IOException {
+		return Files.readAllLines(log.toPath(), UTF_8);
+	}
+
+	@Test
+	void filesUnderTheConfigDirAreFormattedByOneProcessAtTheirRelativePaths() throws Exception {
+		FormatterStep step = fakeBiome();
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(setFile("project/src/a.js").toContent("on disk"), "const a = 1;\n");
+		input.put(setFile("project/src/nested/b.ts").toContent("on disk"), "const b = 2;\n");
+
+		Map<File, String> formatted = step.formatBatch(input);
+
+		assertThat(formatted.values()).containsExactly("CONST A = 1;\n", "CONST B = 2;\n");
+		assertThat(invocations()).containsExactly(
+				"format --write --config-path " + newFile("project").getAbsolutePath() + " src/a.js src/nested/b.ts");
+		// the real files are never written
+		assertFile("project/src/a.js").hasContent("on disk");
+	}
+
+	@Test
+	void filesOutsideOfTheConfigDirAreFormattedOneAtATime() throws Exception {
+		FormatterStep step = fakeBiome();
+		Map<File, String> input = new LinkedHashMap<>();
+		input.put(setFile("project/a.js").toContent(""), "inside\n");
+		input.put(setFile("elsewhere/b.js").toContent(""), "outside\n");
+
+		Map<File, String> formatted = step.formatBatch(input);
+
+		assertThat(formatted.values()).containsExactly("INSIDE\n", "OUTSIDE\n");
+		assertThat(invocations()).containsExactlyInAnyOrder(
+				"format --stdin-file-path b.js --config-path " + newFile("project").getAbsolutePath(),
+				"format --write --config-path " + newFile("project").getAbsolutePath() + " a.js");
+	}
+}